@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2010-2019, sikuli.org, sikulix.com - MIT license
+ */
+package org.sikuli.basics;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+
+/**
+ * INTERNAL USE: writes log lines to a file from a background thread<br>
+ * the lines are queued in a bounded ring buffer, so the logging thread only pays for the hand over<br>
+ * if the ring is full, the logging thread waits until the writer has made room (no lines are lost)
+ */
+class AsyncLogWriter {
+
+  private static final int DEFAULT_CAPACITY = 4096;
+
+  private final PrintStream out;
+  private final String[] ring;
+  private int head = 0;
+  private int count = 0;
+  private boolean writing = false;
+  private boolean closed = false;
+  private final Thread writer;
+
+  AsyncLogWriter(String fileName) throws FileNotFoundException {
+    this(fileName, DEFAULT_CAPACITY);
+  }
+
+  AsyncLogWriter(String fileName, int capacity) throws FileNotFoundException {
+    out = new PrintStream(fileName);
+    ring = new String[Math.max(16, capacity)];
+    writer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        drain();
+      }
+    }, "SikuliX-LogWriter");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  synchronized void println(String line) {
+    while (count == ring.length && !closed) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    if (closed || count == ring.length) {
+      return;
+    }
+    ring[(head + count) % ring.length] = line;
+    count++;
+    if (count == 1) {
+      notifyAll();
+    }
+  }
+
+  /**
+   * waits until all lines queued so far are written to the file
+   */
+  synchronized void flush() {
+    while ((count > 0 || writing) && writer.isAlive()) {
+      try {
+        wait(100);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /**
+   * writes the pending lines and closes the file
+   */
+  void close() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      notifyAll();
+    }
+    try {
+      writer.join(1000);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void drain() {
+    String[] batch = new String[ring.length];
+    while (true) {
+      int n;
+      synchronized (this) {
+        while (count == 0 && !closed) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+          }
+        }
+        if (count == 0) {
+          break;
+        }
+        n = count;
+        for (int i = 0; i < n; i++) {
+          int ix = (head + i) % ring.length;
+          batch[i] = ring[ix];
+          ring[ix] = null;
+        }
+        head = (head + n) % ring.length;
+        count = 0;
+        writing = true;
+        notifyAll();
+      }
+      for (int i = 0; i < n; i++) {
+        out.println(batch[i]);
+        batch[i] = null;
+      }
+      out.flush();
+      synchronized (this) {
+        writing = false;
+        notifyAll();
+      }
+    }
+    out.close();
+  }
+}
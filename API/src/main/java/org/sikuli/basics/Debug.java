@@ -4,6 +4,7 @@
 package org.sikuli.basics;
 
 import org.sikuli.script.support.RunTime;
+import org.sikuli.script.support.TraceRecorder;
 import org.sikuli.script.runnerSupport.JythonSupport;
 
 import java.io.FileNotFoundException;
@@ -12,6 +13,7 @@ import java.lang.reflect.Method;
 import java.text.DateFormat;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.function.Supplier;
 
 /**
  * Debug is a utility class that wraps println statements and allows more or less command line
@@ -28,6 +30,9 @@ import java.util.Date;
  * You might redirect info, action, error and debug messages to your own logger object<br>
  * Start with setLogger() and then define with setLoggerXyz() the redirection targets
  * <p>
+ * In hot paths check isLogging(level) before calling log(), so that no varargs array and no
+ * message string is created, when the message would be suppressed anyway (or use logLazy())
+ * <p>
  * This solution is NOT threadsafe !!!
  */
 public class Debug {
@@ -40,10 +45,12 @@ public class Debug {
   private long _beginTime = 0;
   private String _message;
   private String _title = null;
-  private static PrintStream printout = null;
-  private static PrintStream printoutuser = null;
+  private static AsyncLogWriter printout = null;
+  private static AsyncLogWriter printoutuser = null;
   private static final DateFormat df =
       DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.MEDIUM);
+  private static long lastStampSecond = -1;
+  private static String lastStamp = "";
   public static String logfile;
 
   private static Object privateLogger = null;
@@ -104,6 +111,7 @@ public class Debug {
     }
     setLogFile(null);
     setUserLogFile(null);
+    TraceRecorder.init();
     if (DEBUG_LEVEL > 0) {
       setGlobalDebug(DEBUG_LEVEL);
     }
@@ -435,7 +443,7 @@ public class Debug {
         if (printout != null) {
           printout.close();
         }
-        printout = new PrintStream(fileName);
+        printout = new AsyncLogWriter(fileName);
         log(3, "Debug: setLogFile: " + fileName);
         return true;
       } catch (Exception ex) {
@@ -481,7 +489,7 @@ public class Debug {
         if (printoutuser != null) {
           printoutuser.close();
         }
-        printoutuser = new PrintStream(fileName);
+        printoutuser = new AsyncLogWriter(fileName);
         log(3, "Debug: setLogFile: " + fileName);
         return true;
       } catch (FileNotFoundException ex) {
@@ -502,6 +510,37 @@ public class Debug {
     return (printoutuser != null);
   }
 
+  /**
+   * waits until all messages written so far have reached the log files (if any)
+   */
+  public static void flushLogFiles() {
+    AsyncLogWriter logWriter = printout;
+    if (logWriter != null) {
+      logWriter.flush();
+    }
+    logWriter = printoutuser;
+    if (logWriter != null) {
+      logWriter.flush();
+    }
+  }
+
+  /**
+   * writes pending messages and closes the log files (if any)<br>
+   * subsequent messages go to System.out
+   */
+  public static void closeLogFiles() {
+    AsyncLogWriter logWriter = printout;
+    printout = null;
+    if (logWriter != null) {
+      logWriter.close();
+    }
+    logWriter = printoutuser;
+    printoutuser = null;
+    if (logWriter != null) {
+      logWriter.close();
+    }
+  }
+
   /**
    * @return current debug level
    */
@@ -546,6 +585,16 @@ public class Debug {
     return DEBUG_LEVEL >= level;
   }
 
+  /**
+   * cheap check to be used before building a message in hot paths
+   *
+   * @param level as used with log() and logx()
+   * @return false if a message with this level would be suppressed
+   */
+  public static boolean isLogging(int level) {
+    return level <= DEBUG_LEVEL && !beQuiet;
+  }
+
   public static int is() {
     return DEBUG_LEVEL;
   }
@@ -759,7 +808,7 @@ public class Debug {
       if (Settings.UserLogTime) {
 //TODO replace the hack -99 to filter user logs
         log(-99, String.format("%s (%s)",
-            Settings.UserLogPrefix, df.format(new Date())), message, args);
+            Settings.UserLogPrefix, timestamp()), message, args);
       } else {
         log(-99, String.format("%s", Settings.UserLogPrefix), message, args);
       }
@@ -775,12 +824,25 @@ public class Debug {
    * @param args    to use with format string
    */
   public static void log(int level, String message, Object... args) {
-    if (Settings.DebugLogs) {
+    if (Settings.DebugLogs && isLogging(level)) {
       String prefix = debugPrefix;
       log(level, prefix, message, args);
     }
   }
 
+  /**
+   * Sikuli debug messages with level, where the message is only built if it is really logged<br>
+   * switch on/off: Settings.DebugLogs (off) and/or -Dsikuli.Debug
+   *
+   * @param level   value
+   * @param message supplies the final message text (no format string)
+   */
+  public static void logLazy(int level, Supplier<String> message) {
+    if (Settings.DebugLogs && isLogging(level)) {
+      log(level, debugPrefix, message.get());
+    }
+  }
+
   public static void logt(String message) {
     if (!withTimeElapsed) {
       return;
@@ -812,7 +874,7 @@ public class Debug {
    */
   public static String logx(int level, String message, Object... args) {
     String sout = "";
-    if (beQuiet) return sout;
+    if (!isLogging(level)) return sout;
     if (level == -1 || level == -100) {
       sout = log(level, errorPrefix, message, args);
     } else if (level == -2) {
@@ -864,7 +926,7 @@ public class Debug {
         }
         if (withTimeElapsed || level == -999) {
           long traceElapsed = 0;
-          long actual = new Date().getTime();
+          long actual = System.currentTimeMillis();
           if (withTimeElapsed) {
             traceElapsed = actual - RunTime.getElapsedStart();
           }
@@ -880,7 +942,7 @@ public class Debug {
         }
       }
       if (Settings.LogTime && level != -99) {
-        stime = String.format(" (%s)", df.format(new Date()));
+        stime = " (" + timestamp() + ")";
       }
       if (!prefix.isEmpty()) {
         prefix = "[" + prefix + stime + "] ";
@@ -898,11 +960,9 @@ public class Debug {
       }
       if (!isRedirected) {
         if (level == -99 && printoutuser != null) {
-          printoutuser.print(prefix + sout);
-          printoutuser.println();
+          printoutuser.println(prefix + sout);
         } else if (printout != null) {
-          printout.print(prefix + sout);
-          printout.println();
+          printout.println(prefix + sout);
         } else {
           if (!beQuiet) {
             System.out.print(prefix + sout);
@@ -917,6 +977,22 @@ public class Debug {
     return prefix + sout;
   }
 
+  /**
+   * the DateFormat output has a resolution of seconds,
+   * so it is only evaluated once per second
+   *
+   * @return the formatted current time
+   */
+  private static synchronized String timestamp() {
+    long now = System.currentTimeMillis();
+    long second = now / 1000;
+    if (second != lastStampSecond) {
+      lastStamp = df.format(new Date(now));
+      lastStampSecond = second;
+    }
+    return lastStamp;
+  }
+
   /**
    * Sikuli profiling messages<br> switch on/off: Settings.ProfileLogs, default off
    *
@@ -55,6 +55,73 @@ public class Settings {
   public static int DefaultPadding = 50;
   public static boolean AutoDetectKeyboardLayout = true;  
 
+  /**
+   * how screens are captured: "robot" (java.awt.Robot, default)<br>
+   * "xshm" (Linux only: X11 shared memory, falls back to robot if not available)
+   */
+  public static String CaptureBackend = "robot";
+
+  /**
+   * milliseconds: a capture of the same screen, that covers the requested area and is not older,
+   * is reused instead of capturing again, as long as no mouse or keyboard action happened meanwhile<br>
+   * (e.g. 30 lets the lastSeen check, the search and a text fallback of one find share one capture)<br>
+   * 0 (default): always capture
+   */
+  public static int CaptureMaxAge = 0;
+
+  /**
+   * true: images are searched on grayscale (the screen is converted once per capture, about a third of the work)
+   * and the best candidates are then verified against the mean color of the image (see GrayMatchingColorDistance)<br>
+   * patterns marked with Pattern.colorCritical(), masked and plain color images are still searched in color<br>
+   * false (default): always search in color
+   */
+  public static boolean GrayMatching = false;
+
+  /**
+   * GrayMatching: maximum distance (RGB) between the mean color of the image and of a candidate
+   */
+  public static double GrayMatchingColorDistance = 30;
+
+  /**
+   * true: a capture searched more than once (e.g. findAny, observe with many events or a capture reused
+   * with CaptureMaxAge) is prepared with its second search: the sums needed to normalize the match scores
+   * are computed once and reused for all further images searched in it<br>
+   * false (default): each search computes everything from scratch
+   */
+  public static boolean PreparedSearch = false;
+
+  /**
+   * PreparedSearch: also keep the DFT of the capture, so each further search only transforms the image
+   * (pays off with larger images and many searches)
+   */
+  public static boolean PreparedSearchDFT = false;
+
+  /**
+   * true: all images are searched in the scale range MultiScaleMin ... MultiScaleMax
+   * (e.g. an app shown with 125% or 150% scaling)<br>
+   * false (default): only patterns with Pattern.scales(min, max) or Pattern.multiScale()
+   */
+  public static boolean MultiScale = false;
+  public static float MultiScaleMin = 0.5f;
+  public static float MultiScaleMax = 2.0f;
+
+  /**
+   * multi-scale search: the step for the first (coarse) pass - halved around the best scale down to 0.05
+   */
+  public static float MultiScaleStep = 0.25f;
+
+  /**
+   * multi-scale search: a match with this score ends the search (not for the scale found best before)
+   */
+  public static double MultiScaleConfident = 0.95;
+
+  /**
+   * number of Jython interpreters for concurrent script runs
+   * (option -r with several scripts, Runner.runScriptsConcurrently, SikulixServer tasks) - each with its own sys.path, sys.argv and sys.modules<br>
+   * 0 or 1 (default): scripts run one after the other in the one interpreter
+   */
+  public static int JythonPoolSize = 0;
+
   public static boolean CheckLastSeen = true;
   public static float CheckLastSeenSimilar = 0.95f;
 
@@ -91,6 +158,16 @@ public class Settings {
    * to 1.0 (max delay of 1 second)
    */
   public static double TypeDelay = 0.0;
+  /**
+   * the standard delay in millisecs between the characters of a type (0: as fast as possible),
+   * TypeDelay is added for the next type
+   */
+  public static int TypeKeyDelay = 10;
+  /**
+   * a text longer than this is pasted with write() instead of being typed - type() always types
+   * (only plain text without special keys and line ends - 0: never)
+   */
+  public static int TypePasteLimit = 1000;
   /**
    * Specify a delay between the mouse down and up in seconds as 0.nnn. This
    * only applies to the next click action and is then reset to 0 again. A value
@@ -14,10 +14,15 @@ import org.sikuli.script.Region;
 
 import java.awt.*;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class LinuxUtil implements OSUtil {
 
@@ -80,15 +85,15 @@ public class LinuxUtil implements OSUtil {
   }
 
   private int switchto(int pid, int num) {
-    if (!isAvailable(wmctrlAvail, "switchApp", "wmctrl")) {
+    if (!useX11() && !isAvailable(wmctrlAvail, "switchApp", "wmctrl")) {
       return -1;
     }
-    String winLine[] = findWindow("" + pid, num, SearchType.PID);
-    if (winLine == null || winLine.length < 1) {
+    LinuxX11Windows.Client window = findWindow("" + pid, num, SearchType.PID);
+    if (window == null) {
       return -1;
     }
-    currentWindowTitle = winLine[9];
-    return bringWindowToFront(winLine[0], pid);
+    currentWindowTitle = window.title;
+    return bringWindowToFront(window.id, pid);
   }
 
 //  private int switchtoWindow(String appName, int winNum) {
@@ -122,14 +127,17 @@ public class LinuxUtil implements OSUtil {
   }
 
   private int close(int pid) {
-    if (!isAvailable(wmctrlAvail, "closeApp", "wmctrl")) {
+    if (!useX11() && !isAvailable(wmctrlAvail, "closeApp", "wmctrl")) {
       return -1;
     }
-    String winLine[] = findWindow("" + pid, 0, SearchType.PID);
-    if (winLine == null) {
+    LinuxX11Windows.Client window = findWindow("" + pid, 0, SearchType.PID);
+    if (window == null) {
       return -1;
     }
-    String cmd[] = {"wmctrl", "-ic", winLine[0]};
+    if (useX11()) {
+      return LinuxX11Windows.get().close(window.id) ? 0 : -1;
+    }
+    String cmd[] = {"wmctrl", "-ic", hexId(window.id)};
     try {
       Process p = Runtime.getRuntime().exec(cmd);
       p.waitFor();
@@ -169,6 +177,10 @@ public class LinuxUtil implements OSUtil {
   //<editor-fold desc="04 windows">
   @Override
   public Rectangle getFocusedWindow() {
+    if (useX11()) {
+      long id = LinuxX11Windows.get().getActiveWindow();
+      return id == 0 ? null : LinuxX11Windows.get().getBounds(id);
+    }
     if (!isAvailable(xdoToolAvail, "getFocusedWindow", "xdoTool")) {
       return null;
     }
@@ -181,8 +193,7 @@ public class LinuxUtil implements OSUtil {
       long id = 0;
       if (str != null) {
         id = Integer.parseInt(str);
-        String hexid = String.format("0x%08x", id);
-        return findRegion(hexid, 0, SearchType.WINDOW_ID);
+        return findRegion(hexId(id), 0, SearchType.WINDOW_ID);
       }
     } catch (IOException e) {
       System.out.println("[error] getFocusedWindow:\n" + e.getMessage());
@@ -197,7 +208,13 @@ public class LinuxUtil implements OSUtil {
 
   @Override
   public Rectangle getWindow(App app, int num) {
-    return new Rectangle();
+    if (app.getPID() > 0) {
+      return getWindow(app.getPID(), num);
+    }
+    if (app.getNameGiven() == null || app.getNameGiven().isEmpty()) {
+      return null;
+    }
+    return getWindow(app.getNameGiven(), num);
   }
 
   @Override
@@ -206,73 +223,93 @@ public class LinuxUtil implements OSUtil {
   }
 
   private Rectangle findRegion(String appName, int winNum, SearchType type) {
-    String[] winLine = findWindow(appName, winNum, type);
-    if (winLine != null && winLine.length >= 7) {
-      int x = new Integer(winLine[3]);
-      int y = Integer.parseInt(winLine[4]);
-      int w = Integer.parseInt(winLine[5]);
-      int h = Integer.parseInt(winLine[6]);
-      return new Rectangle(x, y, w, h);
+    LinuxX11Windows.Client window = findWindow(appName, winNum, type);
+    if (window == null) {
+      return null;
     }
-    return null;
+    if (window.bounds != null) {
+      return window.bounds;
+    }
+    return LinuxX11Windows.get().getBounds(window.id);
   }
-  
-  private String[] findWindow(String appName, int winNum, SearchType type) {
-    String[] found = {};
+
+  private LinuxX11Windows.Client findWindow(String appName, int winNum, SearchType type) {
     int numFound = 0;
     try {
-      CommandExecutorResult result = CommandExecutorHelper.execute("wmctrl -lpGx", 0);
-      
       int slash = appName.lastIndexOf("/");
       if (slash >= 0) {
         // remove path: /usr/bin/....
         appName = appName.substring(slash + 1);
       }
-      
+
       if (type == SearchType.APP_NAME) {
         appName = appName.toLowerCase();
       }
-      String[] lines = result.getStandardOutput().split("\\n");
-      for (String str : lines) {
-        //Debug.log("read: " + str);
-        String winLine[] = str.split("\\s+", 10);
+      for (LinuxX11Windows.Client window : getWindowList()) {
         boolean ok = false;
-        
+
         if (type == SearchType.WINDOW_ID) {
-          if (appName.equals(winLine[0])) {
+          if (appName.equals(hexId(window.id))) {
             ok = true;
           }
         } else if (type == SearchType.PID) {
-          if (appName.equals(winLine[2])) {
+          if (appName.equals("" + window.pid)) {
             ok = true;
           }
         } else if (type == SearchType.APP_NAME) {
-          String winLineName = winLine[7].toLowerCase();
-          if (appName.equals(winLineName)) {
+          if (appName.equals(window.wmClass.toLowerCase())) {
             ok = true;
           }
-          
-          if (!ok && winLine[9].toLowerCase().contains(appName)) {
+
+          if (!ok && window.title.toLowerCase().contains(appName)) {
             ok = true;
           }
         }
-        
+
         if (ok) {
           if (numFound >= winNum) {
-            //Debug.log("Found window" + winLine);
-            found = winLine;
-            break;
+            return window;
           }
           numFound++;
         }
       }
     } catch (Exception e) {
       System.out.println("[error] findWindow:\n" + e.getMessage());
-      return null;
     }
-    return found;
+    return null;
   }
-  
+
+  /**
+   * the top level windows: read natively (cached), if the X server and the window manager allow it,
+   * otherwise using wmctrl -lpGx
+   *
+   * @return the windows
+   * @throws Exception if wmctrl fails
+   */
+  private List<LinuxX11Windows.Client> getWindowList() throws Exception {
+    if (useX11()) {
+      return LinuxX11Windows.get().getClients();
+    }
+    List<LinuxX11Windows.Client> windows = new ArrayList<>();
+    CommandExecutorResult result = CommandExecutorHelper.execute("wmctrl -lpGx", 0);
+    for (String str : result.getStandardOutput().split("\\n")) {
+      // id desktop pid x y w h wmclass host title
+      String winLine[] = str.split("\\s+", 10);
+      if (winLine.length < 9) {
+        continue;
+      }
+      Rectangle bounds = new Rectangle(Integer.parseInt(winLine[3]), Integer.parseInt(winLine[4]),
+          Integer.parseInt(winLine[5]), Integer.parseInt(winLine[6]));
+      windows.add(new LinuxX11Windows.Client(Long.decode(winLine[0]), Integer.parseInt(winLine[2]),
+          winLine[7], winLine.length > 9 ? winLine[9] : "", bounds));
+    }
+    return windows;
+  }
+
+  private static String hexId(long id) {
+    return String.format("0x%08x", id);
+  }
+
   /**
    * Returns a PID of the givenAppname and the winNumber
    *
@@ -281,11 +318,9 @@ public class LinuxUtil implements OSUtil {
    * @return the PID or -1 on errors
    */
   private int findWindowPID(String appName, int winNum) {
-    wmctrlLine = new String[0];
-    String[] windowLine = findWindow(appName, winNum, SearchType.APP_NAME);
-    if (windowLine != null && windowLine.length > 1) {
-      wmctrlLine = windowLine;
-      return Integer.parseInt(windowLine[2]);
+    LinuxX11Windows.Client window = findWindow(appName, winNum, SearchType.APP_NAME);
+    if (window != null) {
+      return window.pid;
     }
     return -1;
   }
@@ -302,10 +337,13 @@ public class LinuxUtil implements OSUtil {
     return findRegion("" + pid, winNum, SearchType.PID);
   }
   
-  private int bringWindowToFront(String windowID, int pid) {
+  private int bringWindowToFront(long windowID, int pid) {
+    if (useX11()) {
+      return LinuxX11Windows.get().activate(windowID) ? pid : -1;
+    }
     try {
       // execute wmctrl with hex, e.g. 'wmctrl -ia 0x00000'
-      CommandExecutorHelper.execute("wmctrl -ia " + windowID, 0);
+      CommandExecutorHelper.execute("wmctrl -ia " + hexId(windowID), 0);
       //on the success exit value = 0 -> so no exception will be thrown
       return pid;
     } catch (Exception e) {
@@ -317,7 +355,23 @@ public class LinuxUtil implements OSUtil {
   
   @Override
   public List<Region> getWindows(App app) {
-    return new ArrayList<>();
+    List<Region> regions = new ArrayList<>();
+    if (app.getPID() < 1) {
+      return regions;
+    }
+    try {
+      for (LinuxX11Windows.Client window : getWindowList()) {
+        if (window.pid == app.getPID()) {
+          Rectangle bounds = window.bounds != null ? window.bounds : LinuxX11Windows.get().getBounds(window.id);
+          if (bounds != null) {
+            regions.add(Region.create(bounds));
+          }
+        }
+      }
+    } catch (Exception e) {
+      System.out.println("[error] getWindows:\n" + e.getMessage());
+    }
+    return regions;
   }
   //</editor-fold>
 
@@ -325,10 +379,16 @@ public class LinuxUtil implements OSUtil {
   private static boolean wmctrlAvail = true;
   private static boolean xdoToolAvail = true;
 
-  private String[] wmctrlLine = new String[0];
+  private static boolean useX11() {
+    return LinuxX11Windows.get().isValid();
+  }
 
   @Override
   public void checkFeatureAvailability() {
+    if (useX11()) {
+      Debug.log(3, "App: window features using the X server directly (wmctrl/xdotool not needed)");
+      return;
+    }
     List<CommandLine> commands = Arrays.asList(
             CommandLine.parse("wmctrl -m"),
             CommandLine.parse("xdotool -v")
@@ -394,28 +454,65 @@ public class LinuxUtil implements OSUtil {
       return app;
     }
     if (app.isClosing() && pid > -1) {
-      DefaultExecutor executor = new DefaultExecutor();
-      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-      executor.setStreamHandler(new PumpStreamHandler(outputStream));
-      CommandLine command = CommandLine.parse("ps -p " + pid);
-      try {
-        executor.execute(command);
-        app.setPID(pid);
-      } catch (Exception e) {
-        if (outputStream.toString().split("\\n").length == 1) {
-          app.setPID(-1);
-          app.setWindow("");
-        } else {
-          Debug.log(3, "[error] LinuxUtil::executeCommand: %s (%s)", command, e.getMessage());
-          logCommandSysout(command.toString(), outputStream);
-        }
+      if (!isRunning(pid)) {
+        app.setPID(-1);
+        app.setWindow("");
       }
     }
     return app;
   }
 
+  //<editor-fold desc="06 processes">
+  /*
+   * /proc/<pid>/stat: pid (comm) state ... - a zombie (Z) has ended already
+   */
+  private static boolean isRunning(int pid) {
+    try {
+      String stat = new String(Files.readAllBytes(Paths.get("/proc", "" + pid, "stat")), StandardCharsets.UTF_8);
+      int end = stat.lastIndexOf(')');
+      return end < 0 || end + 2 >= stat.length() || stat.charAt(end + 2) != 'Z';
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static String getProcessName(int pid) {
+    try {
+      return new String(Files.readAllBytes(Paths.get("/proc", "" + pid, "comm")), StandardCharsets.UTF_8).trim();
+    } catch (IOException e) {
+      return "";
+    }
+  }
+  //</editor-fold>
+
   @Override
   public List<App> getApps(String name) {
-    return null;
+    List<App> apps = new ArrayList<>();
+    List<LinuxX11Windows.Client> windows;
+    try {
+      windows = getWindowList();
+    } catch (Exception e) {
+      System.out.println("[error] getApps:\n" + e.getMessage());
+      return apps;
+    }
+    String search = name == null ? "" : name.toLowerCase();
+    Set<Integer> pids = new HashSet<>();
+    for (LinuxX11Windows.Client window : windows) {
+      if (window.pid < 1 || pids.contains(window.pid)) {
+        continue;
+      }
+      String processName = getProcessName(window.pid);
+      if (!search.isEmpty() && !processName.toLowerCase().contains(search)
+          && !window.wmClass.toLowerCase().contains(search) && !window.title.toLowerCase().contains(search)) {
+        continue;
+      }
+      pids.add(window.pid);
+      App theApp = new App();
+      theApp.setName(processName.isEmpty() ? window.wmClass : processName);
+      theApp.setWindow(window.title);
+      theApp.setPID(window.pid);
+      apps.add(theApp);
+    }
+    return apps;
   }
 }
@@ -0,0 +1,438 @@
+/*
+ * Copyright (c) 2010-2019, sikuli.org, sikulix.com - MIT license
+ */
+package org.sikuli.natives;
+
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import com.sun.jna.platform.unix.X11;
+import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.NativeLongByReference;
+import com.sun.jna.ptr.PointerByReference;
+import org.sikuli.basics.Debug;
+
+import java.awt.Rectangle;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * INTERNAL USE: the top level windows on Linux/X11 as listed by an EWMH window manager
+ * (_NET_CLIENT_LIST), read with Xlib on an own display connection (no wmctrl/xdotool processes)<br>
+ * the window list and the window properties (pid, WM_CLASS, title) are cached: the cache is dropped
+ * with the PropertyNotify events of the root window (_NET_CLIENT_LIST) and of the windows
+ * (the geometry is always read when asked for)<br>
+ * works with any X server and a window manager supporting EWMH (e.g. Xvfb with openbox or fluxbox)
+ * - otherwise isValid() is false
+ */
+public class LinuxX11Windows {
+
+  private static String me = "LinuxX11Windows: ";
+  private static int lvl = 3;
+
+  private static void log(int level, String message, Object... args) {
+    if (Debug.isLogging(level)) {
+      Debug.logx(level, me + message, args);
+    }
+  }
+
+  /**
+   * a top level window: id, pid (-1 if not known), WM_CLASS (name.class like wmctrl -x) and title
+   */
+  public static class Client {
+    public final long id;
+    public final int pid;
+    public final String wmClass;
+    public final String title;
+    // only known, if read from wmctrl - otherwise use getBounds
+    final Rectangle bounds;
+
+    Client(long id, int pid, String wmClass, String title, Rectangle bounds) {
+      this.id = id;
+      this.pid = pid;
+      this.wmClass = wmClass;
+      this.title = title;
+      this.bounds = bounds;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("0x%08x %d %s %s", id, pid, wmClass, title);
+    }
+  }
+
+  private static LinuxX11Windows instance = null;
+
+  /**
+   * @return the shared instance (check isValid())
+   */
+  public static synchronized LinuxX11Windows get() {
+    if (null == instance) {
+      instance = new LinuxX11Windows();
+    }
+    return instance;
+  }
+
+  private static final int MAX_LONGS = 0x10000;
+  private static final long ALL_DESKTOPS = 0xFFFFFFFFL;
+
+  private X11 x11 = null;
+  private X11.Display display = null;
+  private X11.Window root = null;
+  private boolean valid = false;
+
+  private X11.Atom netClientList;
+  private X11.Atom netActiveWindow;
+  private X11.Atom netCloseWindow;
+  private X11.Atom netCurrentDesktop;
+  private X11.Atom netWmDesktop;
+  private X11.Atom netWmPid;
+  private X11.Atom netWmName;
+  private X11.Atom wmName;
+  private X11.Atom utf8String;
+  private final X11.Atom anyType = new X11.Atom(X11.AnyPropertyType);
+
+  private long[] clientList = null;
+  private final Map<Long, Client> clients = new HashMap<>();
+
+  private LinuxX11Windows() {
+    try {
+      init();
+    } catch (Throwable e) {
+      log(-1, "not available: %s", e.getMessage());
+      cleanup();
+    }
+  }
+
+  private void init() {
+    if (System.getenv("DISPLAY") == null) {
+      log(lvl, "no X display");
+      return;
+    }
+    x11 = X11.INSTANCE;
+    display = x11.XOpenDisplay(null);
+    if (display == null) {
+      log(lvl, "X display not accessible");
+      return;
+    }
+    ErrorHandler.install(display);
+    root = x11.XDefaultRootWindow(display);
+    netClientList = atom("_NET_CLIENT_LIST");
+    netActiveWindow = atom("_NET_ACTIVE_WINDOW");
+    netCloseWindow = atom("_NET_CLOSE_WINDOW");
+    netCurrentDesktop = atom("_NET_CURRENT_DESKTOP");
+    netWmDesktop = atom("_NET_WM_DESKTOP");
+    netWmPid = atom("_NET_WM_PID");
+    netWmName = atom("_NET_WM_NAME");
+    wmName = atom("WM_NAME");
+    utf8String = atom("UTF8_STRING");
+    if (getLongs(root, netClientList, X11.XA_WINDOW) == null) {
+      log(lvl, "window manager does not support EWMH (no _NET_CLIENT_LIST)");
+      cleanup();
+      return;
+    }
+    x11.XSelectInput(display, root, new NativeLong(X11.PropertyChangeMask));
+    x11.XFlush(display);
+    valid = true;
+    log(lvl, "using EWMH window list");
+  }
+
+  private X11.Atom atom(String name) {
+    return x11.XInternAtom(display, name, false);
+  }
+
+  public boolean isValid() {
+    return valid;
+  }
+
+  //<editor-fold desc="queries">
+  /**
+   * @return the top level windows in the order of the window manager's list
+   */
+  public synchronized List<Client> getClients() {
+    List<Client> found = new ArrayList<>();
+    if (!valid) {
+      return found;
+    }
+    processEvents();
+    if (clientList == null) {
+      long[] ids = getLongs(root, netClientList, X11.XA_WINDOW);
+      clientList = ids == null ? new long[0] : ids;
+      Map<Long, Client> kept = new HashMap<>();
+      for (long id : clientList) {
+        Client client = clients.get(id);
+        if (client != null) {
+          kept.put(id, client);
+        }
+      }
+      clients.clear();
+      clients.putAll(kept);
+      log(lvl + 1, "window list read: %d windows", clientList.length);
+    }
+    for (long id : clientList) {
+      Client client = clients.get(id);
+      if (client == null) {
+        client = readClient(id);
+        clients.put(id, client);
+      }
+      found.add(client);
+    }
+    return found;
+  }
+
+  /**
+   * @param id window
+   * @return the window area without decorations in screen coordinates (null: window not valid)
+   */
+  public synchronized Rectangle getBounds(long id) {
+    if (!valid) {
+      return null;
+    }
+    X11.Window window = new X11.Window(id);
+    X11.WindowByReference rootReturn = new X11.WindowByReference();
+    IntByReference x = new IntByReference();
+    IntByReference y = new IntByReference();
+    IntByReference width = new IntByReference();
+    IntByReference height = new IntByReference();
+    IntByReference border = new IntByReference();
+    IntByReference depth = new IntByReference();
+    if (0 == x11.XGetGeometry(display, window, rootReturn, x, y, width, height, border, depth)) {
+      return null;
+    }
+    X11.WindowByReference child = new X11.WindowByReference();
+    if (!x11.XTranslateCoordinates(display, window, root, 0, 0, x, y, child)) {
+      return null;
+    }
+    return new Rectangle(x.getValue(), y.getValue(), width.getValue(), height.getValue());
+  }
+
+  /**
+   * @return the window having the focus (0: none or not known)
+   */
+  public synchronized long getActiveWindow() {
+    if (!valid) {
+      return 0;
+    }
+    long[] active = getLongs(root, netActiveWindow, X11.XA_WINDOW);
+    return active == null || active.length == 0 ? 0 : active[0];
+  }
+  //</editor-fold>
+
+  //<editor-fold desc="actions">
+  /**
+   * switches to the window's desktop if needed and asks the window manager to activate the window
+   *
+   * @param id window
+   * @return false if not possible
+   */
+  public synchronized boolean activate(long id) {
+    if (!valid) {
+      return false;
+    }
+    X11.Window window = new X11.Window(id);
+    int desktop = getDesktop(window);
+    if (desktop > -1) {
+      sendMessage(root, netCurrentDesktop, desktop, 0);
+    }
+    // source indication 2: pager - the window manager does not apply focus stealing prevention
+    boolean ok = sendMessage(window, netActiveWindow, 2, 0);
+    x11.XMapRaised(display, window);
+    x11.XFlush(display);
+    return ok;
+  }
+
+  /**
+   * asks the window manager to close the window (like clicking the close button)
+   *
+   * @param id window
+   * @return false if not possible
+   */
+  public synchronized boolean close(long id) {
+    if (!valid) {
+      return false;
+    }
+    boolean ok = sendMessage(new X11.Window(id), netCloseWindow, 0, 2);
+    x11.XFlush(display);
+    return ok;
+  }
+
+  private boolean sendMessage(X11.Window window, X11.Atom type, long data0, long data1) {
+    X11.XEvent event = new X11.XEvent();
+    event.type = X11.ClientMessage;
+    event.setType(X11.XClientMessageEvent.class);
+    event.xclient.type = X11.ClientMessage;
+    event.xclient.send_event = 1;
+    event.xclient.display = display;
+    event.xclient.window = window;
+    event.xclient.message_type = type;
+    event.xclient.format = 32;
+    event.xclient.data.setType(NativeLong[].class);
+    event.xclient.data.l[0] = new NativeLong(data0);
+    event.xclient.data.l[1] = new NativeLong(data1);
+    for (int n = 2; n < event.xclient.data.l.length; n++) {
+      event.xclient.data.l[n] = new NativeLong(0);
+    }
+    NativeLong mask = new NativeLong(X11.SubstructureRedirectMask | X11.SubstructureNotifyMask);
+    return 0 != x11.XSendEvent(display, root, 0, mask, event);
+  }
+  //</editor-fold>
+
+  //<editor-fold desc="cache">
+  /*
+   * the events are only read here (no event thread): a query first drops, what has changed since the last query
+   */
+  private void processEvents() {
+    X11.XEvent event = new X11.XEvent();
+    while (x11.XPending(display) > 0) {
+      x11.XNextEvent(display, event);
+      if (event.type != X11.PropertyNotify) {
+        continue;
+      }
+      X11.XPropertyEvent property = (X11.XPropertyEvent) event.getTypedValue(X11.XPropertyEvent.class);
+      long window = property.window.longValue();
+      if (window == root.longValue()) {
+        if (property.atom.longValue() == netClientList.longValue()) {
+          clientList = null;
+        }
+      } else {
+        clients.remove(window);
+      }
+    }
+  }
+
+  private Client readClient(long id) {
+    X11.Window window = new X11.Window(id);
+    // to get the PropertyNotify events, that invalidate the cached properties
+    x11.XSelectInput(display, window, new NativeLong(X11.PropertyChangeMask));
+    long[] pid = getLongs(window, netWmPid, X11.XA_CARDINAL);
+    String wmClass = "N/A";
+    byte[] classHint = getBytes(window, X11.XA_WM_CLASS, X11.XA_STRING);
+    if (classHint != null) {
+      // res_name NUL res_class NUL
+      String[] parts = new String(classHint, StandardCharsets.ISO_8859_1).split("\0");
+      wmClass = parts.length > 1 ? parts[0] + "." + parts[1] : parts[0];
+    }
+    String title;
+    byte[] name = getBytes(window, netWmName, utf8String);
+    if (name != null) {
+      title = new String(name, StandardCharsets.UTF_8);
+    } else {
+      name = getBytes(window, wmName, anyType);
+      title = name == null ? "" : new String(name, StandardCharsets.ISO_8859_1);
+    }
+    return new Client(id, pid == null || pid.length == 0 ? -1 : (int) pid[0], wmClass, title, null);
+  }
+  //</editor-fold>
+
+  //<editor-fold desc="properties">
+  private int getDesktop(X11.Window window) {
+    long[] desktop = getLongs(window, netWmDesktop, X11.XA_CARDINAL);
+    if (desktop == null || desktop.length == 0 || desktop[0] == ALL_DESKTOPS) {
+      return -1;
+    }
+    return (int) desktop[0];
+  }
+
+  /*
+   * a property of format 32 (CARDINAL, WINDOW): the items are C longs
+   */
+  private long[] getLongs(X11.Window window, X11.Atom property, X11.Atom type) {
+    NativeLongByReference items = new NativeLongByReference();
+    Pointer data = getProperty(window, property, type, 32, items);
+    if (data == null) {
+      return null;
+    }
+    long[] values = new long[items.getValue().intValue()];
+    for (int n = 0; n < values.length; n++) {
+      values[n] = data.getNativeLong((long) n * NativeLong.SIZE).longValue();
+      if (NativeLong.SIZE == 4) {
+        values[n] &= 0xFFFFFFFFL;
+      }
+    }
+    x11.XFree(data);
+    return values;
+  }
+
+  /*
+   * a property of format 8 (STRING, UTF8_STRING, AnyPropertyType: e.g. COMPOUND_TEXT)
+   */
+  private byte[] getBytes(X11.Window window, X11.Atom property, X11.Atom type) {
+    NativeLongByReference items = new NativeLongByReference();
+    Pointer data = getProperty(window, property, type, 8, items);
+    if (data == null) {
+      return null;
+    }
+    byte[] values = data.getByteArray(0, items.getValue().intValue());
+    x11.XFree(data);
+    return values;
+  }
+
+  private Pointer getProperty(X11.Window window, X11.Atom property, X11.Atom type, int format,
+                              NativeLongByReference items) {
+    X11.AtomByReference actualType = new X11.AtomByReference();
+    IntByReference actualFormat = new IntByReference();
+    NativeLongByReference bytesAfter = new NativeLongByReference();
+    PointerByReference data = new PointerByReference();
+    int status = x11.XGetWindowProperty(display, window, property, new NativeLong(0), new NativeLong(MAX_LONGS),
+        false, type, actualType, actualFormat, items, bytesAfter, data);
+    if (status != X11.Success || data.getValue() == null) {
+      return null;
+    }
+    boolean typeOk = type.longValue() == X11.AnyPropertyType
+        || (actualType.getValue() != null && actualType.getValue().longValue() == type.longValue());
+    if (!typeOk || actualFormat.getValue() != format) {
+      x11.XFree(data.getValue());
+      return null;
+    }
+    return data.getValue();
+  }
+  //</editor-fold>
+
+  //<editor-fold desc="errors">
+  /*
+   * the Xlib default error handler exits the process - a window might vanish any time between
+   * reading the window list and reading its properties (BadWindow), so the errors of our connection
+   * are ignored (the call returns a failure), those of other connections (AWT) are handed on
+   */
+  private static class ErrorHandler implements X11.XErrorHandler {
+    private static ErrorHandler handler = null;
+
+    private final Pointer ours;
+    private volatile X11.XErrorHandler previous = null;
+
+    private ErrorHandler(Pointer ours) {
+      this.ours = ours;
+    }
+
+    static synchronized void install(X11.Display display) {
+      if (null == handler) {
+        // the handler must stay referenced as long as it is installed
+        handler = new ErrorHandler(display.getPointer());
+        handler.previous = X11.INSTANCE.XSetErrorHandler(handler);
+      }
+    }
+
+    @Override
+    public int apply(X11.Display display, X11.XErrorEvent errorEvent) {
+      if (display != null && ours.equals(display.getPointer())) {
+        log(lvl + 1, "X error %d (request %d) ignored", errorEvent.error_code, errorEvent.request_code);
+        return 0;
+      }
+      X11.XErrorHandler handOn = previous;
+      return handOn == null ? 0 : handOn.apply(display, errorEvent);
+    }
+  }
+  //</editor-fold>
+
+  public synchronized void cleanup() {
+    valid = false;
+    if (display != null) {
+      x11.XCloseDisplay(display);
+      display = null;
+    }
+    clientList = null;
+    clients.clear();
+  }
+}
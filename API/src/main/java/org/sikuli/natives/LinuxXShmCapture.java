@@ -0,0 +1,382 @@
+/*
+ * Copyright (c) 2010-2019, sikuli.org, sikulix.com - MIT license
+ */
+package org.sikuli.natives;
+
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import com.sun.jna.Structure;
+import com.sun.jna.platform.unix.X11;
+import com.sun.jna.ptr.IntByReference;
+import org.sikuli.basics.Debug;
+import org.sikuli.script.ScreenImage;
+import org.sikuli.script.support.IScreenCapture;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * INTERNAL USE: screen capture on Linux/X11 using the MIT-SHM extension<br>
+ * the server writes the pixels into one shared memory segment (allocated once for the root window),
+ * so a capture does not need the XGetImage round trip through the socket<br>
+ * optionally the XDamage extension is used to report the areas changed since the last call of getChanges()
+ * <br>
+ * works with any X server having MIT-SHM (e.g. Xvfb, Xorg) - if not available isValid() is false
+ */
+public class LinuxXShmCapture implements IScreenCapture {
+
+  private static String me = "LinuxXShmCapture: ";
+  private static int lvl = 3;
+
+  private static void log(int level, String message, Object... args) {
+    if (Debug.isLogging(level)) {
+      Debug.logx(level, me + message, args);
+    }
+  }
+
+  //<editor-fold desc="native interfaces">
+  interface XShm extends Library {
+    XShm INSTANCE = Native.load("Xext", XShm.class);
+
+    boolean XShmQueryExtension(X11.Display display);
+
+    Pointer XShmCreateImage(X11.Display display, X11.Visual visual, int depth, int format, Pointer data,
+                            XShmSegmentInfo shminfo, int width, int height);
+
+    boolean XShmAttach(X11.Display display, XShmSegmentInfo shminfo);
+
+    boolean XShmDetach(X11.Display display, XShmSegmentInfo shminfo);
+
+    boolean XShmGetImage(X11.Display display, X11.Drawable drawable, Pointer image, int x, int y,
+                         NativeLong planeMask);
+  }
+
+  interface Shm extends Library {
+    Shm INSTANCE = Native.load("c", Shm.class);
+
+    int IPC_PRIVATE = 0;
+    int IPC_CREAT = 01000;
+    int IPC_RMID = 0;
+
+    int shmget(int key, NativeLong size, int shmflg);
+
+    Pointer shmat(int shmid, Pointer shmaddr, int shmflg);
+
+    int shmdt(Pointer shmaddr);
+
+    int shmctl(int shmid, int cmd, Pointer buf);
+  }
+
+  interface XDamage extends Library {
+    int XDamageReportNonEmpty = 3;
+
+    boolean XDamageQueryExtension(X11.Display display, IntByReference eventBase, IntByReference errorBase);
+
+    NativeLong XDamageCreate(X11.Display display, X11.Drawable drawable, int level);
+
+    void XDamageSubtract(X11.Display display, NativeLong damage, NativeLong repair, NativeLong parts);
+
+    void XDamageDestroy(X11.Display display, NativeLong damage);
+  }
+
+  interface XFixes extends Library {
+    NativeLong XFixesCreateRegion(X11.Display display, Pointer rectangles, int nrectangles);
+
+    Pointer XFixesFetchRegion(X11.Display display, NativeLong region, IntByReference nrectanglesRet);
+
+    void XFixesDestroyRegion(X11.Display display, NativeLong region);
+  }
+
+  public static class XShmSegmentInfo extends Structure {
+    public NativeLong shmseg;
+    public int shmid;
+    public Pointer shmaddr;
+    public int readOnly;
+
+    @Override
+    protected List<String> getFieldOrder() {
+      return Arrays.asList("shmseg", "shmid", "shmaddr", "readOnly");
+    }
+  }
+
+  public static class XImageHeader extends Structure {
+    public int width;
+    public int height;
+    public int xoffset;
+    public int format;
+    public Pointer data;
+    public int byte_order;
+    public int bitmap_unit;
+    public int bitmap_bit_order;
+    public int bitmap_pad;
+    public int depth;
+    public int bytes_per_line;
+    public int bits_per_pixel;
+    public NativeLong red_mask;
+    public NativeLong green_mask;
+    public NativeLong blue_mask;
+
+    public XImageHeader(Pointer p) {
+      super(p);
+      read();
+    }
+
+    @Override
+    protected List<String> getFieldOrder() {
+      return Arrays.asList("width", "height", "xoffset", "format", "data", "byte_order", "bitmap_unit",
+          "bitmap_bit_order", "bitmap_pad", "depth", "bytes_per_line", "bits_per_pixel",
+          "red_mask", "green_mask", "blue_mask");
+    }
+  }
+  //</editor-fold>
+
+  private static final int ZPixmap = 2;
+  private static final NativeLong AllPlanes = new NativeLong(-1);
+
+  private X11 x11 = null;
+  private X11.Display display = null;
+  private X11.Window root = null;
+  private X11.Visual visual = null;
+  private int depth = 0;
+  private Rectangle rootBounds = null;
+  private XShmSegmentInfo shminfo = null;
+  private boolean attached = false;
+  private Pointer image = null;
+  private int imageWidth = 0;
+  private int imageHeight = 0;
+  private boolean valid = false;
+
+  private XDamage xdamage = null;
+  private XFixes xfixes = null;
+  private NativeLong damage = null;
+  private NativeLong damageParts = null;
+
+  public LinuxXShmCapture() {
+    try {
+      init();
+    } catch (Throwable e) {
+      log(-1, "not available: %s", e.getMessage());
+      cleanup();
+    }
+  }
+
+  private void init() {
+    String displayName = System.getenv("DISPLAY");
+    if (displayName == null || !(displayName.startsWith(":") || displayName.startsWith("unix:"))) {
+      // shared memory only works with a local X server
+      log(lvl, "no local X display: %s", displayName);
+      return;
+    }
+    x11 = X11.INSTANCE;
+    display = x11.XOpenDisplay(null);
+    if (display == null) {
+      log(lvl, "no X display");
+      return;
+    }
+    if (!XShm.INSTANCE.XShmQueryExtension(display)) {
+      log(lvl, "X server has no MIT-SHM extension");
+      cleanup();
+      return;
+    }
+    int screen = x11.XDefaultScreen(display);
+    root = x11.XRootWindow(display, screen);
+    X11.XWindowAttributes attributes = new X11.XWindowAttributes();
+    x11.XGetWindowAttributes(display, root, attributes);
+    rootBounds = new Rectangle(0, 0, attributes.width, attributes.height);
+    visual = attributes.visual;
+    depth = attributes.depth;
+    if (depth != 24 && depth != 32) {
+      log(lvl, "unsupported depth %d", depth);
+      cleanup();
+      return;
+    }
+    shminfo = new XShmSegmentInfo();
+    shminfo.shmid = Shm.INSTANCE.shmget(Shm.IPC_PRIVATE,
+        new NativeLong(4L * rootBounds.width * rootBounds.height), Shm.IPC_CREAT | 0600);
+    if (shminfo.shmid < 0) {
+      log(lvl, "shmget failed");
+      cleanup();
+      return;
+    }
+    shminfo.shmaddr = Shm.INSTANCE.shmat(shminfo.shmid, null, 0);
+    if (shminfo.shmaddr == null || Pointer.nativeValue(shminfo.shmaddr) == -1) {
+      log(lvl, "shmat failed");
+      shminfo.shmaddr = null;
+      cleanup();
+      return;
+    }
+    shminfo.readOnly = 0;
+    if (!XShm.INSTANCE.XShmAttach(display, shminfo)) {
+      log(lvl, "XShmAttach failed");
+      cleanup();
+      return;
+    }
+    attached = true;
+    x11.XSync(display, false);
+    // mark for removal now: the segment lives until the last detach (no leak if the JVM dies)
+    Shm.INSTANCE.shmctl(shminfo.shmid, Shm.IPC_RMID, null);
+    if (!createImage(rootBounds.width, rootBounds.height)) {
+      cleanup();
+      return;
+    }
+    XImageHeader header = new XImageHeader(image);
+    if (header.bits_per_pixel != 32 || header.red_mask.longValue() != 0xff0000L
+        || header.blue_mask.longValue() != 0xffL) {
+      log(lvl, "unsupported pixel format: %d bpp, red mask %x",
+          header.bits_per_pixel, header.red_mask.longValue());
+      cleanup();
+      return;
+    }
+    valid = true;
+    initDamage();
+    log(lvl, "using MIT-SHM for %dx%d (XDamage: %s)", rootBounds.width, rootBounds.height, damage != null);
+  }
+
+  private void initDamage() {
+    try {
+      xdamage = Native.load("Xdamage", XDamage.class);
+      xfixes = Native.load("Xfixes", XFixes.class);
+      IntByReference eventBase = new IntByReference();
+      IntByReference errorBase = new IntByReference();
+      if (!xdamage.XDamageQueryExtension(display, eventBase, errorBase)) {
+        xdamage = null;
+        return;
+      }
+      damage = xdamage.XDamageCreate(display, root, XDamage.XDamageReportNonEmpty);
+      damageParts = xfixes.XFixesCreateRegion(display, null, 0);
+      x11.XSync(display, false);
+    } catch (Throwable e) {
+      log(lvl, "XDamage not available: %s", e.getMessage());
+      xdamage = null;
+      damage = null;
+    }
+  }
+
+  private boolean createImage(int width, int height) {
+    if (image != null) {
+      if (imageWidth == width && imageHeight == height) {
+        return true;
+      }
+      destroyImage();
+    }
+    image = XShm.INSTANCE.XShmCreateImage(display, visual, depth, ZPixmap, shminfo.shmaddr, shminfo,
+        width, height);
+    if (image == null) {
+      log(lvl, "XShmCreateImage failed (%dx%d)", width, height);
+      return false;
+    }
+    imageWidth = width;
+    imageHeight = height;
+    return true;
+  }
+
+  private void destroyImage() {
+    // for images created by XShmCreateImage only the XImage itself is freed, not the shared data
+    X11.XImage ximage = new X11.XImage();
+    ximage.setPointer(image);
+    x11.XDestroyImage(ximage);
+    image = null;
+  }
+
+  @Override
+  public boolean isValid() {
+    return valid;
+  }
+
+  @Override
+  public synchronized ScreenImage capture(Rectangle rect) {
+    if (!valid) {
+      return null;
+    }
+    Rectangle area = rootBounds.intersection(rect);
+    if (!area.equals(rect)) {
+      return null;
+    }
+    if (!createImage(rect.width, rect.height)) {
+      return null;
+    }
+    if (!XShm.INSTANCE.XShmGetImage(display, root, image, rect.x, rect.y, AllPlanes)) {
+      log(lvl, "XShmGetImage failed for %s", rect);
+      return null;
+    }
+    XImageHeader header = new XImageHeader(image);
+    BufferedImage img = new BufferedImage(rect.width, rect.height, BufferedImage.TYPE_INT_RGB);
+    int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+    int stride = header.bytes_per_line;
+    if (stride == rect.width * 4) {
+      shminfo.shmaddr.read(0, pixels, 0, pixels.length);
+    } else {
+      for (int row = 0; row < rect.height; row++) {
+        shminfo.shmaddr.read((long) row * stride, pixels, row * rect.width, rect.width);
+      }
+    }
+    if (depth == 32) {
+      for (int i = 0; i < pixels.length; i++) {
+        pixels[i] &= 0xffffff;
+      }
+    }
+    return new ScreenImage(new Rectangle(rect), img);
+  }
+
+  @Override
+  public synchronized List<Rectangle> getChanges() {
+    if (!valid || damage == null) {
+      return null;
+    }
+    List<Rectangle> changes = new ArrayList<>();
+    // drop the DamageNotify events - the damage itself is collected with XDamageSubtract
+    X11.XEvent event = new X11.XEvent();
+    while (x11.XPending(display) > 0) {
+      x11.XNextEvent(display, event);
+    }
+    xdamage.XDamageSubtract(display, damage, new NativeLong(0), damageParts);
+    IntByReference count = new IntByReference();
+    Pointer rects = xfixes.XFixesFetchRegion(display, damageParts, count);
+    if (rects != null) {
+      // XRectangle: short x, short y, unsigned short width, unsigned short height
+      for (int i = 0; i < count.getValue(); i++) {
+        long offset = i * 8L;
+        changes.add(new Rectangle(rects.getShort(offset), rects.getShort(offset + 2),
+            rects.getShort(offset + 4) & 0xffff, rects.getShort(offset + 6) & 0xffff));
+      }
+      x11.XFree(rects);
+    }
+    return changes;
+  }
+
+  @Override
+  public synchronized void cleanup() {
+    valid = false;
+    if (display == null) {
+      return;
+    }
+    if (damage != null) {
+      xdamage.XDamageDestroy(display, damage);
+      xfixes.XFixesDestroyRegion(display, damageParts);
+      damage = null;
+    }
+    if (attached) {
+      XShm.INSTANCE.XShmDetach(display, shminfo);
+      attached = false;
+    }
+    if (image != null) {
+      destroyImage();
+    }
+    x11.XCloseDisplay(display);
+    display = null;
+    if (shminfo != null && shminfo.shmaddr != null) {
+      Shm.INSTANCE.shmdt(shminfo.shmaddr);
+      shminfo.shmaddr = null;
+    }
+    if (shminfo != null && shminfo.shmid >= 0) {
+      Shm.INSTANCE.shmctl(shminfo.shmid, Shm.IPC_RMID, null);
+      shminfo.shmid = -1;
+    }
+  }
+}
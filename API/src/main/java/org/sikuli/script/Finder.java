@@ -17,8 +17,10 @@ import org.sikuli.script.support.RunTime;
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferByte;
 import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -45,7 +47,9 @@ public class Finder implements Iterator<Match> {
   private static String me = "Finder: ";
   private static int lvl = 3;
   private static void log(int level, String message, Object... args) {
-    Debug.logx(level, me + message, args);
+    if (Debug.isLogging(level)) {
+      Debug.logx(level, me + message, args);
+    }
   }
 
   //<editor-fold defaultstate="collapsed" desc="Constructors">
@@ -113,8 +117,30 @@ public class Finder implements Iterator<Match> {
     _region = region;
   }
 
+  /**
+   * prepares the image searched in for many searches with this Finder:
+   * the sums needed to normalize the match scores (and optionally the DFT of the image)
+   * are computed once and reused with each following find/findAll
+   *
+   * @param withDFT true: also keep the DFT of the image (pays off with larger images)
+   */
+  public void prepare(boolean withDFT) {
+    Mat base = _findInput.getBase();
+    if (SX.isNull(base) || base.empty()) {
+      log(-1, "prepare: no image to search in");
+      return;
+    }
+    _findInput.setPrepared(new PreparedImage(base, withDFT));
+  }
+
   protected void setScreenImage(ScreenImage simg) {
-    _findInput.setSource(Finder2.makeMat(simg.getImage()));
+    _findInput.setScreenImage(simg);
+    Mat mat = simg.getMat();
+    if (mat != null) {
+      _findInput.setSource(mat);
+    } else {
+      _findInput.setSource(Finder2.makeMat(simg.getImage()));
+    }
   }
 //</editor-fold>
 
@@ -213,7 +239,10 @@ public class Finder implements Iterator<Match> {
       _findInput.setTarget(possibleImageResizeOrCallback(_image, aPtn.getResize()));
       _findInput.setSimilarity(aPtn.getSimilar());
       _findInput.setIsPattern();
-      _results = Finder2.find(_findInput);
+      _findInput.setColorCritical(aPtn.isColorCritical());
+      _findInput.setImage(_image);
+      _findInput.setMatcher(aPtn.getMatcher());
+      _results = findMaybeScaled(_image, aPtn);
       currentMatchIndex = 0;
       return aPtn.getFilename();
     } else {
@@ -234,9 +263,11 @@ public class Finder implements Iterator<Match> {
     }
     if (img.isValid()) {
       _image = img;
+      _findInput.setImage(img);
+      _findInput.setMatcher(null);
       _findInput.setTarget(possibleImageResizeOrCallback(img));
       _findInput.setSimilarity(Settings.MinSimilarity);
-      _results = Finder2.find(_findInput);
+      _results = findMaybeScaled(img, null);
       currentMatchIndex = 0;
       return img.getFilename();
     } else if (img.isUseable()) {
@@ -329,12 +360,15 @@ public class Finder implements Iterator<Match> {
       _findInput.setTarget(possibleImageResizeOrCallback(_image, aPtn.getResize()));
       _findInput.setSimilarity(aPtn.getSimilar());
       _findInput.setIsPattern();
+      _findInput.setColorCritical(aPtn.isColorCritical());
+      _findInput.setImage(_image);
+      _findInput.setMatcher(aPtn.getMatcher());
       _findInput.setFindAll();
       if (_pattern.hasMask()) {
         _findInput.setMask(_pattern.getMask());
       }
       Debug timing = Debug.startTimer("Finder.findAll");
-      _results = Finder2.find(_findInput);
+      _results = findMaybeScaled(_image, aPtn);
       currentMatchIndex = 0;
       timing.end();
       return aPtn.getFilename();
@@ -356,11 +390,13 @@ public class Finder implements Iterator<Match> {
     }
     if (img.isValid()) {
       _image = img;
+      _findInput.setImage(img);
+      _findInput.setMatcher(null);
       _findInput.setTarget(possibleImageResizeOrCallback(img));
       _findInput.setSimilarity(Settings.MinSimilarity);
       _findInput.setFindAll();
       Debug timing = Debug.startTimer("Finder.findAll");
-      _results = Finder2.find(_findInput);
+      _results = findMaybeScaled(img, null);
       currentMatchIndex = 0;
       timing.end();
       return img.getFilename();
@@ -370,6 +406,118 @@ public class Finder implements Iterator<Match> {
   }
   //</editor-fold>
 
+  //<editor-fold defaultstate="collapsed" desc="multi-scale">
+  private FindResult2 findMaybeScaled(Image img, Pattern ptn) {
+    boolean multiScale;
+    if (ptn != null) {
+      multiScale = ptn.isMultiScale() && ptn.getResize() == 0 && !ptn.hasMask()
+          && Finder2.getMatcher(ptn.getMatcher()) == null;
+    } else {
+      multiScale = Settings.MultiScale;
+    }
+    if (!multiScale || SX.isNull(_findInput.getBase())) {
+      return Finder2.find(_findInput);
+    }
+    if (ptn != null) {
+      return findScaled(img, ptn.getScaleMin(), ptn.getScaleMax());
+    }
+    return findScaled(img, Settings.MultiScaleMin, Settings.MultiScaleMax);
+  }
+
+  private FindResult2 scaledResult;
+  private double scaledScore;
+  private float scaledScale;
+  private Mat scaledTarget;
+  private int scaledTries;
+
+  /**
+   * search the image in the scale range coarse-to-fine:<br>
+   * the scale found best before on this screen, then 1.0, then the range with Settings.MultiScaleStep
+   * (nearest to 1.0 first), then halving the step around the best scale down to 0.05<br>
+   * stops with the first score above Settings.MultiScaleConfident
+   * (the scale found best before: with a score above the wanted similarity)
+   */
+  private FindResult2 findScaled(Image img, float min, float max) {
+    long begin = System.currentTimeMillis();
+    IScreen screen = _region == null ? null : _region.getScreen();
+    double confident = Math.max(_findInput.getScore(), Settings.MultiScaleConfident);
+    scaledResult = null;
+    scaledScore = -1;
+    scaledScale = 0;
+    scaledTarget = null;
+    scaledTries = 0;
+    Set<Integer> tried = new HashSet<>();
+    boolean done = false;
+    float remembered = img.getBestScale(screen);
+    if (remembered >= min && remembered <= max) {
+      done = probeScale(img, remembered, tried) > _findInput.getScore();
+    }
+    if (!done && min <= 1 && max >= 1) {
+      done = probeScale(img, 1, tried) > confident;
+    }
+    float step = Math.max(0.05f, Settings.MultiScaleStep);
+    if (!done) {
+      List<Float> coarse = new ArrayList<>();
+      for (float scale = min; scale <= max + 0.001f; scale += step) {
+        coarse.add(scale);
+      }
+      coarse.sort((s1, s2) -> Float.compare(Math.abs(s1 - 1), Math.abs(s2 - 1)));
+      for (float scale : coarse) {
+        if (probeScale(img, scale, tried) > confident) {
+          done = true;
+          break;
+        }
+      }
+    }
+    while (!done && scaledScale > 0 && (step /= 2) >= 0.05f) {
+      float center = scaledScale;
+      for (float scale : new float[]{center - step, center + step}) {
+        if (scale >= min && scale <= max && probeScale(img, scale, tried) > confident) {
+          done = true;
+          break;
+        }
+      }
+    }
+    if (scaledTarget != null) {
+      _findInput.setMask(new Mat());
+      _findInput.setTarget(scaledTarget);
+      _findInput.setAttributes();
+    }
+    if (scaledResult != null) {
+      img.setBestScale(screen, scaledScale);
+    }
+    log(lvl, "multi-scale: %s: %.2f at scale %.2f (%d tries, %d msec)",
+        img.getName(), scaledScore, scaledScale, scaledTries, System.currentTimeMillis() - begin);
+    return scaledResult;
+  }
+
+  private double probeScale(Image img, float scale, Set<Integer> tried) {
+    if (!tried.add(Math.round(scale * 100))) {
+      return -1;
+    }
+    Mat base = _findInput.getBase();
+    Mat target = img.getScaled(scale);
+    if (target.empty() || target.cols() < 4 || target.rows() < 4
+        || target.cols() > base.cols() || target.rows() > base.rows()) {
+      return -1;
+    }
+    scaledTries++;
+    // multi-scale runs only without an explicit mask: a mask present is the alpha of the previous target
+    _findInput.setMask(new Mat());
+    _findInput.setTarget(target);
+    _findInput.setBestScore(-1);
+    FindResult2 result = Finder2.find(_findInput);
+    double score = _findInput.getBestScore();
+    if (score > scaledScore) {
+      scaledScore = score;
+      scaledScale = Math.round(scale * 100) / 100f;
+      scaledTarget = target;
+      scaledResult = result;
+    }
+    return score;
+  }
+  //</editor-fold>
+
   //<editor-fold desc="findText">
   /**
    * do a text find with the given text in the Finder's image
@@ -383,7 +531,7 @@ public class Finder implements Iterator<Match> {
       return null;
     }
     _findInput.setTargetText(text);
-    _findInput.setWhere(where);
+    _findInput.setWhere(where != null ? where : _region);
     _results = Finder2.find(_findInput);
     currentMatchIndex = 0;
     return text;
@@ -554,6 +702,53 @@ public class Finder implements Iterator<Match> {
     protected static void init() {
     }
 
+    //<editor-fold desc="matcher">
+    /**
+     * an alternative image search engine (the default is template matching, see doFindMatch)
+     */
+    public interface ImageMatcher {
+      /**
+       * @param findInput the image (getTarget) and the image to search in (getBase)
+       * @return the result or null if not found
+       */
+      FindResult2 find(FindInput2 findInput);
+    }
+
+    public static final String TEMPLATE = "template";
+
+    private static final Map<String, ImageMatcher> matchers = Collections.synchronizedMap(new HashMap<>());
+
+    static {
+      matchers.put(KeypointMatcher.ORB_NAME, new KeypointMatcher(KeypointMatcher.ORB_NAME));
+      matchers.put(KeypointMatcher.AKAZE_NAME, new KeypointMatcher(KeypointMatcher.AKAZE_NAME));
+    }
+
+    /**
+     * make an image search engine available for Pattern.matcher(name)
+     *
+     * @param name    the name (case is ignored)
+     * @param matcher the engine
+     */
+    public static void addMatcher(String name, ImageMatcher matcher) {
+      matchers.put(name.toLowerCase(), matcher);
+    }
+
+    /**
+     * @param name the name of the engine
+     * @return the engine or null for template matching (also if not known)
+     */
+    public static ImageMatcher getMatcher(String name) {
+      if (name == null || TEMPLATE.equalsIgnoreCase(name)) {
+        return null;
+      }
+      ImageMatcher matcher = matchers.get(name.toLowerCase());
+      if (matcher == null) {
+        log.error("matcher %s not known - using template matching", name);
+      }
+      return matcher;
+    }
+    //</editor-fold>
+
     //<editor-fold desc="housekeeping">
     static class Log {
       private static String prefix = "UnKnown";
@@ -566,8 +761,32 @@ public class Finder implements Iterator<Match> {
         Debug.error(prefix + msg, args);
       }
 
+      public static boolean isTrace() {
+        return Settings.DebugLogs && Debug.isLogging(3);
+      }
+
+      public static void trace(String msg) {
+        if (isTrace()) {
+          Debug.log(3, prefix + msg);
+        }
+      }
+
+      public static void trace(String msg, Object arg) {
+        if (isTrace()) {
+          Debug.log(3, prefix + msg, arg);
+        }
+      }
+
+      public static void trace(String msg, Object arg1, Object arg2) {
+        if (isTrace()) {
+          Debug.log(3, prefix + msg, arg1, arg2);
+        }
+      }
+
       public static void trace(String msg, Object... args) {
-        Debug.log(3, prefix + msg, args);
+        if (isTrace()) {
+          Debug.log(3, prefix + msg, args);
+        }
       }
     }
 
@@ -633,9 +852,12 @@ public class Finder implements Iterator<Match> {
       }
       if (fInput.isText()) {
         return doFindText();
-      } else {
-        return doFindImage();
       }
+      ImageMatcher matcher = getMatcher(fInput.getMatcher());
+      if (matcher != null) {
+        return matcher.find(fInput);
+      }
+      return doFindImage();
     }
 
     private FindResult2 doFindImage() {
@@ -645,7 +867,7 @@ public class Finder implements Iterator<Match> {
       mBase = findInput.getBase();
       boolean success = false;
       long begin_lap = 0;
-      long begin_find = new Date().getTime();
+      long begin_find = System.currentTimeMillis();
       Core.MinMaxLocResult mMinMax = null;
 
       double rfactor = 0;
@@ -660,7 +882,7 @@ public class Finder implements Iterator<Match> {
       trueOrFalse = false;
       if (trueOrFalse) {
         // ************************************************* search in downsized
-        begin_lap = new Date().getTime();
+        begin_lap = System.currentTimeMillis();
         double imgFactor = findInput.getResizeFactor();
         Size sizeBase, sizePattern;
         mResult = null;
@@ -679,8 +901,10 @@ public class Finder implements Iterator<Match> {
             break;
           }
         }
-        log.trace("downSizeFound: %s", downSizeFound);
-        log.trace("doFind: down: %%%.2f %d msec", 100 * mMinMax.maxVal, new Date().getTime() - begin_lap);
+        if (log.isTrace()) {
+          log.trace("downSizeFound: %s", downSizeFound);
+          log.trace("doFind: down: %%%.2f %d msec", 100 * mMinMax.maxVal, System.currentTimeMillis() - begin_lap);
+        }
       }
       findWhere = this.mBase;
       trueOrFalse = !findInput.isFindAll() && downSizeFound;
@@ -692,7 +916,7 @@ public class Finder implements Iterator<Match> {
         } else {
           int maxLocX = (int) (mMinMax.maxLoc.x * rfactor);
           int maxLocY = (int) (mMinMax.maxLoc.y * rfactor);
-          begin_lap = new Date().getTime();
+          begin_lap = System.currentTimeMillis();
           int margin = ((int) findInput.getResizeFactor()) + 1;
           Rectangle rSub = new Rectangle(Math.max(0, maxLocX - margin), Math.max(0, maxLocY - margin),
                   Math.min(findInput.getTarget().width() + 2 * margin, findWhere.width()),
@@ -707,27 +931,34 @@ public class Finder implements Iterator<Match> {
           if (maxVal > wantedScore) {
             findResult = new FindResult2(mResult, findInput, new int[]{rectSub.x, rectSub.y});
           }
-          if (SX.isNotNull(findResult)) {
+          if (SX.isNotNull(findResult) && log.isTrace()) {
             log.trace("doFind: after down: %%%.2f(?%%%.2f) %d msec",
-                    maxVal * 100, wantedScore * 100, new Date().getTime() - begin_lap);
+                    maxVal * 100, wantedScore * 100, System.currentTimeMillis() - begin_lap);
           }
         }
       }
       // ************************************** search in original
       if (downSizeScore < 0) {
-        begin_lap = new Date().getTime();
-        mResult = doFindMatch(findInput.getTarget(), findWhere, findInput);
+        begin_lap = System.currentTimeMillis();
+        if (findInput.isGrayFirst()) {
+          mResult = doFindMatch(findInput.getTargetGray(), findInput.getBaseGray(), findInput);
+        } else {
+          mResult = doFindMatch(findInput.getTarget(), findWhere, findInput);
+        }
         mMinMax = Core.minMaxLoc(mResult);
-        if (!isCheckLastSeen) {
+        findInput.setBestScore(mMinMax.maxVal);
+        if (!isCheckLastSeen && log.isTrace()) {
           log.trace("doFind: in original: %%%.4f (?%.0f) %d msec %s",
-                  mMinMax.maxVal * 100, findInput.getScore() * 100, new Date().getTime() - begin_lap,
-                  findInput.hasMask() ? " **withMask" : "");
+                  mMinMax.maxVal * 100, findInput.getScore() * 100, System.currentTimeMillis() - begin_lap,
+                  findInput.hasMask() ? " **withMask" : (findInput.isGrayFirst() ? " **gray" : ""));
         }
         if (mMinMax.maxVal > findInput.getScore()) {
           findResult = new FindResult2(mResult, findInput);
         }
       }
-      log.trace("doFind: end %d msec", new Date().getTime() - begin_find);
+      if (log.isTrace()) {
+        log.trace("doFind: end %d msec", System.currentTimeMillis() - begin_find);
+      }
       return findResult;
     }
 
@@ -737,7 +968,8 @@ public class Finder implements Iterator<Match> {
         log.error("doFindMatch: image conversion to cvMat did not work");
       } else {
         Mat mWhere = where;
-        if (findInput.isGray()) {
+        if (findInput.isGray() && where.channels() > 1) {
+          mWhere = getNewMat();
           Imgproc.cvtColor(where, mWhere, Imgproc.COLOR_BGR2GRAY);
         }
         if (!findInput.isPlainColor()) {
@@ -745,17 +977,24 @@ public class Finder implements Iterator<Match> {
             Mat mask = findInput.getMask();
             Imgproc.matchTemplate(mWhere, what, mResult, Imgproc.TM_CCORR_NORMED, mask);
           } else {
-            Imgproc.matchTemplate(mWhere, what, mResult, Imgproc.TM_CCOEFF_NORMED);
+            PreparedImage prepared = findInput.getPrepared(mWhere);
+            if (SX.isNotNull(prepared) && prepared.isValid(what)) {
+              mResult = prepared.match(what);
+            } else {
+              Imgproc.matchTemplate(mWhere, what, mResult, Imgproc.TM_CCOEFF_NORMED);
+            }
           }
         } else {
           Mat wherePlain = mWhere;
           Mat whatPlain = what;
           if (findInput.isBlack()) {
+            wherePlain = getNewMat();
+            whatPlain = getNewMat();
             Core.bitwise_not(mWhere, wherePlain);
             Core.bitwise_not(what, whatPlain);
           }
           if (findInput.hasMask()) {
-            Imgproc.matchTemplate(wherePlain, what, mResult, Imgproc.TM_SQDIFF_NORMED, findInput.getMask());
+            Imgproc.matchTemplate(wherePlain, whatPlain, mResult, Imgproc.TM_SQDIFF_NORMED, findInput.getMask());
           } else {
             Imgproc.matchTemplate(wherePlain, whatPlain, mResult, Imgproc.TM_SQDIFF_NORMED);
           }
@@ -769,7 +1008,13 @@ public class Finder implements Iterator<Match> {
       FindResult2 findResult = null;
       boolean globalSearch = false;
       Region where = fInput.getWhere();
-      BufferedImage bimg = where.getScreen().capture(where).getImage();
+      ScreenImage simg = fInput.getScreenImage();
+      BufferedImage bimg;
+      if (simg != null) {
+        bimg = simg.getImage();
+      } else {
+        bimg = where.getScreen().capture(where).getImage();
+      }
       BufferedImage bimgWork = null;
       String text = fInput.getTargetText();
       TextRecognizer tr = TextRecognizer.start();
@@ -1009,9 +1254,34 @@ public class Finder implements Iterator<Match> {
       return makeMat(bImg, true);
     }
 
+    /*
+     * the conversions take the data buffer as the whole image - a sub image (getSubimage)
+     * shares the buffer of its parent (offset, scanline stride), so its pixels are copied first
+     */
+    private static BufferedImage asCompact(BufferedImage bImg) {
+      int type = bImg.getType();
+      if (type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_3BYTE_BGR
+          && type != BufferedImage.TYPE_4BYTE_ABGR && type != BufferedImage.TYPE_BYTE_GRAY) {
+        return bImg;
+      }
+      WritableRaster raster = bImg.getRaster();
+      DataBuffer buffer = raster.getDataBuffer();
+      long size = (long) bImg.getWidth() * bImg.getHeight() * raster.getNumDataElements();
+      if (raster.getParent() == null && raster.getSampleModelTranslateX() == 0
+          && raster.getSampleModelTranslateY() == 0 && buffer.getNumBanks() == 1 && buffer.getSize() == size) {
+        return bImg;
+      }
+      WritableRaster copy = raster.createCompatibleWritableRaster(bImg.getWidth(), bImg.getHeight());
+      bImg.copyData(copy);
+      return new BufferedImage(bImg.getColorModel(), copy, bImg.isAlphaPremultiplied(), null);
+    }
+
     public static Mat makeMat(BufferedImage bImg, boolean asBGR) {
+      bImg = asCompact(bImg);
       if (bImg.getType() == BufferedImage.TYPE_INT_RGB) {
-        log.trace("makeMat: INT_RGB (%dx%d)", bImg.getWidth(), bImg.getHeight());
+        if (log.isTrace()) {
+          log.trace("makeMat: INT_RGB (%dx%d)", bImg.getWidth(), bImg.getHeight());
+        }
         int[] data = ((DataBufferInt) bImg.getRaster().getDataBuffer()).getData();
         ByteBuffer byteBuffer = ByteBuffer.allocate(data.length * 4);
         IntBuffer intBuffer = byteBuffer.asIntBuffer();
@@ -1026,7 +1296,9 @@ public class Finder implements Iterator<Match> {
         Core.mixChannels(mixIn, mixOut, new MatOfInt(0, 0, 1, 3, 2, 2, 3, 1));
         return oMatBGR;
       } else if (bImg.getType() == BufferedImage.TYPE_3BYTE_BGR) {
-        log.trace("makeMat: 3BYTE_BGR (%dx%d)", bImg.getWidth(), bImg.getHeight());
+        if (log.isTrace()) {
+          log.trace("makeMat: 3BYTE_BGR (%dx%d)", bImg.getWidth(), bImg.getHeight());
+        }
         byte[] data = ((DataBufferByte) bImg.getRaster().getDataBuffer()).getData();
         Mat aMatBGR = new Mat(bImg.getHeight(), bImg.getWidth(), CvType.CV_8UC3);
         aMatBGR.put(0, 0, data);
@@ -1218,6 +1490,19 @@ public class Finder implements Iterator<Match> {
 
     private Mat targetBGR = new Mat();
 
+    private ScreenImage screenImage = null;
+
+    /**
+     * the capture the source Mat was made from (a text search uses it instead of capturing again)
+     */
+    public void setScreenImage(ScreenImage simg) {
+      screenImage = simg;
+    }
+
+    public ScreenImage getScreenImage() {
+      return screenImage;
+    }
+
     public void setWhere(Region where) {
       this.where = where;
     }
@@ -1238,6 +1523,97 @@ public class Finder implements Iterator<Match> {
 
     public void setTarget(Mat target) {
       this.target = target;
+      targetGray = null;
+    }
+
+    private Image image = null;
+
+    /**
+     * @param image the Image the target was made from (engines might cache data with it)
+     */
+    public void setImage(Image image) {
+      this.image = image;
+    }
+
+    public Image getImage() {
+      return image;
+    }
+
+    private String matcher = null;
+
+    /**
+     * @param matcher name of the image search engine (null: template matching)
+     */
+    public void setMatcher(String matcher) {
+      this.matcher = matcher;
+    }
+
+    public String getMatcher() {
+      return matcher;
+    }
+
+    private boolean colorCritical = false;
+
+    public void setColorCritical(boolean colorCritical) {
+      this.colorCritical = colorCritical;
+    }
+
+    /**
+     * Settings.GrayMatching: search on grayscale and verify the candidates by color<br>
+     * not for color critical patterns, masked or plain color images
+     *
+     * @return true if the search should be done on grayscale
+     */
+    public boolean isGrayFirst() {
+      return Settings.GrayMatching && !colorCritical && !targetTypeText && !hasMask() && !plainColor
+              && getTarget().channels() == 3 && source.channels() == 3;
+    }
+
+    private Mat targetGray = null;
+
+    protected Mat getTargetGray() {
+      if (targetGray == null) {
+        if (getTarget().channels() == 1) {
+          targetGray = getTarget();
+        } else {
+          targetGray = new Mat();
+          Imgproc.cvtColor(getTarget(), targetGray, Imgproc.COLOR_BGR2GRAY);
+        }
+      }
+      return targetGray;
+    }
+
+    private Mat sourceGray = null;
+
+    protected Mat getBaseGray() {
+      if (sourceGray == null) {
+        if (SX.isNotNull(screenImage)) {
+          sourceGray = screenImage.getGrayMat(source);
+        } else if (source.channels() == 1) {
+          sourceGray = source;
+        } else {
+          sourceGray = new Mat();
+          Imgproc.cvtColor(source, sourceGray, Imgproc.COLOR_BGR2GRAY);
+        }
+      }
+      return sourceGray;
+    }
+
+    /**
+     * compares the mean color of the given area of the image searched in with the mean color of the target
+     *
+     * @param x left of the area in the image searched in
+     * @param y top
+     * @return true if the color distance is within Settings.GrayMatchingColorDistance
+     */
+    protected boolean isColorMatching(int x, int y) {
+      Mat what = getTarget();
+      Scalar mean = Core.mean(source.submat(new Rect(x, y, what.cols(), what.rows())));
+      Color col = getMeanColor();
+      double b = mean.val[0] - col.getBlue();
+      double g = mean.val[1] - col.getGreen();
+      double r = mean.val[2] - col.getRed();
+      return Math.sqrt(r * r + g * g + b * b) <= Settings.GrayMatchingColorDistance;
     }
 
     public Mat getTarget() {
@@ -1299,6 +1675,33 @@ public class Finder implements Iterator<Match> {
 
     public void setSource(Mat source) {
       this.source = source;
+      sourceGray = null;
+      prepared = null;
+    }
+
+    private PreparedImage prepared = null;
+
+    public void setPrepared(PreparedImage prepared) {
+      this.prepared = prepared;
+    }
+
+    /**
+     * @param base the image actually searched in (source or its grayscale version)
+     * @return the prepared image to be used or null
+     */
+    protected PreparedImage getPrepared(Mat base) {
+      if (SX.isNotNull(prepared) && prepared.getImage() == base) {
+        return prepared;
+      }
+      if (Settings.PreparedSearch && SX.isNotNull(screenImage)) {
+        if (base == source) {
+          return screenImage.getPrepared(false, base);
+        }
+        if (base == sourceGray) {
+          return screenImage.getPrepared(true, base);
+        }
+      }
+      return null;
     }
 
     public Mat getBase() {
@@ -1345,6 +1748,19 @@ public class Finder implements Iterator<Match> {
       findAll = true;
     }
 
+    private double bestScore = -1;
+
+    /**
+     * @return the best score of the last image search (also if below the wanted similarity)
+     */
+    public double getBestScore() {
+      return bestScore;
+    }
+
+    public void setBestScore(double bestScore) {
+      this.bestScore = bestScore;
+    }
+
     protected boolean plainColor = false;
     protected boolean blackColor = false;
     protected boolean whiteColor = false;
@@ -1456,10 +1872,22 @@ public class Finder implements Iterator<Match> {
     private int offY = 0;
     private Mat result = null;
     private List<Word> words = new ArrayList<>();
+    private List<Match> matches = null;
 
     private FindResult2() {
     }
 
+    /**
+     * the result of an alternative image search engine
+     *
+     * @param findInput the search
+     * @param matches   the matches (best first, coordinates relative to the image searched in)
+     */
+    public FindResult2(FindInput2 findInput, List<Match> matches) {
+      this.findInput = findInput;
+      this.matches = new ArrayList<>(matches);
+    }
+
     public FindResult2(List<Word> words, FindInput2 findInput) {
       this.words = words;
       this.findInput = findInput;
@@ -1501,12 +1929,11 @@ public class Finder implements Iterator<Match> {
         }
         return false;
       }
-      resultMinMax = Core.minMaxLoc(result);
-      currentScore = resultMinMax.maxVal;
-      currentX = (int) resultMinMax.maxLoc.x;
-      currentY = (int) resultMinMax.maxLoc.y;
-      if (lastScore < 0) {
-        lastScore = currentScore;
+      if (matches != null) {
+        return !matches.isEmpty();
+      }
+      boolean first = lastScore < 0;
+      if (first) {
         targetScore = findInput.getScore();
         baseW = result.width();
         baseH = result.height();
@@ -1516,6 +1943,21 @@ public class Finder implements Iterator<Match> {
         marginY = (int) (targetH * 0.8);
         matchCount = 0;
       }
+      resultMinMax = Core.minMaxLoc(result);
+      if (findInput.isGrayFirst()) {
+        // candidates found on grayscale: drop those with the wrong color
+        while (resultMinMax.maxVal > targetScore
+                && !findInput.isColorMatching((int) resultMinMax.maxLoc.x + offX, (int) resultMinMax.maxLoc.y + offY)) {
+          purge((int) resultMinMax.maxLoc.x, (int) resultMinMax.maxLoc.y);
+          resultMinMax = Core.minMaxLoc(result);
+        }
+      }
+      currentScore = resultMinMax.maxVal;
+      currentX = (int) resultMinMax.maxLoc.x;
+      currentY = (int) resultMinMax.maxLoc.y;
+      if (first) {
+        lastScore = currentScore;
+      }
       boolean isMatch = false;
       if (currentScore > targetScore) {
         if (matchCount == 0) {
@@ -1544,19 +1986,27 @@ public class Finder implements Iterator<Match> {
           Word nextWord = words.remove(0);
           match = new Match(new Region(nextWord.getBoundingBox()), nextWord.getConfidence() / 100);
           match.setText(nextWord.getText().trim());
+        } else if (matches != null) {
+          match = matches.remove(0);
         } else {
           match = new Match(currentX + offX, currentY + offY, targetW, targetH, currentScore, null);
           matchCount++;
           lastScore = currentScore;
           //int margin = getPurgeMargin();
-          Range rangeX = new Range(Math.max(currentX - marginX, 0), Math.min(currentX + marginX, result.width()));
-          Range rangeY = new Range(Math.max(currentY - marginY, 0), Math.min(currentY + marginY, result.height()));
-          result.colRange(rangeX).rowRange(rangeY).setTo(new Scalar(0f));
+          purge(currentX, currentY);
         }
       }
       return match;
     }
 
+    private void purge(int x, int y) {
+      int mX = Math.max(1, marginX);
+      int mY = Math.max(1, marginY);
+      Range rangeX = new Range(Math.max(x - mX, 0), Math.min(x + mX, result.width()));
+      Range rangeY = new Range(Math.max(y - mY, 0), Math.min(y + mY, result.height()));
+      result.colRange(rangeX).rowRange(rangeY).setTo(new Scalar(0f));
+    }
+
     private int getPurgeMargin() {
       if (currentScore < 0.95) {
         return 4;
@@ -1608,4 +2058,157 @@ public class Finder implements Iterator<Match> {
     public void remove() {
     }
   }
+
+  /**
+   * an image prepared for many template searches in it (TM_CCOEFF_NORMED, no mask)<br>
+   * the sums and squared sums (integral images) of the image are computed once
+   * and used to normalize the cross correlation with each template<br>
+   * withDFT: the DFT of the image is computed once too, each template is then correlated in the frequency domain
+   * (otherwise with matchTemplate TM_CCORR)
+   */
+  public static class PreparedImage {
+
+    private final Mat image;
+    private final Mat sum = new Mat();
+    private final Mat sqsum = new Mat();
+    private final boolean withDFT;
+    private List<Mat> spectrums = null;
+    private Size dftSize = null;
+
+    /**
+     * @param image   the image to search in (8 bit, 1 or 3 channels) - must not be changed afterwards
+     * @param withDFT true: also keep the DFT of the image
+     */
+    public PreparedImage(Mat image, boolean withDFT) {
+      this.image = image;
+      this.withDFT = withDFT;
+      Imgproc.integral2(image, sum, sqsum, CvType.CV_64F, CvType.CV_64F);
+    }
+
+    public Mat getImage() {
+      return image;
+    }
+
+    /**
+     * @param what the template
+     * @return true if the template can be searched with this prepared image
+     */
+    public boolean isValid(Mat what) {
+      return what.depth() == CvType.CV_8U && what.channels() == image.channels()
+              && what.cols() <= image.cols() && what.rows() <= image.rows();
+    }
+
+    /**
+     * same as matchTemplate(image, what, result, TM_CCOEFF_NORMED)
+     *
+     * @param what the template
+     * @return the result matrix (CV_32F)
+     */
+    public Mat match(Mat what) {
+      int w = what.cols();
+      int h = what.rows();
+      int rw = image.cols() - w + 1;
+      int rh = image.rows() - h + 1;
+      double n = w * h;
+      int channels = image.channels();
+
+      MatOfDouble tMean = new MatOfDouble();
+      MatOfDouble tStdDev = new MatOfDouble();
+      Core.meanStdDev(what, tMean, tStdDev);
+      double[] mean = tMean.toArray();
+      double[] stdDev = tStdDev.toArray();
+      double tNorm = 0;
+      for (double dev : stdDev) {
+        tNorm += dev * dev * n;
+      }
+      Mat mean1xC = new Mat(1, channels, CvType.CV_64F);
+      mean1xC.put(0, 0, mean);
+      Mat ones1xC = new Mat(1, channels, CvType.CV_64F, new Scalar(1));
+
+      Mat wSum = windowSum(sum, w, h, rw, rh);
+      Mat wSqSum = windowSum(sqsum, w, h, rw, rh);
+
+      // numerator: sum(T * I) - sum(meanT * I) over the window and the channels
+      Mat num = new Mat();
+      Core.transform(wSum, num, mean1xC);
+      Core.subtract(crossCorrelation(what, rw, rh), num, num);
+
+      // denominator: sqrt(sum((T - meanT)^2) * sum((I - meanI)^2))
+      Mat sq = new Mat();
+      Core.multiply(wSum, wSum, sq, 1.0 / n);
+      Core.subtract(wSqSum, sq, sq);
+      Mat den = new Mat();
+      Core.transform(sq, den, ones1xC);
+      Core.max(den, new Scalar(0), den);
+      Core.sqrt(den, den);
+      Core.multiply(den, new Scalar(Math.sqrt(tNorm)), den);
+
+      Mat result = new Mat();
+      Core.divide(num, den, result);
+      // plain windows have no defined score (as with matchTemplate: 0)
+      Mat plain = new Mat();
+      Core.compare(den, new Scalar(1.0E-3), plain, Core.CMP_LT);
+      result.setTo(new Scalar(0), plain);
+      Core.min(result, new Scalar(1), result);
+      Core.max(result, new Scalar(-1), result);
+      result.convertTo(result, CvType.CV_32F);
+      return result;
+    }
+
+    private static Mat windowSum(Mat integral, int w, int h, int rw, int rh) {
+      Mat wSum = new Mat();
+      Core.subtract(integral.submat(h, h + rh, w, w + rw), integral.submat(0, rh, w, w + rw), wSum);
+      Core.subtract(wSum, integral.submat(h, h + rh, 0, rw), wSum);
+      Core.add(wSum, integral.submat(0, rh, 0, rw), wSum);
+      return wSum;
+    }
+
+    private Mat crossCorrelation(Mat what, int rw, int rh) {
+      Mat ccorr = new Mat();
+      if (!withDFT) {
+        Imgproc.matchTemplate(image, what, ccorr, Imgproc.TM_CCORR);
+        ccorr.convertTo(ccorr, CvType.CV_64F);
+        return ccorr;
+      }
+      List<Mat> imageSpectrums = getSpectrums();
+      List<Mat> planes = new ArrayList<>();
+      Core.split(what, planes);
+      ccorr = Mat.zeros(rh, rw, CvType.CV_64F);
+      Mat spectrum = new Mat();
+      Mat product = new Mat();
+      Mat plane = new Mat();
+      for (int c = 0; c < planes.size(); c++) {
+        planes.get(c).convertTo(plane, CvType.CV_32F);
+        Core.copyMakeBorder(plane, plane, 0, (int) dftSize.height - plane.rows(),
+                0, (int) dftSize.width - plane.cols(), Core.BORDER_CONSTANT, Scalar.all(0));
+        Core.dft(plane, spectrum, 0, what.rows());
+        Core.mulSpectrums(imageSpectrums.get(c), spectrum, product, 0, true);
+        Core.idft(product, product, Core.DFT_SCALE | Core.DFT_REAL_OUTPUT, rh);
+        Mat part = new Mat();
+        product.submat(0, rh, 0, rw).convertTo(part, CvType.CV_64F);
+        Core.add(ccorr, part, ccorr);
+      }
+      return ccorr;
+    }
+
+    private synchronized List<Mat> getSpectrums() {
+      if (spectrums == null) {
+        dftSize = new Size(Core.getOptimalDFTSize(image.cols()), Core.getOptimalDFTSize(image.rows()));
+        List<Mat> planes = new ArrayList<>();
+        Core.split(image, planes);
+        List<Mat> result = new ArrayList<>();
+        for (Mat plane : planes) {
+          Mat padded = new Mat();
+          plane.convertTo(padded, CvType.CV_32F);
+          Core.copyMakeBorder(padded, padded, 0, (int) dftSize.height - padded.rows(),
+                  0, (int) dftSize.width - padded.cols(), Core.BORDER_CONSTANT, Scalar.all(0));
+          Mat spectrum = new Mat();
+          Core.dft(padded, spectrum, 0, padded.rows());
+          result.add(spectrum);
+        }
+        spectrums = result;
+      }
+      return spectrums;
+    }
+  }
 }
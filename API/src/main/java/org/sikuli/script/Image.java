@@ -10,6 +10,7 @@ import org.opencv.imgproc.Imgproc;
 import org.sikuli.basics.Debug;
 import org.sikuli.basics.FileManager;
 import org.sikuli.basics.Settings;
+import org.sikuli.script.support.IScreen;
 
 import javax.imageio.ImageIO;
 import java.awt.*;
@@ -50,8 +51,29 @@ public class Image {
   private static String me = "Image: ";
   private static int lvl = 3;
 
+  // fixed arities: no varargs array, if not logged (primitives are boxed anyway: guard such calls)
+  private static void log(int level, String message) {
+    if (Debug.isLogging(level)) {
+      Debug.logx(level, me + message);
+    }
+  }
+
+  private static void log(int level, String message, Object arg) {
+    if (Debug.isLogging(level)) {
+      Debug.logx(level, me + message, arg);
+    }
+  }
+
+  private static void log(int level, String message, Object arg1, Object arg2) {
+    if (Debug.isLogging(level)) {
+      Debug.logx(level, me + message, arg1, arg2);
+    }
+  }
+
   private static void log(int level, String message, Object... args) {
-    Debug.logx(level, me + message, args);
+    if (Debug.isLogging(level)) {
+      Debug.logx(level, me + message, args);
+    }
   }
 
   private static List<Image> images = Collections.synchronizedList(new ArrayList<Image>());
@@ -158,8 +180,10 @@ public class Image {
     bimg = img;
     bwidth = bimg.getWidth();
     bheight = bimg.getHeight();
-    log(lvl, "BufferedImage: (%d, %d)%s", bwidth, bheight,
-            (name == null ? "" : " with name: " + name));
+    if (Debug.isLogging(lvl)) {
+      log(lvl, "BufferedImage: (%d, %d)%s", bwidth, bheight,
+              (name == null ? "" : " with name: " + name));
+    }
   }
 
   /**
@@ -317,6 +341,13 @@ public class Image {
   //<editor-fold defaultstate="collapsed" desc="00 2 bufferedImage">
   public Image setBimg(BufferedImage bimg) {
     this.bimg = bimg;
+    synchronized (scaled) {
+      scaled.clear();
+      bestScales.clear();
+    }
+    synchronized (features) {
+      features.clear();
+    }
     if (bimg != null) {
       bwidth = bimg.getWidth();
       bheight = bimg.getHeight();
@@ -706,6 +737,29 @@ public class Image {
     return createImageValidate(img);
   }
 
+  /**
+   * FOR INTERNAL USE: from IDE - the image file as reference only (pixels not loaded, not cached),
+   * e.g. to generate the code of a Pattern
+   *
+   * @param fName absolute image filename
+   * @return the image
+   */
+  public static Image createReference(String fName) {
+    Image img = new Image();
+    img.imageName = fName;
+    img.imageNameGiven = fName;
+    File imgFile = new File(fName);
+    if (imgFile.isAbsolute() && imgFile.exists()) {
+      img.fileURL = FileManager.makeURL(fName);
+      img.imageIsAbsolute = true;
+      if (img.fileURL != null && ImagePath.isImageBundled(img.fileURL)) {
+        img.imageIsBundled = true;
+        img.imageName = imgFile.getName();
+      }
+    }
+    return img;
+  }
+
   private static Image createImageValidate(Image img) {
     if (img == null) {
       return new Image("", null);
@@ -1033,10 +1087,12 @@ public class Image {
           currentMemoryUp(bsize);
           bimg = bImage;
           images.add(this);
-          log(lvl, "cached: %s (%d KB) (# %d KB %d -- %d %% of %d MB)",
-                  imageName, getKB(),
-                  images.size(), (int) (currentMemory / KB),
-                  (int) (100 * currentMemory / maxMemory), (int) (maxMemory / MB));
+          if (Debug.isLogging(lvl)) {
+            log(lvl, "cached: %s (%d KB) (# %d KB %d -- %d %% of %d MB)",
+                    imageName, getKB(),
+                    images.size(), (int) (currentMemory / KB),
+                    (int) (100 * currentMemory / maxMemory), (int) (maxMemory / MB));
+          }
         }
       } else {
         log(-1, "invalid! not loaded! %s", fileURL);
@@ -1177,6 +1233,71 @@ public class Image {
   }
   //</editor-fold>
 
+  //<editor-fold defaultstate="collapsed" desc="00 8 scaled">
+  private final Map<Integer, Mat> scaled = new HashMap<>();
+  private final Map<String, KeypointMatcher.Features> features = new HashMap<>();
+
+  /**
+   * Internal Use: keypoints of this image per search engine (see KeypointMatcher)
+   *
+   * @return the cache (to be used synchronized)
+   */
+  Map<String, KeypointMatcher.Features> getFeatures() {
+    return features;
+  }
+
+  // local screens by id, other screens (e.g. each VNC session has id 0) by the screen object
+  private final Map<Integer, Float> bestScales = new HashMap<>();
+  private final Map<IScreen, Float> bestScalesOther = new WeakHashMap<>();
+
+  /**
+   * Internal Use: the image resized with the given factor for multi-scale searches (kept in a cache)
+   *
+   * @param factor scale factor (rounded to 0.01)
+   * @return the resized image as Mat (alpha channel kept) - must not be changed
+   */
+  public Mat getScaled(float factor) {
+    int key = Math.round(factor * 100);
+    synchronized (scaled) {
+      Mat mat = scaled.get(key);
+      if (mat == null) {
+        mat = Finder.Finder2.makeMat(get(), false);
+        if (key != 100 && !mat.empty()) {
+          cvResize(mat, key / 100.0, key < 100 ? Interpolation.AREA : Interpolation.CUBIC);
+        }
+        scaled.put(key, mat);
+      }
+      return mat;
+    }
+  }
+
+  /**
+   * Internal Use: the scale, with which the image was found last time on the given screen
+   *
+   * @param screen the screen (null: not known)
+   * @return the scale or 0 if not known
+   */
+  public float getBestScale(IScreen screen) {
+    synchronized (scaled) {
+      Float scale = screen == null ? bestScales.get(-1)
+          : (screen.isOtherScreen() ? bestScalesOther.get(screen) : bestScales.get(screen.getID()));
+      return scale == null ? 0 : scale;
+    }
+  }
+
+  public void setBestScale(IScreen screen, float scale) {
+    synchronized (scaled) {
+      if (screen == null) {
+        bestScales.put(-1, scale);
+      } else if (screen.isOtherScreen()) {
+        bestScalesOther.put(screen, scale);
+      } else {
+        bestScales.put(screen.getID(), scale);
+      }
+    }
+  }
+  //</editor-fold>
+
   //<editor-fold desc="10 raster">
   /**
    * to support a raster over the image
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2010-2019, sikuli.org, sikulix.com - MIT license
+ */
+package org.sikuli.script;
+
+import org.opencv.calib3d.Calib3d;
+import org.opencv.core.*;
+import org.opencv.core.Point;
+import org.opencv.features2d.AKAZE;
+import org.opencv.features2d.DescriptorMatcher;
+import org.opencv.features2d.Feature2D;
+import org.opencv.features2d.ORB;
+import org.opencv.imgproc.Imgproc;
+import org.sikuli.basics.Debug;
+import org.sikuli.script.Finder.FindInput2;
+import org.sikuli.script.Finder.FindResult2;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * INTERNAL USE: image search based on keypoints (ORB or AKAZE) - select with Pattern.matcher(name)<br>
+ * finds targets, that are rotated, partially covered or somewhat scaled<br>
+ * the keypoints of the image are kept with the Image, those of the capture with the ScreenImage
+ * (computed once per capture for all images searched in it)<br>
+ * the homography of the matching keypoints gives the match area, the score is the similarity
+ * of the rectified area with the image (same as with template matching)<br>
+ * only one match per search (findAll: at most one match)
+ */
+class KeypointMatcher implements Finder.Finder2.ImageMatcher {
+
+  private static String me = "KeypointMatcher: ";
+  private static int lvl = 3;
+
+  private static void log(int level, String message, Object... args) {
+    if (Debug.isLogging(level)) {
+      Debug.logx(level, me + message, args);
+    }
+  }
+
+  static final String ORB_NAME = "orb";
+  static final String AKAZE_NAME = "akaze";
+
+  private static final int MIN_MATCHES = 8;
+  private static final double RATIO = 0.75;
+  private static final double RANSAC_THRESHOLD = 3.0;
+
+  /**
+   * the keypoints and their descriptors of an image
+   */
+  static class Features {
+    final MatOfKeyPoint keypoints;
+    final Mat descriptors;
+
+    Features(MatOfKeyPoint keypoints, Mat descriptors) {
+      this.keypoints = keypoints;
+      this.descriptors = descriptors;
+    }
+
+    boolean isUseable() {
+      return descriptors.rows() >= MIN_MATCHES;
+    }
+  }
+
+  private final String name;
+
+  KeypointMatcher(String name) {
+    this.name = name;
+  }
+
+  private Feature2D createDetector() {
+    if (AKAZE_NAME.equals(name)) {
+      return AKAZE.create();
+    }
+    return ORB.create(1000);
+  }
+
+  private Features detect(Mat gray) {
+    MatOfKeyPoint keypoints = new MatOfKeyPoint();
+    Mat descriptors = new Mat();
+    createDetector().detectAndCompute(gray, new Mat(), keypoints, descriptors);
+    return new Features(keypoints, descriptors);
+  }
+
+  private Features getFeatures(Map<String, Features> cache, String key, Mat gray) {
+    if (cache == null) {
+      return detect(gray);
+    }
+    synchronized (cache) {
+      Features features = cache.get(key);
+      if (features == null) {
+        features = detect(gray);
+        cache.put(key, features);
+      }
+      return features;
+    }
+  }
+
+  @Override
+  public FindResult2 find(FindInput2 findInput) {
+    long begin = System.currentTimeMillis();
+    Mat target = findInput.getTarget();
+    Image image = findInput.getImage();
+    ScreenImage simg = findInput.getScreenImage();
+    Features what = getFeatures(image == null ? null : image.getFeatures(),
+        String.format("%s:%dx%d", name, target.cols(), target.rows()), findInput.getTargetGray());
+    if (!what.isUseable()) {
+      log(lvl, "%s: image has too few keypoints (%d) - use template matching", name, what.descriptors.rows());
+      return null;
+    }
+    Features where = getFeatures(simg == null ? null : simg.getFeatures(), name, findInput.getBaseGray());
+    if (!where.isUseable()) {
+      return null;
+    }
+
+    List<MatOfDMatch> knnMatches = new ArrayList<>();
+    DescriptorMatcher matcher = DescriptorMatcher.create(DescriptorMatcher.BRUTEFORCE_HAMMING);
+    matcher.knnMatch(what.descriptors, where.descriptors, knnMatches, 2);
+    KeyPoint[] whatPoints = what.keypoints.toArray();
+    KeyPoint[] wherePoints = where.keypoints.toArray();
+    List<Point> whatGood = new ArrayList<>();
+    List<Point> whereGood = new ArrayList<>();
+    for (MatOfDMatch knnMatch : knnMatches) {
+      DMatch[] pair = knnMatch.toArray();
+      if (pair.length == 2 && pair[0].distance < RATIO * pair[1].distance) {
+        whatGood.add(whatPoints[pair[0].queryIdx].pt);
+        whereGood.add(wherePoints[pair[0].trainIdx].pt);
+      }
+    }
+    if (whatGood.size() < MIN_MATCHES) {
+      log(lvl, "%s: not found (%d good keypoint matches)", name, whatGood.size());
+      return null;
+    }
+
+    MatOfPoint2f whatMat = new MatOfPoint2f();
+    whatMat.fromList(whatGood);
+    MatOfPoint2f whereMat = new MatOfPoint2f();
+    whereMat.fromList(whereGood);
+    Mat homography = Calib3d.findHomography(whatMat, whereMat, Calib3d.RANSAC, RANSAC_THRESHOLD);
+    if (homography.empty()) {
+      return null;
+    }
+
+    Mat corners = new Mat(4, 1, CvType.CV_32FC2);
+    corners.put(0, 0, 0, 0, target.cols(), 0, target.cols(), target.rows(), 0, target.rows());
+    Mat found = new Mat();
+    Core.perspectiveTransform(corners, found, homography);
+    Rectangle area = new MatOfPoint2f(found).toList().stream()
+        .map(p -> new Rectangle((int) Math.round(p.x), (int) Math.round(p.y), 0, 0))
+        .reduce(Rectangle::union).get();
+    Mat base = findInput.getBase();
+    area = area.intersection(new Rectangle(0, 0, base.cols(), base.rows()));
+    if (area.width < 4 || area.height < 4) {
+      return null;
+    }
+
+    // score: the similarity of the rectified match area with the image
+    Mat rectified = new Mat();
+    Imgproc.warpPerspective(base, rectified, homography, target.size(), Imgproc.WARP_INVERSE_MAP);
+    Mat result = new Mat();
+    Imgproc.matchTemplate(rectified, target, result, Imgproc.TM_CCOEFF_NORMED);
+    double score = Core.minMaxLoc(result).maxVal;
+    log(lvl, "%s: %.4f at %s (%d good keypoint matches, %d msec)",
+        name, score, area, whatGood.size(), System.currentTimeMillis() - begin);
+    findInput.setBestScore(score);
+    if (score <= findInput.getScore()) {
+      return null;
+    }
+    List<Match> matches = new ArrayList<>();
+    matches.add(new Match(area.x, area.y, area.width, area.height, score, null));
+    return new FindResult2(findInput, matches);
+  }
+}
@@ -196,8 +196,7 @@ public class Mouse {
     getArgsClick(loc, action, args);
     get().device.use();
     Device.delay(mouse.beforeWait);
-    Settings.ClickDelay = mouse.innerWait / 1000;
-    click(loc, mouse.buttons, 0, ((Mouse) get()).clickDouble, null);
+    click(loc, mouse.buttons, 0, ((Mouse) get()).clickDouble, null, Math.min(1000, Math.max(0, mouse.innerWait)));
     Device.delay(mouse.afterWait);
     get().device.let();
     return loc;
@@ -224,7 +223,7 @@ public class Mouse {
       mouse.buttons = LEFT;
     }
     mouse.beforeWait = 0;
-    mouse.innerWait = (int) (Settings.ClickDelay * 1000);
+    mouse.innerWait = takeClickDelay();
     mouse.afterWait = 0;
     if (args.length > 0) {
       if (args.length == 1) {
@@ -245,6 +244,27 @@ public class Mouse {
   }
 
   protected static int click(Location loc, int buttons, Integer modifiers, boolean dblClick, Region region) {
+    return click(loc, buttons, modifiers, dblClick, region, takeClickDelay());
+  }
+
+  /*
+   * Settings.ClickDelay is shared by all threads/sessions: read once and reset (if not set anew meanwhile)
+   * @return the pause in msecs between mouse down and up for this click (max 1000)
+   */
+  private static int takeClickDelay() {
+    double clickDelay = Settings.ClickDelay;
+    if (clickDelay == 0) {
+      return 0;
+    }
+    synchronized (Settings.class) {
+      if (Settings.ClickDelay == clickDelay) {
+        Settings.ClickDelay = 0.0;
+      }
+    }
+    return clickDelay > 1 ? 1000 : Math.max(0, (int) (clickDelay * 1000));
+  }
+
+  private static int click(Location loc, int buttons, Integer modifiers, boolean dblClick, Region region, int pause) {
     if (modifiers == null) {
       modifiers = 0;
     }
@@ -272,8 +292,6 @@ public class Mouse {
     if (modifiers > 0) {
       robot.pressModifiers(modifiers);
     }
-    int pause = Settings.ClickDelay > 1 ? 1 : (int) (Settings.ClickDelay * 1000);
-    Settings.ClickDelay = 0.0;
     profiler.lap("before Down");
     if (dblClick) {
       robot.mouseDown(buttons);
@@ -300,6 +318,12 @@ public class Mouse {
     get().device.let(region);
     long duration = profiler.end();
     Debug.action(getClickMsg(loc, buttons, modifiers, dblClick, duration));
+    if (TraceRecorder.isOn()) {
+      String button = buttons == InputEvent.BUTTON3_MASK ? "right" :
+          (buttons == InputEvent.BUTTON2_MASK ? "mid" : "left");
+      TraceRecorder.record(TraceRecorder.CLICK, button, new java.awt.Rectangle(loc.x, loc.y, 0, 0), 0,
+          duration * 1000000L, dblClick ? 2 : 1, true);
+    }
     return 1;
   }
 
@@ -26,6 +26,10 @@ public class Pattern {
   private int waitAfter = 0;
   private boolean imagePattern = false;
   private float resizeFactor = 0;
+  private boolean colorCritical = false;
+  private float scaleMin = 0;
+  private float scaleMax = 0;
+  private String matcher = null;
 
   /**
    * creates empty Pattern object at least setFilename() or setBImage() must be used before the
@@ -44,6 +48,10 @@ public class Pattern {
     similarity = p.similarity;
     offset.x = p.offset.x;
     offset.y = p.offset.y;
+    colorCritical = p.colorCritical;
+    scaleMin = p.scaleMin;
+    scaleMax = p.scaleMax;
+    matcher = p.matcher;
     imagePattern = image.isPattern();
   }
 
@@ -67,6 +75,65 @@ public class Pattern {
     return resizeFactor;
   }
 
+  /**
+   * select the image search engine for this pattern<br>
+   * "template" (default): template matching (TM_CCOEFF_NORMED)<br>
+   * "orb" or "akaze": keypoint based - finds rotated, partially covered or somewhat scaled targets,
+   * needs images with enough structure (not for small plain icons)
+   *
+   * @param name the engine
+   * @return the Pattern object itself
+   */
+  public Pattern matcher(String name) {
+    matcher = name;
+    return this;
+  }
+
+  /**
+   * @return the name of the image search engine (null: template matching)
+   */
+  public String getMatcher() {
+    return matcher;
+  }
+
+  /**
+   * search the image in the given scale range (e.g. 0.8 ... 1.6 for apps shown with 100% ... 150% scaling)<br>
+   * the best scale is remembered per screen and tried first next time
+   *
+   * @param min smallest scale factor
+   * @param max largest scale factor
+   * @return the Pattern object itself
+   */
+  public Pattern scales(float min, float max) {
+    scaleMin = Math.min(min, max);
+    scaleMax = Math.max(min, max);
+    return this;
+  }
+
+  /**
+   * search the image in the scale range Settings.MultiScaleMin ... Settings.MultiScaleMax
+   *
+   * @return the Pattern object itself
+   */
+  public Pattern multiScale() {
+    return scales(Settings.MultiScaleMin, Settings.MultiScaleMax);
+  }
+
+  /**
+   * @return true if searched in a scale range (own range or Settings.MultiScale)
+   */
+  public boolean isMultiScale() {
+    return (scaleMin > 0 && scaleMax > scaleMin) || Settings.MultiScale;
+  }
+
+  public float getScaleMin() {
+    return scaleMin > 0 ? scaleMin : Settings.MultiScaleMin;
+  }
+
+  public float getScaleMax() {
+    return scaleMax > 0 ? scaleMax : Settings.MultiScaleMax;
+  }
+
   /**
    * true if Pattern was created from Image
    *
@@ -277,6 +344,21 @@ public class Pattern {
     return this;
   }
 
+  /**
+   * the image is always searched in color, even with Settings.GrayMatching
+   * (for targets, that only differ in color from other content, e.g. red/green state icons)
+   *
+   * @return the Pattern object itself
+   */
+  public Pattern colorCritical() {
+    colorCritical = true;
+    return this;
+  }
+
+  public boolean isColorCritical() {
+    return colorCritical;
+  }
+
   /**
    * @return the current minimum similarity
    */
@@ -8,6 +8,7 @@ import org.sikuli.basics.Settings;
 import org.sikuli.script.support.Observer;
 import org.sikuli.script.support.*;
 import org.sikuli.util.Highlight;
+import org.sikuli.vnc.VNCScreen;
 
 import java.awt.Rectangle;
 import java.awt.event.InputEvent;
@@ -35,8 +36,29 @@ public class Region {
   private static String me = "Region: ";
   private static int lvl = 3;
 
+  // fixed arities: no varargs array, if not logged (primitives are boxed anyway: guard such calls)
+  private static void log(int level, String message) {
+    if (Debug.isLogging(level)) {
+      Debug.logx(level, me + message);
+    }
+  }
+
+  private static void log(int level, String message, Object arg) {
+    if (Debug.isLogging(level)) {
+      Debug.logx(level, me + message, arg);
+    }
+  }
+
+  private static void log(int level, String message, Object arg1, Object arg2) {
+    if (Debug.isLogging(level)) {
+      Debug.logx(level, me + message, arg1, arg2);
+    }
+  }
+
   private static void log(int level, String message, Object... args) {
-    Debug.logx(level, me + message, args);
+    if (Debug.isLogging(level)) {
+      Debug.logx(level, me + message, args);
+    }
   }
 
   //<editor-fold desc="000 for Python">
@@ -2249,7 +2271,9 @@ public class Region {
       }
     }
     while (null != response && response) {
-      log(lvl, "wait: waiting %.1f secs for %s to appear in %s", timeout, targetStr, this.toStringShort());
+      if (Debug.isLogging(lvl)) {
+        log(lvl, "wait: waiting %.1f secs for %s to appear in %s", timeout, targetStr, this.toStringShort());
+      }
       if (rf.repeat(timeout)) {
         lastMatch = rf.getMatch();
         //lastMatch.setImage(img);
@@ -2275,7 +2299,9 @@ public class Region {
         break;
       }
     }
-    log(lvl, "wait: %s did not appear [%d msec]", targetStr, new Date().getTime() - lastFindTime);
+    if (Debug.isLogging(lvl)) {
+      log(lvl, "wait: %s did not appear [%d msec]", targetStr, new Date().getTime() - lastFindTime);
+    }
     if (!shouldAbort.isEmpty()) {
       throw new FindFailed(shouldAbort);
     }
@@ -2326,7 +2352,9 @@ public class Region {
     }
     String targetStr = img.getName();
     while (null != response && response) {
-      log(lvl, "find: waiting 0 secs for %s to appear in %s", targetStr, this.toStringShort());
+      if (Debug.isLogging(lvl)) {
+        log(lvl, "find: waiting 0 secs for %s to appear in %s", targetStr, this.toStringShort());
+      }
       lastMatch = doFind(target, img, null);
       if (lastMatch != null) {
         if (isOtherScreen()) {
@@ -2337,7 +2365,9 @@ public class Region {
         log(lvl, "find: %s appeared (%s)", targetStr, lastMatch);
         break;
       }
-      log(lvl, "find: %s did not appear [%d msec]", targetStr, new Date().getTime() - lastFindTime);
+      if (Debug.isLogging(lvl)) {
+        log(lvl, "find: %s did not appear [%d msec]", targetStr, new Date().getTime() - lastFindTime);
+      }
       if (null == lastMatch) {
         response = handleFindFailed(target, img);
       }
@@ -2377,7 +2407,9 @@ public class Region {
       }
     }
     String targetStr = img.getName();
-    log(lvl, "exists: waiting %.1f secs for %s to appear in %s", timeout, targetStr, this.toStringShort());
+    if (Debug.isLogging(lvl)) {
+      log(lvl, "exists: waiting %.1f secs for %s to appear in %s", timeout, targetStr, this.toStringShort());
+    }
     if (rf.repeat(timeout)) {
       lastMatch = rf.getMatch();
       //lastMatch.setImage(img);
@@ -2389,7 +2421,9 @@ public class Region {
       log(lvl, "exists: %s has appeared (%s)", targetStr, lastMatch);
       return lastMatch;
     }
-    log(lvl, "exists: %s did not appear [%d msec]", targetStr, new Date().getTime() - lastFindTime);
+    if (Debug.isLogging(lvl)) {
+      log(lvl, "exists: %s did not appear [%d msec]", targetStr, new Date().getTime() - lastFindTime);
+    }
     return null;
   }
 
@@ -2498,8 +2532,10 @@ public class Region {
       }
     }
     while (null != response && response) {
-      log(lvl, "findAll: waiting %.1f secs for (multiple) %s to appear in %s",
-          autoWaitTimeout, targetStr, this.toStringShort());
+      if (Debug.isLogging(lvl)) {
+        log(lvl, "findAll: waiting %.1f secs for (multiple) %s to appear in %s",
+            autoWaitTimeout, targetStr, this.toStringShort());
+      }
       if (autoWaitTimeout > 0) {
         rf.repeat(autoWaitTimeout);
         lastMatches = rf.getMatches();
@@ -2831,6 +2867,7 @@ public class Region {
   //<editor-fold defaultstate="collapsed" desc="022 find internal methods">
 
   private <PSI> Match doFind(PSI ptn, Image img, Repeatable repeating) {
+    long traceStart = TraceRecorder.isOn() ? System.nanoTime() : 0;
     Finder finder = null;
     Match match = null;
     //IScreen screen = null;
@@ -2841,9 +2878,22 @@ public class Region {
     if (repeating != null) {
       findTimeout = repeating.getFindTimeOut();
     }
+    Rectangle rescan = null;
     if (repeating != null && repeating._finder != null) {
+      rescan = getAreaToRescan(repeating, ptn, img);
+    }
+    if (rescan != null && rescan.isEmpty()) {
+      match = repeating._match;
+    } else if (rescan != null) {
+      Region area = Region.create(rescan.x, rescan.y, rescan.width, rescan.height, getScreen());
+      simg = getScreen().capture(rescan);
+      repeating.frame = simg.getFrame();
+      finder = new Finder(simg, area);
+      lastSearchTime = (new Date()).getTime();
+      area.runFinder(finder, ptn instanceof Pattern ? ptn : img);
+    } else if (repeating != null && repeating._finder != null) {
       finder = repeating._finder;
-      simg = getScreen().capture(this);
+      simg = captureForFind(repeating);
       finder.setScreenImage(simg);
       finder.setRepeating();
       if (Settings.FindProfiling) {
@@ -2862,7 +2912,7 @@ public class Region {
         } else {
           if (img.isValid()) {
             lastSearchTime = (new Date()).getTime();
-            finder = checkLastSeenAndCreateFinder(img, findTimeout, null);
+            finder = doCheckLastSeenAndCreateFinder(captureForFind(repeating), img, findTimeout, null);
             if (!finder.hasNext()) {
               runFinder(finder, img);
             }
@@ -2882,7 +2932,7 @@ public class Region {
       } else if (ptn instanceof Pattern) {
         if (img.isValid()) {
           lastSearchTime = (new Date()).getTime();
-          finder = checkLastSeenAndCreateFinder(img, findTimeout, (Pattern) ptn);
+          finder = doCheckLastSeenAndCreateFinder(captureForFind(repeating), img, findTimeout, (Pattern) ptn);
           if (!finder.hasNext()) {
             runFinder(finder, ptn);
           }
@@ -2890,7 +2940,7 @@ public class Region {
       } else if (ptn instanceof Image || ptn instanceof ScreenImage) {
         if (img.isValid()) {
           lastSearchTime = (new Date()).getTime();
-          finder = checkLastSeenAndCreateFinder(img, findTimeout, null);
+          finder = doCheckLastSeenAndCreateFinder(captureForFind(repeating), img, findTimeout, null);
           if (!finder.hasNext()) {
             runFinder(finder, img);
           }
@@ -2918,6 +2968,11 @@ public class Region {
         }
       }
     }
+    if (traceStart > 0) {
+      TraceRecorder.record(TraceRecorder.FIND, findingText ? someText : img.getName(),
+          match == null ? getRect() : match.getRect(), match == null ? 0 : match.getScore(),
+          System.nanoTime() - traceStart, repeating == null ? 1 : repeating.scans, match != null);
+    }
     return match;
   }
 
@@ -2934,8 +2989,86 @@ public class Region {
     }
   }
 
-  private Finder checkLastSeenAndCreateFinder(Image img, double findTimeout, Pattern ptn) {
-    return doCheckLastSeenAndCreateFinder(null, img, findTimeout, ptn);
+  /**
+   * with a running capture stream on the screen, a repeated search gets a frame newer than the one searched before
+   */
+  private ScreenImage captureForFind(Repeatable repeating) {
+    if (repeating == null) {
+      return getScreen().capture(this);
+    }
+    ScreenImage simg;
+    if (getScreen() instanceof Screen) {
+      simg = ((Screen) getScreen()).capture(getRect(), repeating.frame);
+    } else {
+      simg = getScreen().capture(this);
+    }
+    if (simg != null) {
+      repeating.frame = simg.getFrame();
+    }
+    return simg;
+  }
+
+  /**
+   * VNC: the framebuffer updates since the last scan tell, where something might have changed<br>
+   * a match, that was not there before, must overlap a changed area,
+   * so only the changed areas (grown by the image size) need to be searched again
+   *
+   * @return null: search the whole region, empty: nothing changed, that could change the last result
+   */
+  private Rectangle getAreaToRescan(Repeatable repeating, Object ptn, Image img) {
+    if (repeating.frame <= 0 || !(getScreen() instanceof VNCScreen) || img == null || !img.isValid()) {
+      return null;
+    }
+    if ((ptn instanceof Pattern && ((Pattern) ptn).getResize() > 0 && ((Pattern) ptn).getResize() != 1)
+        || (Settings.AlwaysResize > 0 && Settings.AlwaysResize != 1)) {
+      return null;
+    }
+    // the match size depends on the scale found, keypoint engines might match across the changed area
+    if (ptn instanceof Pattern ? ((Pattern) ptn).isMultiScale() || ((Pattern) ptn).getMatcher() != null
+        : Settings.MultiScale) {
+      return null;
+    }
+    List<Rectangle> changes = ((VNCScreen) getScreen()).getChanges(repeating.frame);
+    if (changes == null) {
+      return null;
+    }
+    int imgW = img.getSize().width;
+    int imgH = img.getSize().height;
+    Rectangle area = null;
+    for (Rectangle change : changes) {
+      Rectangle grown = new Rectangle(change.x - imgW + 1, change.y - imgH + 1,
+          change.width + 2 * (imgW - 1), change.height + 2 * (imgH - 1)).intersection(getRect());
+      if (!grown.isEmpty()) {
+        area = area == null ? grown : area.union(grown);
+      }
+    }
+    if (repeating._match != null) {
+      return area != null && area.intersects(repeating._match.getRect()) ? null : new Rectangle();
+    }
+    if (area == null || area.width < imgW || area.height < imgH) {
+      return new Rectangle();
+    }
+    log(lvl + 1, "doFind: VNC: searching changed area only: %s", area);
+    return area;
+  }
+
+  /**
+   * VNC: nothing changed in this region after the given framebuffer version
+   */
+  private boolean isUnchangedSince(long frame) {
+    if (frame <= 0 || !(getScreen() instanceof VNCScreen)) {
+      return false;
+    }
+    List<Rectangle> changes = ((VNCScreen) getScreen()).getChanges(frame);
+    if (changes == null) {
+      return false;
+    }
+    for (Rectangle change : changes) {
+      if (change.intersects(getRect())) {
+        return false;
+      }
+    }
+    return true;
   }
 
   private Finder doCheckLastSeenAndCreateFinder(ScreenImage base, Image img, double findTimeout, Pattern ptn) {
@@ -2978,12 +3111,13 @@ public class Region {
   }
 
   private <PSI> Iterator<Match> doFindAll(PSI ptn, RepeatableFindAll repeating) {
+    long traceStart = TraceRecorder.isOn() ? System.nanoTime() : 0;
     boolean findingText = false;
     Finder finder = null;
     String someText = "";
     if (repeating != null && repeating._finder != null) {
       finder = repeating._finder;
-      finder.setScreenImage(getScreen().capture(x, y, w, h));
+      finder.setScreenImage(captureForFind(repeating));
       finder.setRepeating();
       finder.findAllRepeat();
     } else {
@@ -2995,7 +3129,7 @@ public class Region {
         } else {
           img = Image.create((String) ptn);
           if (img.isValid()) {
-            finder = new Finder(getScreen().capture(x, y, w, h), this);
+            finder = new Finder(captureForFind(repeating), this);
             finder.findAll(img);
           } else if (img.isText()) {
             findingText = true;
@@ -3011,13 +3145,13 @@ public class Region {
       } else if (ptn instanceof Pattern) {
         if (((Pattern) ptn).isValid()) {
           img = ((Pattern) ptn).getImage();
-          finder = new Finder(getScreen().capture(x, y, w, h), this);
+          finder = new Finder(captureForFind(repeating), this);
           finder.findAll((Pattern) ptn);
         }
       } else if (ptn instanceof Image) {
         if (((Image) ptn).isValid()) {
           img = ((Image) ptn);
-          finder = new Finder(getScreen().capture(x, y, w, h), this);
+          finder = new Finder(captureForFind(repeating), this);
           finder.findAll((Image) ptn);
         }
       } else {
@@ -3028,6 +3162,12 @@ public class Region {
         repeating._image = img;
       }
     }
+    if (traceStart > 0) {
+      String targetName = findingText ? someText : (repeating != null && repeating._image != null ?
+          repeating._image.getName() : Image.getImageFromTarget(ptn).getName());
+      TraceRecorder.record(TraceRecorder.FINDALL, targetName, getRect(), 0, System.nanoTime() - traceStart,
+          repeating == null ? 1 : repeating.scans, finder != null && finder.hasNext());
+    }
     if (finder.hasNext()) {
       return finder;
     }
@@ -3084,6 +3224,10 @@ public class Region {
 
     Finder _finder = null;
 
+    int scans = 0;
+
+    long frame = 0;
+
     private double findTimeout;
 
     public void setTarget(String target) {
@@ -3119,6 +3263,7 @@ public class Region {
       long begin_t = (new Date()).getTime();
       do {
         long before_find = (new Date()).getTime();
+        scans++;
         run();
         if (ifSuccessful()) {
           return true;
@@ -3264,7 +3409,7 @@ public class Region {
       if (findingText) {
         if (TextRecognizer.getInstance() != null) {
           log(lvl, "findInImage: Switching to TextSearch");
-          finder = new Finder(getScreen().capture(x, y, w, h), this);
+          finder = new Finder(base, this);
           finder.findText((String) target);
         }
       }
@@ -3830,12 +3975,16 @@ public class Region {
     regionObserver.initialize();
     observing = true;
     Observing.addRunningObserver(this);
+    long frame = 0;
     while (observing && stop_t > (new Date()).getTime()) {
       long before_find = (new Date()).getTime();
-      ScreenImage simg = getScreen().capture(x, y, w, h);
-      if (!regionObserver.update(simg)) {
-        observing = false;
-        break;
+      if (!isUnchangedSince(frame) || regionObserver.hasRepeatPending()) {
+        ScreenImage simg = getScreen().capture(x, y, w, h);
+        frame = simg.getFrame();
+        if (!regionObserver.update(simg)) {
+          observing = false;
+          break;
+        }
       }
       if (!observing) {
         break;
@@ -4736,6 +4885,10 @@ public class Region {
    * @return 0 for success 1 otherwise
    */
   public int write(String text) {
+    if (text.indexOf('#') < 0 && shouldPaste(text)) {
+      Debug.info("Write: pasted (%d characters)", text.length());
+      return paste(text) == 1 ? 0 : 1;
+    }
     Debug.info("Write: " + text);
     char c;
     String token, tokenSave;
@@ -4746,13 +4899,17 @@ public class Region {
     Settings.TypeDelay = 0.0;
     robot.typeStarts();
     for (int i = 0; i < text.length(); i++) {
-      log(lvl + 1, "write: (%d) %s", i, text.substring(i));
+      if (Debug.isLogging(lvl + 1)) {
+        log(lvl + 1, "write: (%d) %s", i, text.substring(i));
+      }
       c = text.charAt(i);
       token = null;
       boolean isModifier = false;
       if (c == '#') {
         if (text.charAt(i + 1) == '#') {
-          log(lvl, "write at: %d: %s", i, c);
+          if (Debug.isLogging(lvl)) {
+            log(lvl, "write at: %d: %s", i, c);
+          }
           i += 1;
           continue;
         }
@@ -4770,9 +4927,13 @@ public class Region {
       }
       Integer key = -1;
       if (token == null) {
-        log(lvl + 1, "write: %d: %s", i, c);
+        if (Debug.isLogging(lvl + 1)) {
+          log(lvl + 1, "write: %d: %s", i, c);
+        }
       } else {
-        log(lvl + 1, "write: token at %d: %s", i, token);
+        if (Debug.isLogging(lvl + 1)) {
+          log(lvl + 1, "write: token at %d: %s", i, token);
+        }
         int repeat = 0;
         if (token.toUpperCase().startsWith("#W")) {
           if (token.length() > 3) {
@@ -4784,9 +4945,13 @@ public class Region {
             }
             if ((token.startsWith("#w") && t > 60)) {
               pause = 20 + (t > 1000 ? 1000 : t);
-              log(lvl + 1, "write: type delay: " + t);
+              if (Debug.isLogging(lvl + 1)) {
+                log(lvl + 1, "write: type delay: " + t);
+              }
             } else {
-              log(lvl + 1, "write: wait: " + t);
+              if (Debug.isLogging(lvl + 1)) {
+                log(lvl + 1, "write: wait: " + t);
+              }
               robot.delay((t < 60 ? t * 1000 : t));
             }
             continue;
@@ -4809,9 +4974,13 @@ public class Region {
         }
         if (-1 < (key = Key.toJavaKeyCodeFromText(token))) {
           if (repeat > 0) {
-            log(lvl + 1, "write: %s Repeating: %d", token, repeat);
+            if (Debug.isLogging(lvl + 1)) {
+              log(lvl + 1, "write: %s Repeating: %d", token, repeat);
+            }
           } else {
-            log(lvl + 1, "write: %s", tokenSave);
+            if (Debug.isLogging(lvl + 1)) {
+              log(lvl + 1, "write: %s", tokenSave);
+            }
             repeat = 1;
           }
           i += tokenSave.length() - 1;
@@ -4832,7 +5001,9 @@ public class Region {
         }
       }
       if (!modifier.isEmpty()) {
-        log(lvl + 1, "write: modifier + " + modifier);
+        if (Debug.isLogging(lvl + 1)) {
+          log(lvl + 1, "write: modifier + " + modifier);
+        }
         for (int n = 0; n < modifier.length(); n++) {
           robot.keyDown(Key.toJavaKeyCodeFromText(String.format("#%s.", modifier.substring(n, n + 1))));
         }
@@ -4843,7 +5014,9 @@ public class Region {
         robot.typeChar(c, IRobot.KeyMode.PRESS_RELEASE);
       }
       if (!modifier.isEmpty()) {
-        log(lvl + 1, "write: modifier - " + modifier);
+        if (Debug.isLogging(lvl + 1)) {
+          log(lvl + 1, "write: modifier - " + modifier);
+        }
         for (int n = 0; n < modifier.length(); n++) {
           robot.keyUp(Key.toJavaKeyCodeFromText(String.format("#%s.", modifier.substring(n, n + 1))));
         }
@@ -4976,9 +5149,9 @@ public class Region {
     }
     Debug profiler = Debug.startTimer("Region.type");
     if (text != null && !"".equals(text)) {
-      String showText = "";
+      StringBuilder showText = new StringBuilder();
       for (int i = 0; i < text.length(); i++) {
-        showText += Key.toJavaKeyCodeText(text.charAt(i));
+        showText.append(Key.toJavaKeyCodeText(text.charAt(i)));
       }
       String modText = "";
       String modWindows = null;
@@ -4996,28 +5169,47 @@ public class Region {
       }
       Debug.action("%s TYPE \"%s\"", modText, showText);
       log(lvl, "%s TYPE \"%s\"", modText, showText);
+      long traceStart = TraceRecorder.isOn() ? System.nanoTime() : 0;
       profiler.lap("before getting Robot");
       IRobot r = getRobotForRegion();
-      int pause = 20 + (Settings.TypeDelay > 1 ? 1000 : (int) (Settings.TypeDelay * 1000));
+      int pause = Math.max(0, Settings.TypeKeyDelay)
+          + (Settings.TypeDelay > 1 ? 1000 : (int) (Settings.TypeDelay * 1000));
       Settings.TypeDelay = 0.0;
       profiler.lap("before typing");
       r.typeStarts();
-      for (int i = 0; i < text.length(); i++) {
-        r.pressModifiers(modifiers);
-        r.typeChar(text.charAt(i), IRobot.KeyMode.PRESS_RELEASE);
-        r.releaseModifiers(modifiers);
-        r.delay(pause);
-      }
+      r.typeText(text, modifiers, pause);
       r.typeEnds();
-      profiler.lap("after typing, before waitForIdle");
-      r.waitForIdle();
       profiler.end();
+      if (traceStart > 0) {
+        TraceRecorder.record(TraceRecorder.TYPE, modText.trim(), getRect(), 0,
+            System.nanoTime() - traceStart, text.length(), true);
+      }
       return 1;
     }
 
     return 0;
   }
 
+  /*
+   * write: a long plain text (no special keys, no line ends/tabs) is pasted
+   * (Settings.TypePasteLimit) - not on remote screens (the clipboard is the local one)
+   */
+  private boolean shouldPaste(String text) {
+    if (Settings.TypePasteLimit < 1 || text.length() <= Settings.TypePasteLimit) {
+      return false;
+    }
+    if (getRobotForRegion().isRemote()) {
+      return false;
+    }
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c < ' ' || (c >= Key.cMin && c < Key.cMax)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * time in milliseconds to delay between each character at next type only (max 1000)
    *
@@ -13,6 +13,9 @@ import java.awt.*;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * A screen represents a physical monitor with its coordinates and size according to the global
@@ -92,8 +95,29 @@ public class Screen extends Region implements IScreen {
   private static String me = "Screen: ";
   private static int lvl = 3;
 
+  // fixed arities: no varargs array, if not logged (primitives are boxed anyway: guard such calls)
+  private static void log(int level, String message) {
+    if (Debug.isLogging(level)) {
+      Debug.logx(level, me + message);
+    }
+  }
+
+  private static void log(int level, String message, Object arg) {
+    if (Debug.isLogging(level)) {
+      Debug.logx(level, me + message, arg);
+    }
+  }
+
+  private static void log(int level, String message, Object arg1, Object arg2) {
+    if (Debug.isLogging(level)) {
+      Debug.logx(level, me + message, arg1, arg2);
+    }
+  }
+
   private static void log(int level, String message, Object... args) {
-    Debug.logx(level, me + message, args);
+    if (Debug.isLogging(level)) {
+      Debug.logx(level, me + message, args);
+    }
   }
 
   public static Screen getDefaultInstance4py() {
@@ -675,8 +699,85 @@ public class Screen extends Region implements IScreen {
    */
   @Override
   public ScreenImage capture(Rectangle rect) {
+    ScreenImage simg = captureFromStream(rect, 0);
+    if (simg == null) {
+      simg = captureFromRecent(rect);
+    }
+    if (simg != null) {
+      return simg;
+    }
+    simg = doCapture(rect);
+    if (Settings.CaptureMaxAge > 0 && simg != null) {
+      synchronized (recentCaptures) {
+        recentCaptures.put(curID, new RecentCapture(simg, inputCount()));
+      }
+    }
+    return simg;
+  }
+
+  private static class RecentCapture {
+    final ScreenImage simg;
+    final long time = System.nanoTime();
+    final long inputCount;
+
+    RecentCapture(ScreenImage simg, long inputCount) {
+      this.simg = simg;
+      this.inputCount = inputCount;
+    }
+  }
+
+  private static final Map<Integer, RecentCapture> recentCaptures = new HashMap<>();
+
+  private static long inputCount() {
+    return RobotDesktop.getInputCount();
+  }
+
+  private ScreenImage captureFromRecent(Rectangle rect) {
+    if (Settings.CaptureMaxAge <= 0 || curID < 0) {
+      return null;
+    }
+    RecentCapture recent;
+    synchronized (recentCaptures) {
+      recent = recentCaptures.get(curID);
+    }
+    if (recent == null || recent.inputCount != inputCount()
+        || System.nanoTime() - recent.time > Settings.CaptureMaxAge * 1000000L
+        || !recent.simg.getROI().contains(rect)) {
+      return null;
+    }
+    ScreenImage simg = recent.simg.getROI().equals(rect) ? recent.simg : recent.simg.getSub(rect);
+    lastScreenImage = simg;
+    if (TraceRecorder.isOn()) {
+      TraceRecorder.record(TraceRecorder.CAPTURE, "reused", rect, 0, 0, 1, true);
+    }
+    return simg;
+  }
+
+  /**
+   * create a ScreenImage with given rectangle on this screen,
+   * that is newer than the given capture stream frame (see {@link #startCaptureStream(double)})<br>
+   * without a running capture stream the same as capture(rect)
+   *
+   * @param rect      The Rectangle to be captured
+   * @param newerThan sequence number of a frame already seen (see ScreenImage.getFrame())
+   * @return the image of the region
+   */
+  public ScreenImage capture(Rectangle rect, long newerThan) {
+    ScreenImage simg = captureFromStream(rect, newerThan);
+    if (simg != null) {
+      return simg;
+    }
+    // not capture(rect): it might return the frame just rejected or a recent capture
+    return doCapture(rect);
+  }
+
+  private ScreenImage doCapture(Rectangle rect) {
     lastCaptureTime = new Date().getTime();
+    long traceStart = TraceRecorder.isOn() ? System.nanoTime() : 0;
     ScreenImage simg = getRobot().captureScreen(rect);
+    if (traceStart > 0) {
+      TraceRecorder.record(TraceRecorder.CAPTURE, "", rect, 0, System.nanoTime() - traceStart, 1, simg != null);
+    }
     if (Settings.FindProfiling) {
       Debug.logp("[FindProfiling] Screen.capture [%d x %d]: %d msec",
               rect.width, rect.height, new Date().getTime() - lastCaptureTime);
@@ -699,6 +800,96 @@ public class Screen extends Region implements IScreen {
     return capture(reg.getRect());
   }
 
+  private ScreenImage captureFromStream(Rectangle rect, long newerThan) {
+    CaptureStream stream = getCaptureStream();
+    if (stream == null || !stream.isRunning() || !stream.getBounds().contains(rect)) {
+      return null;
+    }
+    long traceStart = TraceRecorder.isOn() ? System.nanoTime() : 0;
+    long maxAge = 2 * stream.getInterval();
+    CaptureStream.Frame frame = stream.getLatest(newerThan, maxAge, maxAge);
+    if (frame == null || frame.getInputCount() != inputCount()) {
+      // taken before the latest click/type: might not show its effect yet
+      return null;
+    }
+    ScreenImage simg = frame.getSub(rect);
+    simg.setFrame(frame.getSequence());
+    if (traceStart > 0) {
+      TraceRecorder.record(TraceRecorder.CAPTURE, "stream", rect, 0, System.nanoTime() - traceStart,
+          (int) frame.getSequence(), true);
+    }
+    lastScreenImage = simg;
+    return simg;
+  }
+  //</editor-fold>
+
+  //<editor-fold defaultstate="collapsed" desc="21 Capture - continuous capture stream">
+  private static final Map<Integer, CaptureStream> captureStreams = new HashMap<>();
+
+  /**
+   * start capturing this screen continuously in the background at the given frame rate<br>
+   * while running, capture() on this screen (and so find, wait, exists, observe, ...)
+   * uses the latest frame, if it is at most 2 frame intervals old,
+   * repeated searches (wait, exists) take the next frame newer than the one already searched<br>
+   * a running stream for this screen is restarted with the new frame rate
+   *
+   * @param fps frames per second
+   * @return the stream
+   */
+  public CaptureStream startCaptureStream(double fps) {
+    CaptureStream stream = new CaptureStream(getRobot(), getBounds(), fps);
+    CaptureStream previous;
+    synchronized (captureStreams) {
+      previous = captureStreams.put(curID, stream);
+    }
+    if (previous != null) {
+      previous.stop();
+    }
+    stream.start();
+    return stream;
+  }
+
+  /**
+   * stop the continuous capture for this screen (if running)
+   */
+  public void stopCaptureStream() {
+    CaptureStream stream;
+    synchronized (captureStreams) {
+      stream = captureStreams.remove(curID);
+    }
+    if (stream != null) {
+      stream.stop();
+    }
+  }
+
+  /**
+   * @return the capture stream of this screen or null if not started
+   */
+  public CaptureStream getCaptureStream() {
+    if (curID < 0) {
+      return null;
+    }
+    synchronized (captureStreams) {
+      return captureStreams.get(curID);
+    }
+  }
+
+  /**
+   * INTERNAL USE: stop the capture streams of all screens
+   */
+  public static void stopCaptureStreams() {
+    List<CaptureStream> streams;
+    synchronized (captureStreams) {
+      streams = new ArrayList<>(captureStreams.values());
+      captureStreams.clear();
+    }
+    for (CaptureStream stream : streams) {
+      stream.stop();
+    }
+  }
+  //</editor-fold>
+
+  //<editor-fold defaultstate="collapsed" desc="22 Capture - prompt">
   public static void doPrompt(String message, EventObserver obs) {
     captureObserver = obs;
     Screen.getPrimaryScreen().userCapture(message);
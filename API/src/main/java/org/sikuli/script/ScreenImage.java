@@ -15,6 +15,8 @@ import org.sikuli.script.support.RunTime;
 import java.awt.*;
 import java.awt.image.*;
 import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
 import javax.imageio.ImageIO;
 
 /**
@@ -35,6 +37,7 @@ public class ScreenImage {
 	public int x, y, w, h;
 	protected Rectangle _roi;
 	protected BufferedImage _img;
+	protected Mat _mat = null;
 	protected String _filename = null;
 	public Location start;
 	public Location end;
@@ -67,10 +70,102 @@ public class ScreenImage {
 		h = _img.getHeight();
 	}
 
+  /**
+   * create ScreenImage with given OpenCV Mat (as delivered by captures, that produce the Mat directly)<br>
+   * the BufferedImage is only created when requested
+   *
+   * @param roi the rectangle it was taken from
+   * @param mat the image as Mat (BGR, CV_8UC3) - must not be changed afterwards
+   */
+  public ScreenImage(Rectangle roi, Mat mat) {
+    _mat = mat;
+    _roi = roi;
+    x = (int) roi.getX();
+    y = (int) roi.getY();
+    w = mat.cols();
+    h = mat.rows();
+  }
+
+  /**
+   * @return the image as Mat, if it was created from a Mat, otherwise null
+   */
+  public Mat getMat() {
+    return _mat;
+  }
+
+  private Mat _grayMat = null;
+
+  /**
+   * the grayscale version of this image - made once and shared by all searches in this image
+   *
+   * @param bgr this image as BGR Mat if already at hand (null: made from the image)
+   * @return the image as Mat CV_8UC1 - must not be changed
+   */
+  public synchronized Mat getGrayMat(Mat bgr) {
+    if (_grayMat == null) {
+      if (bgr == null) {
+        bgr = _mat != null ? _mat : Finder2.makeMat(getImage());
+      }
+      if (bgr.channels() == 1) {
+        _grayMat = bgr;
+      } else {
+        _grayMat = new Mat();
+        Imgproc.cvtColor(bgr, _grayMat, Imgproc.COLOR_BGR2GRAY);
+      }
+    }
+    return _grayMat;
+  }
+
+  private Finder.PreparedImage[] prepared = new Finder.PreparedImage[2];
+  private int[] searches = new int[2];
+
+  /**
+   * Settings.PreparedSearch: the prepared version of this image for searches - made with the second search
+   *
+   * @param gray true for the grayscale version (see getGrayMat)
+   * @param base this image as Mat (color or gray)
+   * @return the prepared image or null (first search)
+   */
+  public synchronized Finder.PreparedImage getPrepared(boolean gray, Mat base) {
+    int n = gray ? 1 : 0;
+    if (prepared[n] == null && ++searches[n] > 1) {
+      prepared[n] = new Finder.PreparedImage(base, Settings.PreparedSearchDFT);
+    }
+    return prepared[n];
+  }
+
+  private final Map<String, KeypointMatcher.Features> features = new HashMap<>();
+
+  /**
+   * Internal Use: keypoints of this image per search engine (see KeypointMatcher)
+   *
+   * @return the cache (to be used synchronized)
+   */
+  Map<String, KeypointMatcher.Features> getFeatures() {
+    return features;
+  }
+
+  protected long frame = 0;
+
+  /**
+   * @return the sequence number of the capture stream frame or the VNC framebuffer version
+   * this image was taken from (0: not known, e.g. direct capture)
+   */
+  public long getFrame() {
+    return frame;
+  }
+
+  public void setFrame(long frame) {
+    this.frame = frame;
+  }
+
   public ScreenImage getSub(Rectangle sub) {
     if (!_roi.contains(sub)) {
       return this;
     }
+    if (_img == null && _mat != null) {
+      return new ScreenImage(sub, _mat.submat(sub.y - y, sub.y - y + sub.height, sub.x - x, sub.x - x + sub.width));
+    }
     BufferedImage img = _img.getSubimage(sub.x - x, sub.y - y, sub.width, sub.height);
     return new ScreenImage(sub, img);
   }
@@ -110,7 +205,7 @@ public class ScreenImage {
 	 * @return absolute path to stored file
 	 */
   public String save() {
-    return FileManager.saveTimedImage(_img, RunTime.get().fpBaseTempPath, "#sikuliximage");
+    return FileManager.saveTimedImage(getImage(), RunTime.get().fpBaseTempPath, "#sikuliximage");
   }
 
 	/**
@@ -132,7 +227,7 @@ public class ScreenImage {
 	 * @return absolute path to stored file
 	 */
   public String save(String path) {
-    return FileManager.saveTimedImage(_img, path, "#sikuliximage");
+    return FileManager.saveTimedImage(getImage(), path, "#sikuliximage");
   }
 
 	/**
@@ -144,7 +239,7 @@ public class ScreenImage {
 	 * @return absolute path to stored file
 	 */
   public String save(String path, String name) {
-    return FileManager.saveTimedImage(_img, path, name);
+    return FileManager.saveTimedImage(getImage(), path, name);
   }
 
 	/**
@@ -199,7 +294,7 @@ public class ScreenImage {
 	private void storeImage(File image) throws IOException {
 		String filename = image.getAbsolutePath();
 		if (!filename.equals(_filename) || image.getName().startsWith("_")) {
-			ImageIO.write(_img, "png", image);
+			ImageIO.write(getImage(), "png", image);
 			_filename = filename;
 		}
 	}
@@ -209,6 +304,11 @@ public class ScreenImage {
 	 * @return the stored image in memory
 	 */
 	public BufferedImage getImage() {
+		if (_img == null && _mat != null) {
+			BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_3BYTE_BGR);
+			_mat.get(0, 0, ((DataBufferByte) img.getRaster().getDataBuffer()).getData());
+			_img = img;
+		}
 		return _img;
 	}
 
@@ -230,7 +330,7 @@ public class ScreenImage {
 
   public void saveLastScreenImage(File fPath) {
     try {
-  		ImageIO.write(_img, "png", new File(fPath, "LastScreenImage.png"));
+  		ImageIO.write(getImage(), "png", new File(fPath, "LastScreenImage.png"));
     } catch (Exception ex) {}
   }
 
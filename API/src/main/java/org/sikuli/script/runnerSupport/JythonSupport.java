@@ -6,9 +6,15 @@ package org.sikuli.script.runnerSupport;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.python.core.BytecodeLoader;
+import org.python.core.CompileMode;
+import org.python.core.CompilerFlags;
+import org.python.core.Py;
 import org.python.core.PyCode;
 import org.python.core.PyList;
+import org.python.core.PyModule;
+import org.python.core.PyObject;
 import org.python.core.PySystemState;
+import org.python.core.imp;
 import org.python.util.PythonInterpreter;
 import org.sikuli.basics.Debug;
 import org.sikuli.basics.FileManager;
@@ -17,15 +23,24 @@ import org.sikuli.script.ImagePath;
 import org.sikuli.script.SikulixForJython;
 import org.sikuli.script.support.RunTime;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -89,6 +104,7 @@ public class JythonSupport implements IRunnerSupport {
     }
     runTime = RunTime.get();
     runTime.exportLib();
+    compileCacheFolder = new File(runTime.fSikulixStore, "JythonCache");
     try {
       interpreter = new PythonInterpreter();
       cPyException = Class.forName("org.python.core.PyException");
@@ -114,8 +130,8 @@ public class JythonSupport implements IRunnerSupport {
   }
 
   public void interpreterCleanup() {
-    if (null != interpreter) {
-      interpreter.cleanup();
+    if (null != getInterpreter()) {
+      getInterpreter().cleanup();
     }
   }
 
@@ -145,6 +161,156 @@ public class JythonSupport implements IRunnerSupport {
   }
   //</editor-fold>
 
+  //<editor-fold desc="02 interpreter pool">
+  private static class PooledInterpreter {
+    final PythonInterpreter interpreter;
+    final List<String> path = new ArrayList<>();
+    final Set<String> modules = new HashSet<>();
+    // the sys.path mirror (see sys.path handling) while leased
+    final List<String> sysPath = new ArrayList<>();
+
+    PooledInterpreter(PythonInterpreter interpreter) {
+      this.interpreter = interpreter;
+    }
+  }
+
+  private static final ThreadLocal<PooledInterpreter> leased = new ThreadLocal<>();
+  private static final LinkedBlockingQueue<PooledInterpreter> idle = new LinkedBlockingQueue<>();
+  // one permit per interpreter, that might be leased (Settings.JythonPoolSize at the first lease)
+  private static Semaphore slots = null;
+  private static int pooled = 0;
+
+  /**
+   * @return the interpreter leased by the current thread or the singleton interpreter
+   */
+  private static PythonInterpreter getInterpreter() {
+    PooledInterpreter own = leased.get();
+    return own == null ? interpreter : own.interpreter;
+  }
+
+  /**
+   * @return true if scripts can run concurrently in pooled interpreters (Settings.JythonPoolSize &gt; 1)
+   */
+  public static boolean isPooled() {
+    return Settings.JythonPoolSize > 1;
+  }
+
+  /**
+   * binds an interpreter of the pool to the current thread (waits, if all are in use)<br>
+   * each has its own sys state (sys.path, sys.argv, sys.modules) and has already imported sikuli<br>
+   * exec/eval, sys.path and sys.argv handling of this JythonSupport then use this interpreter,
+   * until releaseInterpreter() is called
+   *
+   * @throws InterruptedException while waiting
+   */
+  public void leaseInterpreter() throws InterruptedException {
+    if (leased.get() != null) {
+      return;
+    }
+    synchronized (idle) {
+      if (null == slots) {
+        slots = new Semaphore(Math.max(1, Settings.JythonPoolSize), true);
+      }
+    }
+    slots.acquire();
+    PooledInterpreter own = idle.poll();
+    if (own == null) {
+      try {
+        own = createPooled();
+      } catch (RuntimeException | Error e) {
+        slots.release();
+        throw e;
+      }
+    }
+    leased.set(own);
+  }
+
+  private PooledInterpreter createPooled() {
+    long start = new Date().getTime();
+    PySystemState pyState = new PySystemState();
+    PooledInterpreter own = new PooledInterpreter(new PythonInterpreter(null, pyState));
+    synchronized (sysPath) {
+      pyState.path.clear();
+      pyState.path.addAll(sysPath);
+    }
+    leased.set(own);
+    try {
+      interpreterExecString("import sys");
+      interpreterExecString("import org.sikuli.script.support.Runner as Runner");
+      executeScriptHeader(null);
+    } finally {
+      leased.remove();
+    }
+    for (Object entry : pyState.path) {
+      own.path.add(entry.toString());
+    }
+    for (PyObject module : pyState.modules.asIterable()) {
+      own.modules.add(module.toString());
+    }
+    synchronized (idle) {
+      pooled++;
+    }
+    log(lvl, "pooled interpreter #%d ready (%d msec)", pooled, new Date().getTime() - start);
+    return own;
+  }
+
+  /**
+   * resets the interpreter leased by the current thread and returns it to the pool:
+   * fresh __main__ (only sys and Runner imported), sys.path and sys.modules as after the start, sys.argv empty
+   */
+  public void releaseInterpreter() {
+    PooledInterpreter own = leased.get();
+    if (own == null) {
+      return;
+    }
+    leased.remove();
+    own.sysPath.clear();
+    try {
+      PythonInterpreter pyInterpreter = own.interpreter;
+      pyInterpreter.cleanup();
+      PySystemState pyState = pyInterpreter.getSystemState();
+      List<PyObject> added = new ArrayList<>();
+      for (PyObject module : pyState.modules.asIterable()) {
+        if (!own.modules.contains(module.toString())) {
+          added.add(module);
+        }
+      }
+      for (PyObject module : added) {
+        pyState.modules.__delitem__(module);
+      }
+      pyState.path.clear();
+      pyState.path.addAll(own.path);
+      pyState.argv.clear();
+      PyModule main = new PyModule("__main__", Py.newStringMap());
+      pyState.modules.__setitem__("__main__", main);
+      pyInterpreter.setLocals(main.__dict__);
+      pyInterpreter.exec("import sys");
+      pyInterpreter.exec("import org.sikuli.script.support.Runner as Runner");
+      idle.put(own);
+    } catch (Exception e) {
+      log(-1, "pooled interpreter not reusable: %s", e.getMessage());
+      own.interpreter.close();
+      synchronized (idle) {
+        pooled--;
+      }
+    } finally {
+      slots.release();
+    }
+  }
+
+  /**
+   * add a folder in front of sys.path of the interpreter leased by the current thread
+   *
+   * @param folder the folder
+   */
+  public void addLeasedSysPath(File folder) {
+    PooledInterpreter own = leased.get();
+    if (own != null) {
+      own.interpreter.getSystemState().path.add(0, folder.getAbsolutePath());
+    }
+  }
+  //</editor-fold>
+
   //<editor-fold desc="05 Jython reflection">
   static Class cPyMethod = null;
 
@@ -296,14 +462,14 @@ public class JythonSupport implements IRunnerSupport {
 
   //<editor-fold desc="17 exec/eval">
   public Object interpreterEval(String expression) {
-    if (interpreter == null) {
+    if (getInterpreter() == null) {
       return "";
     }
-    return interpreter.eval(expression);
+    return getInterpreter().eval(expression);
   }
 
   public boolean interpreterExecString(String script) {
-    interpreter.exec(script);
+    getInterpreter().exec(script);
     return true;
   }
 
@@ -316,18 +482,35 @@ public class JythonSupport implements IRunnerSupport {
       log(-1, "exec compiled script: %s", e.getMessage());
     }
     PyCode pyCode = BytecodeLoader.makeCode(FilenameUtils.getBaseName(scriptFile), data, scriptFile);
-    interpreter.exec(pyCode);
+    getInterpreter().exec(pyCode);
   }
 
   public void interpreterExecFile(String script) {
-    interpreter.execfile(script);
+    PyCode pyCode;
+    try {
+      pyCode = getCompiledScript(new File(script));
+    } catch (IOException e) {
+      log(-1, "exec script: %s (running from source)", e.getMessage());
+      getInterpreter().execfile(script);
+      return;
+    }
+    getInterpreter().exec(pyCode);
   }
 
   public void executeScriptHeader(List<String> codeBefore) {
-    for (String line : SCRIPT_HEADER) {
-      log(lvl + 1, "executeScriptHeader: %s", line);
-      interpreterExecString(line);
+    PyCode header = headerCode;
+    if (header == null) {
+      StringBuilder lines = new StringBuilder();
+      for (String line : SCRIPT_HEADER) {
+        log(lvl + 1, "executeScriptHeader: %s", line);
+        if (!line.trim().startsWith("#")) {
+          lines.append(line).append("\n");
+        }
+      }
+      header = Py.compile_flags(lines.toString(), "<header>", CompileMode.exec, new CompilerFlags());
+      headerCode = header;
     }
+    getInterpreter().exec(header);
     if (codeBefore != null) {
       for (String line : codeBefore) {
         interpreterExecString(line);
@@ -335,8 +518,10 @@ public class JythonSupport implements IRunnerSupport {
     }
   }
 
+  private static PyCode headerCode = null;
+
   /**
-   * The header commands, that are executed before every script
+   * The header commands, that are executed before every script (compiled once)
    */
   private static String[] SCRIPT_HEADER = new String[]{
           "# -*- coding: utf-8 -*- ",
@@ -346,6 +531,121 @@ public class JythonSupport implements IRunnerSupport {
   };
   //</editor-fold>
 
+  //<editor-fold desc="18 compiled scripts cache">
+  private static class CompiledScript {
+    final long modified;
+    final long size;
+    final String hash;
+    final PyCode code;
+
+    CompiledScript(long modified, long size, String hash, PyCode code) {
+      this.modified = modified;
+      this.size = size;
+      this.hash = hash;
+      this.code = code;
+    }
+  }
+
+  private static final Map<String, CompiledScript> compiledScripts = new ConcurrentHashMap<>();
+  private static File compileCacheFolder = null;
+  private static volatile long lastCompileTime = -1;
+
+  /**
+   * the compiled code of a script, that is compiled only if the script has changed<br>
+   * kept in memory (checked by path, modified time and size - content hash if these differ)
+   * and as $py.class in SikulixStore/JythonCache (reused after a restart, if the content is the same)
+   *
+   * @param script the .py file
+   * @return the code to be run with interpreter.exec()
+   * @throws IOException script not readable
+   */
+  public static PyCode getCompiledScript(File script) throws IOException {
+    String path = script.getAbsolutePath();
+    long modified = script.lastModified();
+    long size = script.length();
+    CompiledScript cached = compiledScripts.get(path);
+    if (cached != null && cached.modified == modified && cached.size == size) {
+      lastCompileTime = 0;
+      return cached.code;
+    }
+    byte[] source = FileUtils.readFileToByteArray(script);
+    String pathHash = hash(path.getBytes("UTF-8"));
+    String hash = pathHash + "-" + hash(source);
+    if (cached != null && cached.hash.equals(hash)) {
+      compiledScripts.put(path, new CompiledScript(modified, size, hash, cached.code));
+      lastCompileTime = 0;
+      return cached.code;
+    }
+    long start = new Date().getTime();
+    String name = FilenameUtils.getBaseName(path).replaceAll("[^A-Za-z0-9_]", "_");
+    File fCompiled = null;
+    byte[] data = null;
+    if (compileCacheFolder != null) {
+      fCompiled = new File(compileCacheFolder, hash + "$py.class");
+      if (fCompiled.exists()) {
+        try {
+          data = FileUtils.readFileToByteArray(fCompiled);
+        } catch (IOException e) {
+          data = null;
+        }
+      }
+    }
+    boolean compiled = data == null;
+    if (compiled) {
+      data = imp.compileSource(name, new ByteArrayInputStream(source), path, modified);
+      if (fCompiled != null) {
+        storeCompiled(fCompiled, pathHash, data);
+      }
+    }
+    PyCode code = BytecodeLoader.makeCode(name + "$py", data, path);
+    compiledScripts.put(path, new CompiledScript(modified, size, hash, code));
+    lastCompileTime = new Date().getTime() - start;
+    Debug.log(lvl, "Jython: %s: %s (%d msec)", compiled ? "compiled" : "loaded compiled", path, lastCompileTime);
+    return code;
+  }
+
+  private static void storeCompiled(File fCompiled, String pathHash, byte[] data) {
+    try {
+      File[] outdated = compileCacheFolder.listFiles((dir, fName) -> fName.startsWith(pathHash + "-"));
+      if (outdated != null) {
+        for (File fOutdated : outdated) {
+          fOutdated.delete();
+        }
+      }
+      FileUtils.writeByteArrayToFile(fCompiled, data);
+    } catch (IOException e) {
+      Debug.log(-1, "Jython: compiled script not stored: %s", e.getMessage());
+    }
+  }
+
+  private static String hash(byte[] data) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-1").digest(data);
+      StringBuilder hex = new StringBuilder();
+      for (byte b : digest) {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      return "" + Arrays.hashCode(data);
+    }
+  }
+
+  /**
+   * @return time in msec of the last compile step of a script (0: taken from the cache, -1: no script yet)
+   */
+  public static long getLastCompileTime() {
+    return lastCompileTime;
+  }
+
+  /**
+   * forget all compiled scripts (the stored ones are kept)
+   */
+  public static void clearCompiledScripts() {
+    compiledScripts.clear();
+  }
+  //</editor-fold>
+
   //<editor-fold desc="10 sys.path handling">
   List<String> sysPath = new ArrayList<String>();
   int nPathAdded = 0;
@@ -354,8 +654,18 @@ public class JythonSupport implements IRunnerSupport {
   String name = "";
   private long lastRun = 0;
 
+  /*
+   * the sys.path mirror of the interpreter leased by the current thread or of the singleton interpreter
+   */
+  private List<String> sysPath() {
+    PooledInterpreter own = leased.get();
+    return own == null ? sysPath : own.sysPath;
+  }
+
   public void getSysPath() {
+    List<String> sysPath = sysPath();
     synchronized (sysPath) {
+      PythonInterpreter interpreter = getInterpreter();
       if (null == interpreter) {
         return;
       }
@@ -376,8 +686,10 @@ public class JythonSupport implements IRunnerSupport {
   }
 
   public void setSysPath() {
+    List<String> sysPath = sysPath();
     synchronized (sysPath) {
-      if (null == interpreter || null == sysPath) {
+      PythonInterpreter interpreter = getInterpreter();
+      if (null == interpreter) {
         return;
       }
       try {
@@ -414,6 +726,7 @@ public class JythonSupport implements IRunnerSupport {
   }
 
   public void addSysPath(String fpFolder) {
+    List<String> sysPath = sysPath();
     synchronized (sysPath) {
       if (!hasSysPath(fpFolder)) {
         sysPath.add(0, fpFolder);
@@ -424,6 +737,7 @@ public class JythonSupport implements IRunnerSupport {
   }
 
   public void appendSysPath(String fpFolder) {
+    List<String> sysPath = sysPath();
     synchronized (sysPath) {
       if (!hasSysPath(fpFolder)) {
         sysPath.add(fpFolder);
@@ -434,6 +748,7 @@ public class JythonSupport implements IRunnerSupport {
   }
 
   public void putSysPath(String fpFolder, int n) {
+    List<String> sysPath = sysPath();
     synchronized (sysPath) {
       if (n < 1 || n > sysPath.size()) {
         addSysPath(fpFolder);
@@ -446,6 +761,7 @@ public class JythonSupport implements IRunnerSupport {
   }
 
   public void insertSysPath(File fFolder) {
+    List<String> sysPath = sysPath();
     synchronized (sysPath) {
       getSysPath();
       sysPath.add((nPathSaved > -1 ? nPathSaved : 0), fFolder.getAbsolutePath());
@@ -455,6 +771,7 @@ public class JythonSupport implements IRunnerSupport {
   }
 
   public void removeSysPath(File fFolder) {
+    List<String> sysPath = sysPath();
     synchronized (sysPath) {
       int n;
       if (-1 < (n = getSysPathEntry(fFolder))) {
@@ -467,6 +784,7 @@ public class JythonSupport implements IRunnerSupport {
   }
 
   public boolean hasSysPath(String fpFolder) {
+    List<String> sysPath = sysPath();
     synchronized (sysPath) {
       getSysPath();
       for (String fpPath : sysPath) {
@@ -479,6 +797,7 @@ public class JythonSupport implements IRunnerSupport {
   }
 
   public int getSysPathEntry(File fFolder) {
+    List<String> sysPath = sysPath();
     synchronized (sysPath) {
       getSysPath();
       int n = 0;
@@ -493,6 +812,7 @@ public class JythonSupport implements IRunnerSupport {
   }
 
   public void showSysPath() {
+    List<String> sysPath = sysPath();
     synchronized (sysPath) {
       if (Debug.is(lvl)) {
         getSysPath();
@@ -508,6 +828,7 @@ public class JythonSupport implements IRunnerSupport {
   }
 
   public void addSitePackages() {
+    List<String> sysPath = sysPath();
     synchronized (sysPath) {
       File fLibFolder = runTime.fSikulixLib;
       File fSitePackages = new File(fLibFolder, "site-packages");
@@ -630,6 +951,7 @@ public class JythonSupport implements IRunnerSupport {
   }
 
   public File existsSysPathModule(String modname) {
+    List<String> sysPath = sysPath();
     synchronized (sysPath) {
       getSysPath();
       File fModule = null;
@@ -644,6 +966,7 @@ public class JythonSupport implements IRunnerSupport {
   }
 
   public File existsSysPathJar(String fpJar) {
+    List<String> sysPath = sysPath();
     synchronized (sysPath) {
       getSysPath();
       File fJar = null;
@@ -673,12 +996,12 @@ public class JythonSupport implements IRunnerSupport {
 
   public List<String> getSysArgv() {
     sysArgv = new ArrayList<String>();
-    if (null == interpreter) {
+    if (null == getInterpreter()) {
       sysArgv = null;
       return null;
     }
     try {
-      PyList pyArgv = interpreter.getSystemState().argv;
+      PyList pyArgv = getInterpreter().getSystemState().argv;
       Integer argvLen = pyArgv.__len__();
       for (int i = 0; i < argvLen; i++) {
         String entry = (String) pyArgv.get(i);
@@ -692,11 +1015,11 @@ public class JythonSupport implements IRunnerSupport {
   }
 
   public void setSysArgv(List<String> args) {
-    if (null == interpreter) {
+    if (null == getInterpreter()) {
       return;
     }
     try {
-      PyList pyArgv = interpreter.getSystemState().argv;
+      PyList pyArgv = getInterpreter().getSystemState().argv;
       pyArgv.clear();
       for (String arg : args) {
         pyArgv.add(arg);
@@ -121,8 +121,13 @@ public class JavaScriptRunner extends AbstractLocalFileScriptRunner {
 
   @Override
   public boolean isSupported() {
-    NashornScriptEngine scriptEngine = (NashornScriptEngine) new NashornScriptEngineFactory().getScriptEngine();
-    return  scriptEngine != null;
+    // the script engine is only created with the first script run
+    try {
+      Class.forName("jdk.nashorn.api.scripting.NashornScriptEngineFactory");
+      return true;
+    } catch (ClassNotFoundException ex) {
+      return false;
+    }
   }
 
   @Override
@@ -4,6 +4,8 @@
 package org.sikuli.script.runners;
 
 import org.sikuli.basics.Debug;
+import org.sikuli.basics.FileManager;
+import org.sikuli.script.ImagePath;
 import org.sikuli.script.Sikulix;
 import org.sikuli.script.runnerSupport.JythonSupport;
 import org.sikuli.script.support.IScriptRunner;
@@ -12,6 +14,8 @@ import org.sikuli.script.support.RunTime;
 import java.io.File;
 import java.io.PrintStream;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.regex.Matcher;
 
 /**
@@ -157,41 +161,121 @@ public class JythonRunner extends AbstractLocalFileScriptRunner {
 
       prepareFileLocation(pyFile, options);
 
-      int exitCode = 0;
+      int exitCode = execScript(scriptFile, options);
 
-      try {
-        if (scriptFile.endsWith("$py.class")) {
-          jythonSupport.interpreterExecCode(new File(scriptFile));
+      if (System.out.checkError()) {
+        Sikulix.popError("System.out is broken (console output)!" + "\nYou will not see any messages anymore!"
+                + "\nSave your work and restart the IDE!", "Fatal Error");
+      }
+
+      return exitCode;
+    }
+  }
+
+  private int execScript(String scriptFile, IScriptRunner.Options options) {
+    File pyFile = new File(scriptFile);
+    int exitCode = 0;
+    try {
+      if (scriptFile.endsWith("$py.class")) {
+        jythonSupport.interpreterExecCode(pyFile);
+      } else {
+        jythonSupport.interpreterExecFile(pyFile.getAbsolutePath());
+      }
+    } catch (Throwable scriptException) {
+      if(!isAborted()) {
+        exitCode = 1;
+        java.util.regex.Pattern p = java.util.regex.Pattern.compile("SystemExit: (-?[0-9]+)");
+        String exception = scriptException.toString();
+
+        Matcher matcher = p.matcher(exception);
+        if (matcher.find()) {
+          exitCode = Integer.parseInt(matcher.group(1));
+          Debug.info("Exit code: " + exitCode);
         } else {
-          jythonSupport.interpreterExecFile(pyFile.getAbsolutePath());
-        }
-      } catch (Throwable scriptException) {
-        if(!isAborted()) {
-          exitCode = 1;
-          java.util.regex.Pattern p = java.util.regex.Pattern.compile("SystemExit: (-?[0-9]+)");
-          String exception = scriptException.toString();
-
-          Matcher matcher = p.matcher(exception);
-          if (matcher.find()) {
-            exitCode = Integer.parseInt(matcher.group(1));
-            Debug.info("Exit code: " + exitCode);
-          } else {
-            int errorExit = jythonSupport.findErrorSource(scriptException, pyFile.getAbsolutePath());
-            if (null != options) {
-              options.setErrorLine(errorExit);
-            }
+          int errorExit = jythonSupport.findErrorSource(scriptException, pyFile.getAbsolutePath());
+          if (null != options) {
+            options.setErrorLine(errorExit);
           }
         }
-      } finally {
-        jythonSupport.interpreterCleanup();
       }
+    } finally {
+      jythonSupport.interpreterCleanup();
+    }
+    return exitCode;
+  }
 
-      if (System.out.checkError()) {
-        Sikulix.popError("System.out is broken (console output)!" + "\nYou will not see any messages anymore!"
-                + "\nSave your work and restart the IDE!", "Fatal Error");
+  /**
+   * runs the script in an interpreter of the pool (Settings.JythonPoolSize &gt; 1)<br>
+   * not synchronized class wide: scripts run this way in parallel threads each have their own
+   * sys.path, sys.argv and sys.modules<br>
+   * the script folder is added to the image path while the script runs
+   * (the bundle path is not switched, since it is global)<br>
+   * such runs cannot be aborted
+   *
+   * @param scriptFile the .py file
+   * @param argv       arguments to be populated into sys.argv
+   * @return The exitcode
+   */
+  public int runScriptPooled(String scriptFile, String[] argv) {
+    init(null);
+    File pyFile = new File(scriptFile);
+    try {
+      jythonSupport.leaseInterpreter();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return -1;
+    }
+    String imageFolder = pyFile.getParentFile().getAbsolutePath();
+    boolean imageFolderAdded = false;
+    try {
+      jythonSupport.interpreterFillSysArgv(pyFile, argv);
+      jythonSupport.addLeasedSysPath(pyFile.getParentFile());
+      jythonSupport.executeScriptHeader(codeBefore);
+      imageFolderAdded = addPooledImageFolder(imageFolder);
+      return execScript(scriptFile, null);
+    } finally {
+      if (imageFolderAdded) {
+        removePooledImageFolder(imageFolder);
       }
+      jythonSupport.releaseInterpreter();
+    }
+  }
 
-      return exitCode;
+  // image folders added by pooled runs: how many runs use them (scripts in the same folder might run in parallel)
+  private static final Map<String, Integer> pooledImageFolders = new HashMap<>();
+
+  private static boolean addPooledImageFolder(String folder) {
+    synchronized (pooledImageFolders) {
+      Integer users = pooledImageFolders.get(folder);
+      if (users != null) {
+        pooledImageFolders.put(folder, users + 1);
+        return true;
+      }
+      for (String path : ImagePath.get()) {
+        if (FileManager.pathEquals(path, folder)) {
+          return false; // was there before: stays
+        }
+      }
+      if (!ImagePath.add(folder)) {
+        return false;
+      }
+      pooledImageFolders.put(folder, 1);
+      return true;
+    }
+  }
+
+  private static void removePooledImageFolder(String folder) {
+    synchronized (pooledImageFolders) {
+      Integer users = pooledImageFolders.get(folder);
+      if (users == null) {
+        return;
+      }
+      if (users > 1) {
+        pooledImageFolders.put(folder, users - 1);
+      } else {
+        pooledImageFolders.remove(folder);
+        ImagePath.remove(folder);
+      }
     }
   }
 
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2010-2019, sikuli.org, sikulix.com - MIT license
+ */
+package org.sikuli.script.support;
+
+import org.sikuli.basics.Debug;
+import org.sikuli.script.ScreenImage;
+
+import java.awt.Rectangle;
+
+/**
+ * INTERNAL USE: continuously captures a screen area at a given frame rate in a background thread<br>
+ * the latest frames are kept in a small ring, each with a sequence number and a timestamp<br>
+ * consumers ask for the latest frame (optionally newer than a sequence number they already have seen)
+ * and get crops of it as views (no pixel copy), so concurrent finds on the same screen share one grab
+ * <br>
+ * a frame is never changed after it is published, so crops handed out stay valid,
+ * even if the producer has moved on
+ */
+public class CaptureStream {
+
+  private static String me = "CaptureStream: ";
+  private static int lvl = 3;
+
+  private static void log(int level, String message, Object... args) {
+    if (Debug.isLogging(level)) {
+      Debug.logx(level, me + message, args);
+    }
+  }
+
+  public static final int DEFAULT_RING_SIZE = 3;
+
+  /**
+   * one captured frame
+   */
+  public static class Frame {
+    private final long sequence;
+    private final long time;
+    private final long inputCount;
+    private final ScreenImage image;
+
+    Frame(long sequence, long time, long inputCount, ScreenImage image) {
+      this.sequence = sequence;
+      this.time = time;
+      this.inputCount = inputCount;
+      this.image = image;
+    }
+
+    /**
+     * @return the number of the frame (first frame is 1)
+     */
+    public long getSequence() {
+      return sequence;
+    }
+
+    /**
+     * @return the time of the capture (System.currentTimeMillis)
+     */
+    public long getTime() {
+      return time;
+    }
+
+    /**
+     * @return the number of mouse/keyboard input events before the capture (RobotDesktop.getInputCount())
+     */
+    public long getInputCount() {
+      return inputCount;
+    }
+
+    /**
+     * @return the age of the frame in milliseconds
+     */
+    public long getAge() {
+      return System.currentTimeMillis() - time;
+    }
+
+    public ScreenImage getImage() {
+      return image;
+    }
+
+    /**
+     * @param rect area in screen coordinates
+     * @return true if the frame covers the given area
+     */
+    public boolean contains(Rectangle rect) {
+      return image.getROI().contains(rect);
+    }
+
+    /**
+     * a view into the frame - shares the pixels of the frame (no copy)
+     *
+     * @param rect area in screen coordinates (must be contained in the frame)
+     * @return the crop or null if the frame does not cover the area
+     */
+    public ScreenImage getSub(Rectangle rect) {
+      if (!contains(rect)) {
+        return null;
+      }
+      if (rect.equals(image.getROI())) {
+        return image;
+      }
+      return image.getSub(rect);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Frame #%d (%d msec old)", sequence, getAge());
+    }
+  }
+
+  private final IRobot robot;
+  private final Rectangle bounds;
+  private final int interval;
+  private final Frame[] ring;
+  private long sequence = 0;
+  private volatile boolean running = false;
+  private Thread producer = null;
+
+  /**
+   * @param robot    the robot used to capture
+   * @param bounds   the area to capture (screen coordinates)
+   * @param fps      target frame rate (frames per second)
+   * @param ringSize number of frames kept (at least 2)
+   */
+  public CaptureStream(IRobot robot, Rectangle bounds, double fps, int ringSize) {
+    this.robot = robot;
+    this.bounds = new Rectangle(bounds);
+    this.interval = (int) Math.max(1, 1000.0 / Math.max(0.1, fps));
+    this.ring = new Frame[Math.max(2, ringSize)];
+  }
+
+  public CaptureStream(IRobot robot, Rectangle bounds, double fps) {
+    this(robot, bounds, fps, DEFAULT_RING_SIZE);
+  }
+
+  public Rectangle getBounds() {
+    return bounds;
+  }
+
+  /**
+   * @return milliseconds between 2 captures
+   */
+  public int getInterval() {
+    return interval;
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  public synchronized void start() {
+    if (running) {
+      return;
+    }
+    running = true;
+    producer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        produce();
+      }
+    }, "SikuliX-CaptureStream");
+    producer.setDaemon(true);
+    producer.start();
+    log(lvl, "started: %s every %d msec", bounds, interval);
+  }
+
+  public void stop() {
+    Thread thread;
+    synchronized (this) {
+      if (!running) {
+        return;
+      }
+      running = false;
+      thread = producer;
+      producer = null;
+      notifyAll();
+    }
+    thread.interrupt();
+    try {
+      thread.join(1000);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    log(lvl, "stopped: %s after %d frames", bounds, sequence);
+  }
+
+  private void produce() {
+    while (running) {
+      long start = System.currentTimeMillis();
+      long inputCount = RobotDesktop.getInputCount();
+      ScreenImage simg = null;
+      try {
+        simg = robot.captureScreen(bounds);
+      } catch (Exception e) {
+        log(-1, "capture failed: %s", e.getMessage());
+      }
+      if (simg != null) {
+        publish(start, inputCount, simg);
+      }
+      long delay = interval - (System.currentTimeMillis() - start);
+      if (delay > 0) {
+        try {
+          Thread.sleep(delay);
+        } catch (InterruptedException e) {
+          break;
+        }
+      }
+    }
+  }
+
+  private synchronized void publish(long time, long inputCount, ScreenImage simg) {
+    sequence++;
+    ring[(int) (sequence % ring.length)] = new Frame(sequence, time, inputCount, simg);
+    notifyAll();
+  }
+
+  /**
+   * @return the sequence number of the latest frame (0: no frame yet)
+   */
+  public synchronized long getSequence() {
+    return sequence;
+  }
+
+  /**
+   * @return the latest frame or null if no frame available yet
+   */
+  public synchronized Frame getLatest() {
+    if (sequence == 0) {
+      return null;
+    }
+    return ring[(int) (sequence % ring.length)];
+  }
+
+  /**
+   * a frame from the ring, if it is still there
+   *
+   * @param sequence the frame number
+   * @return the frame or null if not (any longer) available
+   */
+  public synchronized Frame getFrame(long sequence) {
+    if (sequence < 1 || sequence > this.sequence || this.sequence - sequence >= ring.length) {
+      return null;
+    }
+    return ring[(int) (sequence % ring.length)];
+  }
+
+  /**
+   * the latest frame, that is newer than the given sequence number and not older than maxAge<br>
+   * if there is none yet, waits for the next frame up to the given timeout
+   *
+   * @param newerThan sequence number (0: any frame)
+   * @param maxAge    maximum age of the frame in milliseconds (negative: any age)
+   * @param timeout   maximum wait in milliseconds
+   * @return the frame or null if no matching frame available in time (or stream not running)
+   */
+  public synchronized Frame getLatest(long newerThan, long maxAge, long timeout) {
+    long end = System.currentTimeMillis() + timeout;
+    while (true) {
+      Frame frame = getLatest();
+      if (frame != null && frame.sequence > newerThan && (maxAge < 0 || frame.getAge() <= maxAge)) {
+        return frame;
+      }
+      long wait = end - System.currentTimeMillis();
+      if (!running || wait <= 0) {
+        return null;
+      }
+      try {
+        wait(wait);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return null;
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("CaptureStream %s every %d msec (%s, frame #%d)",
+        bounds, interval, running ? "running" : "stopped", getSequence());
+  }
+}
@@ -26,6 +26,7 @@ public interface IRobot {
    void releaseModifiers(int modifiers);
    void typeChar(char character, KeyMode mode);
    void typeKey(int key);
+   void typeText(String text, int modifiers, int pause);
    void typeStarts();
    void typeEnds();
    void mouseMove(int x, int y);
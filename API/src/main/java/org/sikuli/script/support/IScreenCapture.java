@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2010-2019, sikuli.org, sikulix.com - MIT license
+ */
+package org.sikuli.script.support;
+
+import org.sikuli.script.ScreenImage;
+
+import java.awt.Rectangle;
+import java.util.List;
+
+/**
+ * INTERNAL USE <br>
+ * function template for (alternative) screen capture implementations used by RobotDesktop<br>
+ * (the java.awt.Robot capture is always used as fallback)
+ */
+public interface IScreenCapture {
+
+  /**
+   * @return false if the backend could not be initialized (then it is not used)
+   */
+  boolean isValid();
+
+  /**
+   * @param rect area in global screen coordinates
+   * @return the image or null if the capture failed (the fallback is used then)
+   */
+  ScreenImage capture(Rectangle rect);
+
+  /**
+   * the areas changed since the last call (screen coordinates)
+   *
+   * @return the changed areas (empty if nothing changed) or null if not supported
+   */
+  List<Rectangle> getChanges();
+
+  void cleanup();
+}
@@ -17,8 +17,29 @@ public class Observer {
   private static String me = "Observer: ";
   private static int lvl = 3;
 
+  // fixed arities: no varargs array, if not logged (primitives are boxed anyway: guard such calls)
+  private static void log(int level, String message) {
+    if (Debug.isLogging(level)) {
+      Debug.logx(level, me + message);
+    }
+  }
+
+  private static void log(int level, String message, Object arg) {
+    if (Debug.isLogging(level)) {
+      Debug.logx(level, me + message, arg);
+    }
+  }
+
+  private static void log(int level, String message, Object arg1, Object arg2) {
+    if (Debug.isLogging(level)) {
+      Debug.logx(level, me + message, arg1, arg2);
+    }
+  }
+
   private static void log(int level, String message, Object... args) {
-    Debug.logx(level, me + message, args);
+    if (Debug.isLogging(level)) {
+      Debug.logx(level, me + message, args);
+    }
   }
 
   public enum State {
@@ -47,7 +68,9 @@ public class Observer {
   }
 
   public void initialize() {
-    log(3, "resetting observe states for " + observedRegion.toStringShort());
+    if (Debug.isLogging(3)) {
+      log(3, "resetting observe states for " + observedRegion.toStringShort());
+    }
     synchronized (eventNames) {
       for (String name : eventNames.keySet()) {
         if (eventStates.get(name) != State.INACTIVE) {
@@ -183,6 +206,7 @@ public class Observer {
       }
       Match match = null;
       boolean hasMatch = false;
+      long traceStart = TraceRecorder.isOn() ? System.nanoTime() : 0;
       long lastSearchTime;
       long now = 0;
 //      if (!Settings.UseImageFinder && Settings.CheckLastSeen && null != img.getLastSeen()) {
@@ -224,13 +248,22 @@ public class Observer {
           }
         }
       }
+      if (traceStart > 0) {
+        TraceRecorder.record(TraceRecorder.OBSERVE, img.getName(),
+            match == null ? observedRegion.getRect() : match.getRect(), match == null ? 0 : match.getScore(),
+            System.nanoTime() - traceStart, 1, hasMatch);
+      }
       if (hasMatch) {
         eventMatches.put(name, match);
-        log(lvl + 1, "(%s): %s match: %s in:%s", eventTypes.get(name), ptn.toString(),
-                match.toStringShort(), observedRegion.toStringShort());
+        if (Debug.isLogging(lvl + 1)) {
+          log(lvl + 1, "(%s): %s match: %s in:%s", eventTypes.get(name), ptn.toString(),
+                  match.toStringShort(), observedRegion.toStringShort());
+        }
       } else if (eventStates.get(ptn) == State.FIRST) {
-        log(lvl + 1, "(%s): %s match: %s in:%s", eventTypes.get(name), ptn.toString(),
-                match.toStringShort(), observedRegion.toStringShort());
+        if (Debug.isLogging(lvl + 1)) {
+          log(lvl + 1, "(%s): %s match: %s in:%s", eventTypes.get(name), ptn.toString(),
+                  match.toStringShort(), observedRegion.toStringShort());
+        }
         eventStates.put(name, State.UNKNOWN);
       }
       if (eventStates.get(name) != State.HAPPENED) {
@@ -273,7 +306,9 @@ public class Observer {
       secs = (long) observedRegion.getRepeatWaitTime();
     }
     eventRepeatWaitTimes.put(name, (new Date()).getTime() + 1000 * secs);
-    log(lvl, "repeat (%s): %s after %d seconds", eventTypes.get(name), name, secs);
+    if (Debug.isLogging(lvl)) {
+      log(lvl, "repeat (%s): %s after %d seconds", eventTypes.get(name), name, secs);
+    }
   }
 
   private int getMinChanges() {
@@ -330,7 +365,9 @@ public class Observer {
   }
 
   private void callChangeObserver(List<Region> results) {
-    log(lvl, "changes: %d in: %s", results.size(), observedRegion);
+    if (Debug.isLogging(lvl)) {
+      log(lvl, "changes: %d in: %s", results.size(), observedRegion);
+    }
     int offX = observedRegion.x;
     int offY = observedRegion.y;
     for (String name : eventNames.keySet()) {
@@ -362,6 +399,13 @@ public class Observer {
     }
   }
 
+  /**
+   * @return true if an event is waiting for its repeat time (must be checked again, even if nothing changed)
+   */
+  public boolean hasRepeatPending() {
+    return eventStates.containsValue(State.REPEAT);
+  }
+
   public boolean update(ScreenImage simg) {
     boolean fromPatterns = checkPatterns(simg);
     log(lvl, "update result: Patterns: %s", fromPatterns);
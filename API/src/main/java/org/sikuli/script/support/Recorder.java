@@ -17,7 +17,6 @@ import java.util.logging.Logger;
 
 import javax.swing.ProgressMonitor;
 
-import org.apache.commons.io.FileUtils;
 import org.jnativehook.GlobalScreen;
 import org.jnativehook.NativeHookException;
 import org.jnativehook.NativeInputEvent;
@@ -30,10 +29,10 @@ import org.jnativehook.mouse.NativeMouseWheelEvent;
 import org.jnativehook.mouse.NativeMouseWheelListener;
 import org.sikuli.basics.Debug;
 import org.sikuli.basics.Settings;
-import org.sikuli.script.Finder;
 import org.sikuli.script.Screen;
 import org.sikuli.script.ScreenImage;
 import org.sikuli.script.support.recorder.RecordedEventsFlow;
+import org.sikuli.script.support.recorder.RecordedScreenshots;
 import org.sikuli.script.support.recorder.actions.IRecordedAction;
 
 /**
@@ -54,8 +53,7 @@ public class Recorder implements NativeKeyListener, NativeMouseListener, NativeM
 
   private volatile boolean running = false;
 
-  ScreenImage currentImage = null;
-  String currentImageFilePath = null;
+  private RecordedScreenshots screenshots = null;
 
   private long currentMouseX = 0;
   private long currentMouseY = 0;
@@ -111,16 +109,10 @@ public class Recorder implements NativeKeyListener, NativeMouseListener, NativeM
         SCHEDULER.schedule((() -> {
           try {
             synchronized (screenshotDir) {
-              if (screenshotDir.exists()) {
+              if (running) {
                 ScreenImage img = Screen.getPrimaryScreen().capture();
                 // Dedupe screenshots
-                if (new Finder(img).findDiffPercentage(currentImage) > 0.0001) {
-                  currentImage = img;
-                  currentImageFilePath = currentImage.save(screenshotDir.getAbsolutePath());
-                  eventsFlow.addScreenshot(currentImageFilePath);
-                } else {
-                  eventsFlow.addScreenshot(currentImageFilePath);
-                }
+                eventsFlow.addScreenshot(screenshots.add(img.getImage()));
               }
             }
           } finally {
@@ -162,8 +154,6 @@ public class Recorder implements NativeKeyListener, NativeMouseListener, NativeM
       running = true;
 
       eventsFlow.clear();
-      currentImage = null;
-      currentImageFilePath = null;
 
       try {
         screenshotDir = Files.createTempDirectory("sikulix").toFile();
@@ -171,6 +161,8 @@ public class Recorder implements NativeKeyListener, NativeMouseListener, NativeM
       } catch (IOException e) {
         e.printStackTrace();
       }
+      screenshots = new RecordedScreenshots(screenshotDir);
+      eventsFlow.setScreenshots(screenshots);
 
       screenshot(0);
 
@@ -201,12 +193,8 @@ public class Recorder implements NativeKeyListener, NativeMouseListener, NativeM
       synchronized (screenshotDir) {
         List<IRecordedAction> actions = eventsFlow.compile(progress);
 
-        // remove screenshots after compile to free up disk space
-        try {
-          FileUtils.deleteDirectory(screenshotDir);
-        } catch (IOException e) {
-          e.printStackTrace();
-        }
+        // remove screenshots after compile to free up memory and disk space
+        screenshots.clear();
         return actions;
       }
     }
@@ -13,6 +13,7 @@ import com.sun.jna.platform.win32.BaseTSD;
 import com.sun.jna.platform.win32.User32;
 import com.sun.jna.platform.win32.WinDef;
 import com.sun.jna.platform.win32.WinUser;
+import org.sikuli.natives.LinuxXShmCapture;
 import org.sikuli.script.*;
 import org.sikuli.util.Highlight;
 
@@ -21,6 +22,8 @@ import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * INTERNAL USE Implementation of IRobot making a DesktopRobot using java.awt.Robot
@@ -40,6 +43,18 @@ public class RobotDesktop extends Robot implements IRobot {
   private long start;
   private static boolean isMouseInitialized = false;
 
+  private static final AtomicLong inputCount = new AtomicLong();
+
+  /**
+   * counts the mouse and keyboard events sent by any RobotDesktop<br>
+   * (a capture taken before the last input might not show the current screen content)
+   *
+   * @return the number of input events so far
+   */
+  public static long getInputCount() {
+    return inputCount.get();
+  }
+
   private void logRobot(int delay, String msg) {
     start = new Date().getTime();
     int theDelay = getAutoDelay();
@@ -80,6 +95,13 @@ public class RobotDesktop extends Robot implements IRobot {
 
   @Override
   public ScreenImage captureScreen(Rectangle rect) {
+    IScreenCapture backend = getCaptureBackend();
+    if (backend != null) {
+      ScreenImage simg = backend.capture(rect);
+      if (simg != null) {
+        return simg;
+      }
+    }
 //    Rectangle s = scr.getBounds();
     Rectangle cRect = new Rectangle(rect);
 //    cRect.translate(-s.x, -s.y);
@@ -89,6 +111,69 @@ public class RobotDesktop extends Robot implements IRobot {
     return new ScreenImage(rect, img);
   }
 
+  //<editor-fold desc="capture backend">
+  private static IScreenCapture captureBackend = null;
+  private static String captureBackendName = "robot";
+
+  /**
+   * the capture backend according to Settings.CaptureBackend<br>
+   * "robot" (default): java.awt.Robot only, "xshm": MIT-SHM on Linux (Robot as fallback)
+   *
+   * @return the backend or null if java.awt.Robot is used
+   */
+  public static synchronized IScreenCapture getCaptureBackend() {
+    String wanted = Settings.CaptureBackend == null ? "robot" : Settings.CaptureBackend.toLowerCase();
+    if (!wanted.equals(captureBackendName)) {
+      if (captureBackend != null) {
+        captureBackend.cleanup();
+        captureBackend = null;
+      }
+      captureBackendName = wanted;
+      if ("xshm".equals(wanted)) {
+        if (RunTime.get().runningLinux) {
+          IScreenCapture backend = new LinuxXShmCapture();
+          if (backend.isValid()) {
+            captureBackend = backend;
+          } else {
+            Debug.error("RobotDesktop: capture backend xshm not available - using Robot");
+          }
+        } else {
+          Debug.error("RobotDesktop: capture backend xshm only available on Linux - using Robot");
+        }
+      } else if (!"robot".equals(wanted)) {
+        Debug.error("RobotDesktop: capture backend %s not known - using Robot", wanted);
+      }
+    }
+    return captureBackend;
+  }
+
+  /**
+   * INTERNAL USE: plug in a capture backend (overrides Settings.CaptureBackend until that is changed)
+   *
+   * @param backend a valid backend or null to use java.awt.Robot
+   */
+  public static synchronized void setCaptureBackend(IScreenCapture backend) {
+    if (captureBackend != null && captureBackend != backend) {
+      captureBackend.cleanup();
+    }
+    captureBackend = backend;
+    captureBackendName = Settings.CaptureBackend == null ? "robot" : Settings.CaptureBackend.toLowerCase();
+  }
+
+  /**
+   * the screen areas changed since the last call, if the capture backend supports it
+   *
+   * @return list of changed areas (empty if nothing changed) or null if not supported
+   */
+  public static List<Rectangle> getCaptureChanges() {
+    IScreenCapture backend = getCaptureBackend();
+    if (backend == null) {
+      return null;
+    }
+    return backend.getChanges();
+  }
+  //</editor-fold>
+
   @Override
   public Color getColorAt(int x, int y) {
     return getPixelColor(x, y);
@@ -139,6 +224,42 @@ public class RobotDesktop extends Robot implements IRobot {
     mouseMove(x, y);
   }
 
+  @Override
+  public synchronized void mouseMove(int x, int y) {
+    inputCount.incrementAndGet();
+    super.mouseMove(x, y);
+  }
+
+  @Override
+  public synchronized void mousePress(int buttons) {
+    inputCount.incrementAndGet();
+    super.mousePress(buttons);
+  }
+
+  @Override
+  public synchronized void mouseRelease(int buttons) {
+    inputCount.incrementAndGet();
+    super.mouseRelease(buttons);
+  }
+
+  @Override
+  public synchronized void mouseWheel(int wheelAmt) {
+    inputCount.incrementAndGet();
+    super.mouseWheel(wheelAmt);
+  }
+
+  @Override
+  public synchronized void keyPress(int keycode) {
+    inputCount.incrementAndGet();
+    super.keyPress(keycode);
+  }
+
+  @Override
+  public synchronized void keyRelease(int keycode) {
+    inputCount.incrementAndGet();
+    super.keyRelease(keycode);
+  }
+
   private void checkMousePosition(Location p) {
     PointerInfo mp = MouseInfo.getPointerInfo();
     Point pc;
@@ -311,27 +432,7 @@ public class RobotDesktop extends Robot implements IRobot {
       fakeHighlight.close();
       delay(20);
     }
-
-    // on Windows we detect the current layout in KeyboardLayout.
-    // Since this layout is not compatible to AWT Robot, we have to use
-    // the User32 API to simulate the key press
-    if (Settings.AutoDetectKeyboardLayout && Settings.isWindows()) {
-      WinUser.INPUT input = new WinUser.INPUT();
-      input.type = new WinDef.DWORD(WinUser.INPUT.INPUT_KEYBOARD);
-      input.input.setType("ki");
-      input.input.ki.wScan = new WinDef.WORD(0);
-      input.input.ki.time = new WinDef.DWORD(0);
-      input.input.ki.dwExtraInfo = new BaseTSD.ULONG_PTR(0);
-      input.input.ki.wVk = new WinDef.WORD(keyCode);
-      input.input.ki.dwFlags = new WinDef.DWORD(0);
-
-      User32.INSTANCE.SendInput(new WinDef.DWORD(1),
-          (WinUser.INPUT[]) input.toArray(1), input.size());
-    }else{
-      keyPress(keyCode);
-    }
-
-
+    sendKey(keyCode, true);
     if (stdAutoDelay == 0) {
       delay(stdDelay);
     }
@@ -372,9 +473,17 @@ public class RobotDesktop extends Robot implements IRobot {
   private void doKeyRelease(int keyCode) {
     logRobot(stdAutoDelay, "KeyRelease: WaitForIdle: %s - Delay: %d");
     setAutoDelay(stdAutoDelay);
+    sendKey(keyCode, false);
+    if (stdAutoDelay == 0) {
+      delay(stdDelay);
+    }
+    logRobot("KeyRelease: extended delay: %d", stdMaxElapsed);
+  }
+
+  private void sendKey(int keyCode, boolean press) {
     // on Windows we detect the current layout in KeyboardLayout.
     // Since this layout is not compatible to AWT Robot, we have to use
-    // the User32 API to simulate the key release
+    // the User32 API to simulate the key press/release
     if (Settings.AutoDetectKeyboardLayout && Settings.isWindows()) {
       WinUser.INPUT input = new WinUser.INPUT();
       input.type = new WinDef.DWORD(WinUser.INPUT.INPUT_KEYBOARD);
@@ -383,27 +492,25 @@ public class RobotDesktop extends Robot implements IRobot {
       input.input.ki.time = new WinDef.DWORD(0);
       input.input.ki.dwExtraInfo = new BaseTSD.ULONG_PTR(0);
       input.input.ki.wVk = new WinDef.WORD(keyCode);
-      input.input.ki.dwFlags = new WinDef.DWORD(
-          WinUser.KEYBDINPUT.KEYEVENTF_KEYUP);
+      input.input.ki.dwFlags = new WinDef.DWORD(press ? 0 : WinUser.KEYBDINPUT.KEYEVENTF_KEYUP);
 
+      inputCount.incrementAndGet();
       User32.INSTANCE.SendInput(new WinDef.DWORD(1),
           (WinUser.INPUT[]) input.toArray(1), input.size());
-    }else{
+    } else if (press) {
+      keyPress(keyCode);
+    } else {
       keyRelease(keyCode);
     }
-
-    if (stdAutoDelay == 0) {
-      delay(stdDelay);
-    }
-    logRobot("KeyRelease: extended delay: %d", stdMaxElapsed);
   }
 
   @Override
   public void typeChar(char character, KeyMode mode) {
-    Debug.log(4, "Robot: doType: %s ( %d )",
-            KeyEvent.getKeyText(Key.toJavaKeyCode(character)[0]).toString(),
-            Key.toJavaKeyCode(character)[0]);
-    doType(mode, Key.toJavaKeyCode(character));
+    int[] keyCodes = Key.toJavaKeyCode(character);
+    if (Debug.isLogging(4)) {
+      Debug.log(4, "Robot: doType: %s ( %d )", KeyEvent.getKeyText(keyCodes[0]), keyCodes[0]);
+    }
+    doType(mode, keyCodes);
   }
 
   @Override
@@ -454,6 +561,158 @@ public class RobotDesktop extends Robot implements IRobot {
     waitForIdle();
   }
 
+  //<editor-fold desc="batched typing">
+  // in a key sequence: press code, release -code, CHAR_END between the characters
+  private static final int CHAR_END = 0;
+
+  /**
+   * types the text as one batch: the key events (modifier changes included) are computed first,
+   * then sent with pause msec between the characters (0: no pause) - waitForIdle only before and after<br>
+   * the given modifiers are held for the whole text, a modifier needed by consecutive characters
+   * (e.g. SHIFT for ABC) stays pressed
+   *
+   * @param text      characters and/or Key constants
+   * @param modifiers constants according to class KeyModifier
+   * @param pause     msec between the characters
+   */
+  @Override
+  public void typeText(String text, int modifiers, int pause) {
+    int[] sequence = toKeySequence(text, modifiers);
+    Highlight fakeHighlight = null;
+    if (RunTime.get().needsRobotFake()) {
+      fakeHighlight = Highlight.fakeHighlight();
+      delay(20);
+      fakeHighlight.close();
+      delay(20);
+    }
+    int autoDelay = getAutoDelay();
+    setAutoDelay(0);
+    waitForIdle();
+    List<Integer> pressed = new ArrayList<>();
+    try {
+      for (int event : sequence) {
+        if (event == CHAR_END) {
+          if (pause > 0) {
+            delay(pause);
+          }
+        } else {
+          sendKey(Math.abs(event), event > 0);
+          if (event > 0) {
+            pressed.add(event);
+          } else {
+            pressed.remove((Object) (-event));
+          }
+        }
+      }
+    } finally {
+      // typing was interrupted: no key must stay pressed
+      for (int n = pressed.size() - 1; n >= 0; n--) {
+        try {
+          sendKey(pressed.get(n), false);
+        } catch (Exception e) {
+          Debug.error("RobotDesktop: typeText: release %s: %s", KeyEvent.getKeyText(pressed.get(n)), e.getMessage());
+        }
+      }
+      setAutoDelay(autoDelay);
+    }
+    waitForIdle();
+  }
+
+  /*
+   * an unknown character throws IllegalArgumentException before anything is typed
+   */
+  static int[] toKeySequence(String text, int modifiers) {
+    List<Integer> held = new ArrayList<>();
+    if (modifiers <= ALL_MODIFIERS) {
+      for (int n = 0; n < MODIFIER_MASKS.length; n++) {
+        if ((modifiers & MODIFIER_MASKS[n]) != 0) {
+          held.add(Key.toJavaKeyCode(MODIFIER_KEYS[n])[0]);
+        }
+      }
+    }
+    int fixed = held.size();
+    int[] sequence = new int[fixed + text.length() * 6];
+    int count = 0;
+    for (int code : held) {
+      sequence[count++] = code;
+    }
+    for (int i = 0; i < text.length(); i++) {
+      int[] keyCodes = Key.toJavaKeyCode(text.charAt(i));
+      int main = keyCodes[keyCodes.length - 1];
+      boolean plain = !isModifierKey(main);
+      for (int n = 0; n < keyCodes.length - 1 && plain; n++) {
+        plain = isModifierKey(keyCodes[n]);
+      }
+      if (i > 0) {
+        sequence = ensure(sequence, count + 1);
+        sequence[count++] = CHAR_END;
+      }
+      // release what is not needed anymore (all, if the keys are not modifiers + key)
+      for (int n = held.size() - 1; n >= fixed; n--) {
+        int code = held.get(n);
+        if (!plain || !contains(keyCodes, code, keyCodes.length - 1)) {
+          sequence = ensure(sequence, count + 1);
+          sequence[count++] = -code;
+          held.remove(n);
+        }
+      }
+      sequence = ensure(sequence, count + keyCodes.length * 2);
+      if (!plain) {
+        // like typeChar: all pressed, then all released
+        for (int code : keyCodes) {
+          sequence[count++] = code;
+        }
+        for (int code : keyCodes) {
+          sequence[count++] = -code;
+        }
+        continue;
+      }
+      for (int n = 0; n < keyCodes.length - 1; n++) {
+        if (!held.contains(keyCodes[n])) {
+          sequence[count++] = keyCodes[n];
+          held.add(keyCodes[n]);
+        }
+      }
+      sequence[count++] = main;
+      sequence[count++] = -main;
+    }
+    sequence = ensure(sequence, count + held.size());
+    for (int n = held.size() - 1; n >= 0; n--) {
+      sequence[count++] = -held.get(n);
+    }
+    int[] result = new int[count];
+    System.arraycopy(sequence, 0, result, 0, count);
+    return result;
+  }
+
+  private static final int[] MODIFIER_MASKS = {
+      KeyModifier.SHIFT, KeyModifier.CTRL, KeyModifier.ALT, KeyModifier.META, KeyModifier.ALTGR};
+  private static final char[] MODIFIER_KEYS = {Key.C_SHIFT, Key.C_CTRL, Key.C_ALT, Key.C_META, Key.C_ALTGR};
+
+  private static boolean isModifierKey(int code) {
+    return code == KeyEvent.VK_SHIFT || code == KeyEvent.VK_CONTROL || code == KeyEvent.VK_ALT
+        || code == KeyEvent.VK_META || code == KeyEvent.VK_ALT_GRAPH;
+  }
+
+  private static boolean contains(int[] codes, int code, int length) {
+    for (int n = 0; n < length; n++) {
+      if (codes[n] == code) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static int[] ensure(int[] sequence, int size) {
+    if (size <= sequence.length) {
+      return sequence;
+    }
+    int[] larger = new int[Math.max(size, sequence.length * 2)];
+    System.arraycopy(sequence, 0, larger, 0, sequence.length);
+    return larger;
+  }
+  //</editor-fold>
+
   @Override
   public void typeStarts() {
   }
@@ -373,6 +373,18 @@ public class RunTime {
         (sxSandbox != null ? " (Sandbox)" : ""),
         getAppDataPath());
 
+    if ((runningScripts() && !shouldRunDaemon()) || SikulixDaemon.isStop(args)) {
+      // a warm daemon (-w) runs the scripts: no further startup needed here
+      Integer exitCode = SikulixDaemon.forward(args);
+      if (null != exitCode) {
+        System.exit(exitCode);
+      }
+      if (shouldRunDaemon()) {
+        RunTime.startLog(-1, "daemon (-w): not running");
+        System.exit(0);
+      }
+    }
+
     if (jarName.endsWith(".jar")) {
       String classPath = "";
       classPath = ExtensionManager.makeClassPath(runningJar);
@@ -486,6 +498,11 @@ java.desktop/sun.awt=ALL-UNNAMED
       Debug.setUserLogFile(getUserLogFile());
     }
 
+    if (shouldRunDaemon()) {
+      SikulixDaemon.run();
+      terminate();
+    }
+
     if (runningScripts()) {
       HotkeyManager.getInstance().addHotkey("Abort", new HotkeyListener() {
         @Override
@@ -496,7 +513,12 @@ java.desktop/sun.awt=ALL-UNNAMED
           }
         }
       });
-      int exitCode = Runner.runScripts(RunTime.getRunScripts(), userArgs, new IScriptRunner.Options());
+      int exitCode;
+      if (Settings.JythonPoolSize > 0) {
+        exitCode = Runner.runScriptsConcurrently(RunTime.getRunScripts(), userArgs, new IScriptRunner.Options());
+      } else {
+        exitCode = Runner.runScripts(RunTime.getRunScripts(), userArgs, new IScriptRunner.Options());
+      }
       if (exitCode > 255) {
         exitCode = 254;
       }
@@ -534,6 +556,8 @@ java.desktop/sun.awt=ALL-UNNAMED
         asServer = true;
       } else if ("-p".equals(arg)) {
         asPyServer = true;
+      } else if ("-w".equals(arg)) {
+        asDaemon = true;
       }
       finalArgs.add(arg);
     }
@@ -874,6 +898,12 @@ java.desktop/sun.awt=ALL-UNNAMED
 
   private static boolean asPyServer = false;
 
+  public static boolean shouldRunDaemon() {
+    return asDaemon;
+  }
+
+  private static boolean asDaemon = false;
+
   public static void setAllowMultiple() {
     allowMultiple = true;
   }
@@ -885,7 +915,7 @@ java.desktop/sun.awt=ALL-UNNAMED
   private static boolean allowMultiple = false;
 
   public static boolean shouldDetach() {
-    return !runningScripts() && !shouldRunServer() && !shouldRunPythonServer();
+    return !runningScripts() && !shouldRunServer() && !shouldRunPythonServer() && !shouldRunDaemon();
   }
   //</editor-fold>
 
@@ -1372,6 +1402,7 @@ java.desktop/sun.awt=ALL-UNNAMED
       Debug.info("Error while stopping VNCScreen: %s", e.getMessage());
     }
 
+    Screen.stopCaptureStreams();
     Observing.cleanUp();
     HotkeyManager.reset(isTerminating);
     if (null != cleanupRobot) {
@@ -1418,6 +1449,8 @@ java.desktop/sun.awt=ALL-UNNAMED
       runTime.log(4, "cleanTemp: " + f.getName());
       FileManager.deleteFileOrFolder(f.getAbsolutePath());
     }
+    TraceRecorder.stop();
+    Debug.closeLogFiles();
   }
   //</editor-fold>
 
@@ -5,19 +5,21 @@
 package org.sikuli.script.support;
 
 import org.apache.commons.io.FilenameUtils;
-import org.reflections8.Reflections;
-import org.reflections8.scanners.SubTypesScanner;
-import org.reflections8.util.ClasspathHelper;
 import org.sikuli.basics.Debug;
+import org.sikuli.basics.Settings;
 import org.sikuli.script.ImagePath;
-import org.sikuli.script.runners.AbstractScriptRunner;
+import org.sikuli.script.runnerSupport.JythonSupport;
 import org.sikuli.script.runners.InvalidRunner;
+import org.sikuli.script.runners.JythonRunner;
 import org.sikuli.script.support.IScriptRunner.EffectiveRunner;
 
 import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class Runner {
 
@@ -40,21 +42,19 @@ public class Runner {
       }
 
       if (runners.isEmpty()) {
-
-        Reflections reflections = new Reflections(ClasspathHelper.forPackage("org.sikuli.script.runners"),
-            new SubTypesScanner());
-
-        Set<Class<? extends AbstractScriptRunner>> classes = reflections.getSubTypesOf(AbstractScriptRunner.class);
-
-        for (Class<? extends AbstractScriptRunner> cl : classes) {
-          IScriptRunner current = null;
-
+        long start = new Date().getTime();
+        // the runners are listed in META-INF/services/org.sikuli.script.support.IScriptRunner (no classpath scan)
+        // a runner only initializes its interpreter (Jython, JRuby, ...) with the first script run
+        Iterator<IScriptRunner> found = ServiceLoader.load(IScriptRunner.class, Runner.class.getClassLoader()).iterator();
+        while (true) {
+          IScriptRunner current;
           try {
-            current = cl.getConstructor().newInstance();
-          } catch (InstantiationException | IllegalAccessException | IllegalArgumentException
-              | InvocationTargetException | NoSuchMethodException | SecurityException e) {
-
-            log(lvl, "init: %s: warning: not possible", cl);
+            if (!found.hasNext()) {
+              break;
+            }
+            current = found.next();
+          } catch (ServiceConfigurationError e) {
+            log(lvl, "init: warning: not possible: %s", e.getMessage());
             continue;
           }
 
@@ -68,6 +68,7 @@ public class Runner {
             }
           }
         }
+        log(lvl + 1, "init: %d runners (%d msec)", runners.size(), new Date().getTime() - start);
       }
       isReady = true;
     }
@@ -247,6 +248,92 @@ public class Runner {
     return exitCode;
   }
 
+  /**
+   * @param script a script file or a .sikuli folder
+   * @return the .py file, if the script can run in a pooled Jython interpreter
+   * (Settings.JythonPoolSize &gt; 1), otherwise null
+   */
+  public static String getPooledScript(String script) {
+    if (!JythonSupport.isPooled() || script.startsWith("!") || script.startsWith("?")) {
+      return null;
+    }
+    EffectiveRunner effective = getEffectiveRunner(script);
+    String pyScript = effective.getScript();
+    if (!(effective.getRunner() instanceof JythonRunner) || null == pyScript || pyScript.endsWith("$py.class")) {
+      return null;
+    }
+    return pyScript;
+  }
+
+  /**
+   * runs the script in an interpreter of the Jython pool (see getPooledScript())
+   *
+   * @param pyScript the .py file as returned by getPooledScript()
+   * @param args     arguments to be populated into sys.argv
+   * @return the exitcode
+   */
+  public static int runScriptPooled(String pyScript, String[] args) {
+    log(3, "runscript: running script pooled: %s", pyScript);
+    return ((JythonRunner) getRunner(JythonRunner.class)).runScriptPooled(pyScript, args);
+  }
+
+  /**
+   * like runScripts(), but the scripts, that can run in the Jython pool (Settings.JythonPoolSize &gt; 1),
+   * run in parallel (at most JythonPoolSize at the same time) - the others run one after the other
+   * in the calling thread meanwhile (as with runScripts(), stopping at the first exitcode not 0)<br>
+   * returns, when all scripts have ended
+   *
+   * @param runScripts the scripts
+   * @param args       arguments for each script
+   * @param options    for the scripts not run pooled
+   * @return an exitcode not 0 (those of the pooled scripts first) or 0
+   */
+  public static int runScriptsConcurrently(String[] runScripts, String[] args, IScriptRunner.Options options) {
+    if (runScripts == null || runScripts.length == 0) {
+      return 0;
+    }
+    int[] exitCodes = new int[runScripts.length];
+    List<String> serial = new ArrayList<>();
+    List<Future<?>> running = new ArrayList<>();
+    ExecutorService pool = null;
+    for (int n = 0; n < runScripts.length; n++) {
+      String pyScript = getPooledScript(runScripts[n]);
+      if (null == pyScript) {
+        serial.add(runScripts[n]);
+        continue;
+      }
+      if (null == pool) {
+        pool = Executors.newFixedThreadPool(Settings.JythonPoolSize, task -> {
+          Thread thread = new Thread(task, "SikuliX-RunPooled");
+          thread.setDaemon(true);
+          return thread;
+        });
+      }
+      final int index = n;
+      running.add(pool.submit(() -> exitCodes[index] = runScriptPooled(pyScript, args)));
+    }
+    int exitCode = serial.isEmpty() ? 0 : runScripts(serial.toArray(new String[0]), args, options);
+    if (null != pool) {
+      pool.shutdown();
+      for (Future<?> result : running) {
+        try {
+          result.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        } catch (ExecutionException e) {
+          log(-1, "runscript: pooled run failed: %s", e.getCause());
+        }
+      }
+    }
+    for (int pooledExit : exitCodes) {
+      if (pooledExit != 0) {
+        return pooledExit;
+      }
+    }
+    return exitCode;
+  }
+
   public static synchronized int run(String script, String[] args, IScriptRunner.Options options) {
     IScriptRunner runner = getRunner(script, options);
     int retVal;
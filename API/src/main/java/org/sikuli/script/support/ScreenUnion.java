@@ -10,11 +10,22 @@ import org.sikuli.script.Screen;
 import org.sikuli.script.ScreenImage;
 
 import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * CANDIDATE FOR DEPRECATION
  * INTERNAL USE
  * An extension of DesktopScreen, that uses all active monitors as one big screen
+ * <br>a capture of the union grabs all involved monitors in parallel into one image,
+ * so a search across all monitors is one find on one image
  *
  * TO BE EVALUATED: is this really needed?
  */
@@ -66,15 +77,95 @@ public class ScreenUnion extends Screen {
   @Override
   public ScreenImage capture(Rectangle rect) {
     Debug.log(4, "ScreenUnion: capture: (%d,%d) %dx%d", rect.x, rect.y, rect.width, rect.height);
-    Screen s = Screen.getPrimaryScreen();
-//    Location tl = new Location(rect.getLocation());
-//    for (Screen sx : Screen.screens) {
-//      if (sx.contains(tl)) {
-//        s = sx;
-//        break;
-//      }
-//    }
-    ScreenImage si = s.capture(rect);
+    long traceStart = TraceRecorder.isOn() ? System.nanoTime() : 0;
+    List<Integer> monitors = new ArrayList<>();
+    List<Rectangle> parts = new ArrayList<>();
+    for (int n = 0; n < Screen.getMonitorCount(); n++) {
+      Rectangle part = Screen.getMonitorBounds(n).intersection(rect);
+      if (part.isEmpty()) {
+        continue;
+      }
+      monitors.add(n);
+      parts.add(part);
+    }
+    ScreenImage si;
+    if (parts.isEmpty()) {
+      si = Screen.getPrimaryScreen().capture(rect);
+    } else if (parts.size() == 1 && parts.get(0).equals(rect)) {
+      si = Screen.getMonitorRobot(monitors.get(0)).captureScreen(rect);
+    } else {
+      si = captureParts(rect, monitors, parts);
+    }
+    if (traceStart > 0) {
+      TraceRecorder.record(TraceRecorder.CAPTURE, "union", rect, 0, System.nanoTime() - traceStart,
+          parts.size(), si != null);
+    }
+    lastScreenImage = si;
     return si;
   }
+
+  /**
+   * the monitors are captured in parallel, each one directly into its part of one common image
+   * (areas of the union not covered by any monitor stay black)
+   */
+  private ScreenImage captureParts(Rectangle rect, List<Integer> monitors, List<Rectangle> parts) {
+    BufferedImage union = new BufferedImage(rect.width, rect.height, BufferedImage.TYPE_INT_RGB);
+    final int[] unionPixels = ((DataBufferInt) union.getRaster().getDataBuffer()).getData();
+    List<Future<?>> captures = new ArrayList<>();
+    ExecutorService executor = getCaptureExecutor();
+    for (int i = 0; i < parts.size(); i++) {
+      final IRobot robot = Screen.getMonitorRobot(monitors.get(i));
+      final Rectangle part = parts.get(i);
+      final int offset = (part.y - rect.y) * rect.width + (part.x - rect.x);
+      captures.add(executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          BufferedImage img = robot.captureScreen(part).getImage();
+          copyPixels(img, part.width, part.height, unionPixels, offset, rect.width);
+        }
+      }));
+    }
+    for (Future<?> capture : captures) {
+      try {
+        capture.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      } catch (ExecutionException e) {
+        Debug.error("ScreenUnion: capture: %s", e.getCause());
+      }
+    }
+    return new ScreenImage(rect, union);
+  }
+
+  private static void copyPixels(BufferedImage img, int width, int height, int[] target, int offset, int scanSize) {
+    width = Math.min(width, img.getWidth());
+    height = Math.min(height, img.getHeight());
+    if (img.getType() == BufferedImage.TYPE_INT_RGB && img.getRaster().getDataBuffer() instanceof DataBufferInt
+        && img.getRaster().getParent() == null) {
+      int[] source = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+      int sourceWidth = img.getWidth();
+      for (int row = 0; row < height; row++) {
+        System.arraycopy(source, row * sourceWidth, target, offset + row * scanSize, width);
+      }
+    } else {
+      img.getRGB(0, 0, width, height, target, offset, scanSize);
+    }
+  }
+
+  private static ExecutorService captureExecutor = null;
+
+  private static synchronized ExecutorService getCaptureExecutor() {
+    if (captureExecutor == null) {
+      captureExecutor = Executors.newFixedThreadPool(Math.max(1, Screen.getMonitorCount()), new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "SikuliX-ScreenUnion-capture");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return captureExecutor;
+  }
 }
@@ -0,0 +1,368 @@
+/*
+ * Copyright (c) 2010-2019, sikuli.org, sikulix.com - MIT license
+ */
+package org.sikuli.script.support;
+
+import org.apache.commons.cli.CommandLine;
+import org.sikuli.basics.Debug;
+import org.sikuli.basics.FileManager;
+import org.sikuli.basics.Settings;
+import org.sikuli.script.Screen;
+import org.sikuli.script.runners.JythonRunner;
+import org.sikuli.util.CommandArgs;
+import org.sikuli.util.CommandArgsEnum;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Date;
+
+/**
+ * INTERNAL USE: keeps a warm JVM for the command line runner (option -w)<br>
+ * the daemon listens on localhost, port and access key are in SikulixDaemon.txt in the app data folder
+ * (readable only by the user)<br>
+ * a later start with -r (see RunTime.start) hands its args and working folder to the daemon,
+ * prints, what the scripts print to System.out/System.err, and exits with the exit code of the run<br>
+ * the runs are done one after the other in the daemon, which keeps its state between the runs
+ * (native libraries, OpenCV, Jython, image cache)<br>
+ * -w stop: stops a running daemon
+ */
+public class SikulixDaemon {
+
+  private static String me = "SikulixDaemon: ";
+  private static int lvl = 3;
+
+  private static void log(int level, String message, Object... args) {
+    if (Debug.isLogging(level)) {
+      Debug.logx(level, me + message, args);
+    }
+  }
+
+  public static final String STOP = "stop";
+
+  private static final String STATE_FILE = "SikulixDaemon.txt";
+  private static final String RUN = "run";
+
+  private static final int EXIT = 0;
+  private static final int OUT = 1;
+  private static final int ERR = 2;
+
+  static File getStateFile() {
+    return new File(RunTime.getAppDataFolder(), STATE_FILE);
+  }
+
+  //<editor-fold desc="01 client">
+  /**
+   * hands a run (-r) or a stop (-w stop) to the daemon, if one is running<br>
+   * what the run prints is written to System.out/System.err
+   *
+   * @param args the command line args as given
+   * @return the exit code or null, if no daemon is running (the caller has to run the scripts itself)
+   */
+  static Integer forward(String[] args) {
+    File state = getStateFile();
+    if (!state.exists()) {
+      return null;
+    }
+    int port;
+    String key;
+    try {
+      String[] portAndKey = FileManager.readFileToString(state).trim().split(" ");
+      port = Integer.parseInt(portAndKey[0]);
+      key = portAndKey[1];
+    } catch (Exception e) {
+      log(-1, "not usable: %s (%s)", state, e.getMessage());
+      return null;
+    }
+    boolean isStop = isStop(args);
+    boolean sent = false;
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      out.writeUTF(key);
+      out.writeUTF(isStop ? STOP : RUN);
+      out.writeUTF(System.getProperty("user.dir"));
+      out.writeInt(args.length);
+      for (String arg : args) {
+        out.writeUTF(arg);
+      }
+      out.flush();
+      sent = true;
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      while (true) {
+        int type = in.read();
+        if (type < 0) {
+          System.err.println("[error] SikuliX daemon: connection lost");
+          return 1;
+        }
+        if (type == EXIT) {
+          return in.readInt();
+        }
+        byte[] data = new byte[in.readInt()];
+        in.readFully(data);
+        PrintStream print = type == ERR ? System.err : System.out;
+        print.write(data);
+        print.flush();
+      }
+    } catch (IOException e) {
+      if (sent) {
+        System.err.println("[error] SikuliX daemon: " + e.getMessage());
+        return 1;
+      }
+      log(lvl, "not running (%s) - state file removed", e.getMessage());
+      state.delete();
+      return null;
+    }
+  }
+
+  static boolean isStop(String[] args) {
+    for (int n = 0; n < args.length - 1; n++) {
+      if ("-w".equals(args[n])) {
+        return STOP.equals(args[n + 1]);
+      }
+    }
+    return false;
+  }
+  //</editor-fold>
+
+  //<editor-fold desc="02 daemon">
+  private static boolean shouldStop = false;
+
+  /**
+   * runs the daemon until it gets a stop request (blocking)
+   */
+  public static void run() {
+    File state = getStateFile();
+    String key = new BigInteger(130, new SecureRandom()).toString(32);
+    try (ServerSocket server = new ServerSocket(0, 10, InetAddress.getLoopbackAddress())) {
+      state.delete();
+      writeOwnerOnly(state, server.getLocalPort() + " " + key);
+      state.deleteOnExit();
+      Switch.install();
+      warmUp();
+      log(lvl, "ready on port %d", server.getLocalPort());
+      while (!shouldStop) {
+        try (Socket client = server.accept()) {
+          handle(client, key);
+        } catch (IOException e) {
+          log(-1, "request failed: %s", e.getMessage());
+        }
+      }
+    } catch (IOException e) {
+      log(-1, "not possible: %s", e.getMessage());
+    } finally {
+      state.delete();
+    }
+    log(lvl, "stopped");
+  }
+
+  /*
+   * the file is created readable for the owner only, before the key is written into it
+   */
+  private static void writeOwnerOnly(File file, String content) throws IOException {
+    Path path = file.toPath();
+    try {
+      Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+    } catch (UnsupportedOperationException e) {
+      // not POSIX (Windows): the file is in the user's app data folder
+      Files.createFile(path);
+      file.setReadable(false, false);
+      file.setReadable(true, true);
+      file.setWritable(false, false);
+      file.setWritable(true, true);
+    }
+    Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void warmUp() {
+    long start = new Date().getTime();
+    RunTime.loadLibrary(RunTime.libOpenCV);
+    if (!Screen.isHeadless()) {
+      new Screen();
+    }
+    IScriptRunner jython = Runner.getRunner(JythonRunner.class);
+    if (null != jython) {
+      jython.init(null);
+    }
+    log(lvl, "warm up done (%d msec)", new Date().getTime() - start);
+  }
+
+  private static void handle(Socket client, String key) throws IOException {
+    client.setSoTimeout(10000);
+    DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+    if (!MessageDigest.isEqual(key.getBytes(StandardCharsets.UTF_8), in.readUTF().getBytes(StandardCharsets.UTF_8))) {
+      log(-1, "request rejected: wrong key");
+      return;
+    }
+    String command = in.readUTF();
+    String workDir = in.readUTF();
+    String[] args = new String[in.readInt()];
+    for (int n = 0; n < args.length; n++) {
+      args[n] = in.readUTF();
+    }
+    client.setSoTimeout(0);
+    Channel channel = new Channel(client.getOutputStream());
+    if (STOP.equals(command)) {
+      shouldStop = true;
+      channel.exit(0);
+      return;
+    }
+    long start = new Date().getTime();
+    int exitCode;
+    Switch.connect(channel);
+    try {
+      exitCode = runScripts(workDir, args);
+    } catch (Exception e) {
+      System.err.println("[error] SikuliX daemon: " + e);
+      exitCode = 1;
+    } finally {
+      System.out.flush();
+      System.err.flush();
+      Switch.disconnect();
+    }
+    channel.exit(exitCode);
+    log(lvl, "run done: exit %d (%d msec)", exitCode, new Date().getTime() - start);
+  }
+
+  private static int runScripts(String workDir, String[] args) {
+    CommandArgs cmdArgs = new CommandArgs();
+    CommandLine cmdLine = cmdArgs.getCommandLine(args);
+    if (null == cmdLine || !cmdLine.hasOption(CommandArgsEnum.RUN.shortname())) {
+      System.err.println("[error] SikuliX daemon: nothing to run (-r missing)");
+      return 1;
+    }
+    RunTime.get().fWorkDir = new File(workDir);
+    String[] scripts = RunTime.resolveRelativeFiles(cmdLine.getOptionValues(CommandArgsEnum.RUN.longname()));
+    String[] userArgs = cmdArgs.getUserArgs();
+    RunTime.setUserArgs(userArgs);
+    int exitCode;
+    if (Settings.JythonPoolSize > 0) {
+      exitCode = Runner.runScriptsConcurrently(scripts, userArgs, new IScriptRunner.Options());
+    } else {
+      exitCode = Runner.runScripts(scripts, userArgs, new IScriptRunner.Options());
+    }
+    if (exitCode > 255) {
+      exitCode = 254;
+    }
+    return exitCode;
+  }
+  //</editor-fold>
+
+  //<editor-fold desc="03 output">
+  /**
+   * the connection to the client: output and exit code as frames (type, length, bytes)
+   */
+  private static class Channel {
+    private final DataOutputStream out;
+    private boolean broken = false;
+
+    Channel(OutputStream out) {
+      this.out = new DataOutputStream(new BufferedOutputStream(out));
+    }
+
+    synchronized boolean send(int type, byte[] data, int off, int len) {
+      if (broken) {
+        return false;
+      }
+      try {
+        out.write(type);
+        out.writeInt(len);
+        out.write(data, off, len);
+      } catch (IOException e) {
+        broken = true;
+      }
+      return !broken;
+    }
+
+    synchronized void flush() {
+      if (!broken) {
+        try {
+          out.flush();
+        } catch (IOException e) {
+          broken = true;
+        }
+      }
+    }
+
+    synchronized void exit(int exitCode) {
+      if (!broken) {
+        try {
+          out.write(EXIT);
+          out.writeInt(exitCode);
+          out.flush();
+        } catch (IOException e) {
+          broken = true;
+        }
+      }
+    }
+  }
+
+  /**
+   * System.out/System.err of the daemon: while a run is active, it goes to the client,
+   * otherwise to the original stream<br>
+   * installed before the interpreters are created, since they keep the stream they find at start
+   */
+  private static class Switch extends OutputStream {
+    private static Switch out = null;
+    private static Switch err = null;
+
+    private final PrintStream local;
+    private final int type;
+    private volatile Channel channel = null;
+
+    private Switch(PrintStream local, int type) {
+      this.local = local;
+      this.type = type;
+    }
+
+    static void install() {
+      if (null == out) {
+        out = new Switch(System.out, OUT);
+        err = new Switch(System.err, ERR);
+        System.setOut(new PrintStream(out, true));
+        System.setErr(new PrintStream(err, true));
+      }
+    }
+
+    static void connect(Channel channel) {
+      out.channel = channel;
+      err.channel = channel;
+    }
+
+    static void disconnect() {
+      out.channel = null;
+      err.channel = null;
+    }
+
+    @Override
+    public void write(int b) {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      Channel current = channel;
+      if (null == current || !current.send(type, b, off, len)) {
+        local.write(b, off, len);
+      }
+    }
+
+    @Override
+    public void flush() {
+      Channel current = channel;
+      if (null == current) {
+        local.flush();
+      } else {
+        current.flush();
+      }
+    }
+  }
+  //</editor-fold>
+}
@@ -12,6 +12,7 @@ import java.util.Map.Entry;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
@@ -27,6 +28,7 @@ import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.sikuli.basics.Debug;
 import org.sikuli.basics.FileManager;
+import org.sikuli.basics.Settings;
 
 import io.undertow.Handlers;
 import io.undertow.Undertow;
@@ -749,6 +751,8 @@ public class SikulixServer {
     private boolean shouldPause;
     private Object lock;
     private ExecutorService executor;
+    private ExecutorService pooledExecutor;
+    private Semaphore pooledSlots;
 
     public TaskManager() {
       allTasks = new LinkedHashMap<>();
@@ -776,7 +780,12 @@ public class SikulixServer {
                 }
               }
               if (task.isRunning()) {
+                String pooledScript = task.resolveScript();
+                if (null != pooledScript) {
+                  runPooled(task, pooledScript);
+                } else {
                   task.runScript();
+                }
               }
             }
           } catch (InterruptedException ex) {
@@ -798,6 +807,33 @@ public class SikulixServer {
       });
     }
 
+    /**
+     * with Settings.JythonPoolSize &gt; 1 Python scripts run in parallel in the Jython pool,
+     * the queue only waits for a free interpreter
+     */
+    private void runPooled(Task task, String pooledScript) throws InterruptedException {
+      if (null == pooledExecutor) {
+        pooledSlots = new Semaphore(Settings.JythonPoolSize);
+        pooledExecutor = Executors.newFixedThreadPool(Settings.JythonPoolSize,
+            r -> new Thread(r, "Task Executor Pooled"));
+      }
+      pooledSlots.acquire();
+      pooledExecutor.execute(() -> {
+        try {
+          task.runScriptPooled(pooledScript);
+        } catch (Exception ex) {
+          SikulixServer.dolog(-1, "ScriptExecutor: Exception: %s", ex);
+          ex.printStackTrace();
+          task.updateStatus(Task.Status.FAILED);
+        } finally {
+          pooledSlots.release();
+          synchronized(task) {
+            task.notify();
+          }
+        }
+      });
+    }
+
     public Map<String, Task> getTasks(Optional<String> groupName, Optional<String> scriptName) {
       LinkedHashMap<String, Task> result = allTasks.entrySet().stream()
           .filter(e -> {
@@ -867,6 +903,9 @@ public class SikulixServer {
       shouldStop = true;
       queue.addFirst(new Task("shouldStop", null, null, null, true));
       executor.shutdown();
+      if (null != pooledExecutor) {
+        pooledExecutor.shutdown();
+      }
       while(!executor.isTerminated()) {
         try {
           executor.awaitTermination(60, TimeUnit.SECONDS);
@@ -941,12 +980,36 @@ public class SikulixServer {
       this.status = status;
     }
 
-    public void runScript() {
+    private String[] scripts = null;
+
+    /**
+     * resolves the script relative to the group folder
+     *
+     * @return the .py file, if the script can run in the Jython pool, otherwise null
+     */
+    public String resolveScript() {
       RunTime.get().fWorkDir = groups.get(groupName);
-      String[] scripts = RunTime.resolveRelativeFiles(new String[]{scriptName});
+      scripts = RunTime.resolveRelativeFiles(new String[]{scriptName});
+      return Runner.getPooledScript(scripts[0]);
+    }
+
+    public void runScript() {
+      if (null == scripts) {
+        resolveScript();
+      }
       RunTime.setUserArgs(scriptArgs);
       startDate = new Date();
       exitCode = Runner.runScripts(scripts, scriptArgs, new IScriptRunner.Options());
+      finish();
+    }
+
+    public void runScriptPooled(String pooledScript) {
+      startDate = new Date();
+      exitCode = Runner.runScriptPooled(pooledScript, scriptArgs);
+      finish();
+    }
+
+    private synchronized void finish() {
       endDate = new Date();
       if (exitCode < 0 || 255 < exitCode) {
         status = Status.FAILED;
@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2010-2019, sikuli.org, sikulix.com - MIT license
+ */
+package org.sikuli.script.support;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * evaluates a trace written by TraceRecorder<br>
+ * per script run (from start event to stop event): slowest targets, score distribution and retries per target
+ * <br>
+ * usage: java -cp sikulixapi.jar org.sikuli.script.support.TraceAnalyzer tracefile [top]
+ */
+public class TraceAnalyzer {
+
+  private static final double[] SCORE_BUCKETS = new double[]{0.7, 0.8, 0.9, 0.95, 0.99};
+
+  public static class TargetStats {
+    String target;
+    int operations = 0;
+    int scans = 0;
+    int found = 0;
+    int maxScan = 0;
+    double totalMs = 0;
+    double maxMs = 0;
+    double minScore = Double.MAX_VALUE;
+    double maxScore = 0;
+    double totalScore = 0;
+    int[] scoreHistogram = new int[SCORE_BUCKETS.length + 1];
+
+    TargetStats(String target) {
+      this.target = target;
+    }
+
+    void add(JsonNode event) {
+      double ms = event.path("ms").asDouble();
+      int scan = event.path("n").asInt(1);
+      scans++;
+      if (scan <= 1) {
+        operations++;
+      }
+      maxScan = Math.max(maxScan, scan);
+      totalMs += ms;
+      maxMs = Math.max(maxMs, ms);
+      if (event.path("ok").asBoolean()) {
+        found++;
+        double score = event.path("score").asDouble();
+        minScore = Math.min(minScore, score);
+        maxScore = Math.max(maxScore, score);
+        totalScore += score;
+        int bucket = 0;
+        while (bucket < SCORE_BUCKETS.length && score >= SCORE_BUCKETS[bucket]) {
+          bucket++;
+        }
+        scoreHistogram[bucket]++;
+      }
+    }
+
+    public double getAverageMs() {
+      return scans == 0 ? 0 : totalMs / scans;
+    }
+
+    public int getRetries() {
+      return scans - operations;
+    }
+
+    @Override
+    public String toString() {
+      String scores = "no match";
+      if (found > 0) {
+        scores = String.format("score min %.3f avg %.3f max %.3f", minScore, totalScore / found, maxScore);
+      }
+      return String.format("%s: %d ops, %d scans (%d retries, max scan %d), %d found, " +
+                      "avg %.1f msec, max %.1f msec, %s",
+              target, operations, scans, getRetries(), maxScan, found, getAverageMs(), maxMs, scores);
+    }
+  }
+
+  public static class Run {
+    String name;
+    long start = 0;
+    long end = 0;
+    int dropped = 0;
+    Map<String, Integer> eventCounts = new LinkedHashMap<>();
+    Map<String, TargetStats> finds = new LinkedHashMap<>();
+    Map<String, TargetStats> observes = new LinkedHashMap<>();
+
+    Run(String name, long start) {
+      this.name = name;
+      this.start = start;
+    }
+
+    void add(JsonNode event) {
+      String type = event.path("type").asText();
+      end = event.path("t").asLong();
+      Integer count = eventCounts.get(type);
+      eventCounts.put(type, count == null ? 1 : count + 1);
+      Map<String, TargetStats> stats = null;
+      if (TraceRecorder.FIND.equals(type) || TraceRecorder.FINDALL.equals(type)) {
+        stats = finds;
+      } else if (TraceRecorder.OBSERVE.equals(type)) {
+        stats = observes;
+      } else if (TraceRecorder.STOP.equals(type)) {
+        dropped = event.path("n").asInt();
+      }
+      if (stats != null) {
+        String target = event.path("target").asText();
+        TargetStats targetStats = stats.get(target);
+        if (targetStats == null) {
+          targetStats = new TargetStats(target);
+          stats.put(target, targetStats);
+        }
+        targetStats.add(event);
+      }
+    }
+  }
+
+  /**
+   * read a trace file and split it into runs
+   *
+   * @param traceFile as written by TraceRecorder
+   * @return the runs found in the file
+   * @throws IOException if the file cannot be read
+   */
+  public static List<Run> read(File traceFile) throws IOException {
+    ObjectMapper mapper = new ObjectMapper();
+    List<Run> runs = new ArrayList<>();
+    Run run = null;
+    try (BufferedReader reader = new BufferedReader(
+            new InputStreamReader(new FileInputStream(traceFile), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (line.isEmpty()) {
+          continue;
+        }
+        JsonNode event;
+        try {
+          event = mapper.readTree(line);
+        } catch (IOException e) {
+          continue;
+        }
+        if (TraceRecorder.START.equals(event.path("type").asText()) || run == null) {
+          run = new Run(event.path("target").asText(), event.path("t").asLong());
+          runs.add(run);
+        }
+        run.add(event);
+      }
+    }
+    return runs;
+  }
+
+  /**
+   * create a text report for the given trace file
+   *
+   * @param traceFile as written by TraceRecorder
+   * @param top       number of slowest targets to list per run
+   * @return the report
+   * @throws IOException if the file cannot be read
+   */
+  public static String analyze(File traceFile, int top) throws IOException {
+    StringBuilder report = new StringBuilder();
+    int runNumber = 0;
+    for (Run run : read(traceFile)) {
+      runNumber++;
+      report.append(String.format("***** run %d: %s (%.1f sec)%s\n", runNumber,
+              run.name.isEmpty() ? "(unnamed)" : run.name, (run.end - run.start) / 1000.0,
+              run.dropped > 0 ? String.format(" --- %d events dropped", run.dropped) : ""));
+      report.append("events: ").append(run.eventCounts).append("\n");
+      reportTargets(report, "slowest finds", run.finds, top);
+      reportTargets(report, "slowest observe scans", run.observes, top);
+      List<TargetStats> retried = new ArrayList<>();
+      for (TargetStats stats : run.finds.values()) {
+        if (stats.getRetries() > 0) {
+          retried.add(stats);
+        }
+      }
+      if (!retried.isEmpty()) {
+        Collections.sort(retried, new Comparator<TargetStats>() {
+          @Override
+          public int compare(TargetStats s1, TargetStats s2) {
+            return Integer.compare(s2.getRetries(), s1.getRetries());
+          }
+        });
+        report.append("--- most retried finds\n");
+        for (TargetStats stats : retried.subList(0, Math.min(top, retried.size()))) {
+          report.append(String.format("%s: %d retries in %d ops (max scan %d)\n",
+                  stats.target, stats.getRetries(), stats.operations, stats.maxScan));
+        }
+      }
+      if (!run.finds.isEmpty()) {
+        report.append("--- score distribution of finds (");
+        report.append("<").append(SCORE_BUCKETS[0]);
+        for (double limit : SCORE_BUCKETS) {
+          report.append(" | >=").append(limit);
+        }
+        report.append(")\n");
+        for (TargetStats stats : run.finds.values()) {
+          if (stats.found > 0) {
+            report.append(stats.target).append(": ");
+            for (int i = 0; i < stats.scoreHistogram.length; i++) {
+              report.append(i > 0 ? " | " : "").append(stats.scoreHistogram[i]);
+            }
+            report.append("\n");
+          }
+        }
+      }
+    }
+    return report.toString();
+  }
+
+  private static void reportTargets(StringBuilder report, String title, Map<String, TargetStats> targets, int top) {
+    if (targets.isEmpty()) {
+      return;
+    }
+    List<TargetStats> sorted = new ArrayList<>(targets.values());
+    Collections.sort(sorted, new Comparator<TargetStats>() {
+      @Override
+      public int compare(TargetStats s1, TargetStats s2) {
+        return Double.compare(s2.maxMs, s1.maxMs);
+      }
+    });
+    report.append("--- ").append(title).append("\n");
+    for (TargetStats stats : sorted.subList(0, Math.min(top, sorted.size()))) {
+      report.append(stats).append("\n");
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      System.out.println("usage: TraceAnalyzer tracefile [top]");
+      return;
+    }
+    int top = 10;
+    if (args.length > 1) {
+      top = Integer.parseInt(args[1]);
+    }
+    System.out.print(analyze(new File(args[0]), top));
+  }
+}
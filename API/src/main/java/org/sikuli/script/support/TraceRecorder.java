@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2010-2019, sikuli.org, sikulix.com - MIT license
+ */
+package org.sikuli.script.support;
+
+import org.sikuli.basics.Debug;
+import org.sikuli.basics.FileManager;
+
+import java.awt.Rectangle;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * records a structured trace of finds, observe scans, clicks, typing and captures<br>
+ * as JSON lines (one event per line) - see TraceAnalyzer for an evaluation<br>
+ * <br>
+ * switch on with start(filename) or -Dsikuli.Tracefile=pathname (no path given: SikulixTrace.jsonl in working folder)
+ * <br>
+ * recording only hands a small event object to a bounded queue,
+ * the formatting and writing is done by a background thread<br>
+ * if the queue is full, events are dropped and counted (reported with the stop event)
+ */
+public class TraceRecorder {
+
+  private static String me = "TraceRecorder: ";
+  private static int lvl = 3;
+
+  private static void log(int level, String message, Object... args) {
+    if (Debug.isLogging(level)) {
+      Debug.logx(level, me + message, args);
+    }
+  }
+
+  public static final String FIND = "find";
+  public static final String FINDALL = "findAll";
+  public static final String OBSERVE = "observe";
+  public static final String CLICK = "click";
+  public static final String TYPE = "type";
+  public static final String CAPTURE = "capture";
+  public static final String START = "start";
+  public static final String STOP = "stop";
+
+  private static final int QUEUE_SIZE = 8192;
+  private static final Event STOP_WRITER = new Event();
+
+  private static volatile boolean active = false;
+  private static ArrayBlockingQueue<Event> queue = null;
+  private static Thread writerThread = null;
+  private static final AtomicLong dropped = new AtomicLong();
+  private static String traceFile = null;
+
+  private TraceRecorder() {
+  }
+
+  private static class Event {
+    long time;
+    String type;
+    String target;
+    int x, y, w, h;
+    double score;
+    long nanos;
+    int count;
+    boolean success;
+    String thread;
+  }
+
+  /**
+   * start recording, if the property sikuli.Tracefile is set
+   */
+  public static void init() {
+    String fileName = System.getProperty("sikuli.Tracefile");
+    if (fileName != null) {
+      start(fileName);
+    }
+  }
+
+  /**
+   * is recording active? cheap check to be used before collecting event data
+   *
+   * @return true if events are recorded
+   */
+  public static boolean isOn() {
+    return active;
+  }
+
+  public static String getTraceFile() {
+    return traceFile;
+  }
+
+  /**
+   * start recording to the given file (appended)<br>
+   * a running recording is stopped before
+   *
+   * @param fileName empty - use SikulixTrace.jsonl in working folder, otherwise the given filename
+   * @return success
+   */
+  public static synchronized boolean start(String fileName) {
+    return start(fileName, "");
+  }
+
+  /**
+   * start recording to the given file (appended)<br>
+   * a running recording is stopped before
+   *
+   * @param fileName empty - use SikulixTrace.jsonl in working folder, otherwise the given filename
+   * @param runName  a name for this run (e.g. the script), written with the start event
+   * @return success
+   */
+  public static synchronized boolean start(String fileName, String runName) {
+    stop();
+    if (fileName == null || fileName.isEmpty()) {
+      fileName = FileManager.slashify(System.getProperty("user.dir"), true) + "SikulixTrace.jsonl";
+    }
+    final Writer writer;
+    try {
+      writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileName, true), StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      Debug.error("TraceRecorder: %s not accessible - check given path (%s)", fileName, e.getMessage());
+      return false;
+    }
+    traceFile = fileName;
+    queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    dropped.set(0);
+    final ArrayBlockingQueue<Event> events = queue;
+    writerThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        write(events, writer);
+      }
+    }, "SikuliX-TraceRecorder");
+    writerThread.setDaemon(true);
+    writerThread.start();
+    active = true;
+    record(START, runName == null ? "" : runName, null, 0, 0, 0, true);
+    log(lvl, "started: %s", fileName);
+    return true;
+  }
+
+  /**
+   * stop recording: pending events are written and the file is closed
+   */
+  public static synchronized void stop() {
+    if (!active) {
+      return;
+    }
+    active = false;
+    try {
+      queue.offer(createEvent(STOP, "", null, 0, 0, (int) dropped.get(), true), 2, TimeUnit.SECONDS);
+      if (queue.offer(STOP_WRITER, 2, TimeUnit.SECONDS)) {
+        writerThread.join(2000);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    log(lvl, "stopped: %s (%d events dropped)", traceFile, dropped.get());
+    queue = null;
+    writerThread = null;
+  }
+
+  /**
+   * record one event - does nothing if recording is not active
+   *
+   * @param type    one of the event types (FIND, OBSERVE, CLICK, ...)
+   * @param target  the name of the target (image name, text, ...)
+   * @param rect    the match or the region searched / acted on (might be null)
+   * @param score   the match score (0 if not applicable)
+   * @param nanos   the duration of the action in nanoseconds
+   * @param count   the scan number (1 = first try) or another count
+   * @param success true if the action was successful (e.g. target found)
+   */
+  public static void record(String type, String target, Rectangle rect, double score, long nanos,
+                            int count, boolean success) {
+    if (!active) {
+      return;
+    }
+    Event event = createEvent(type, target, rect, score, nanos, count, success);
+    ArrayBlockingQueue<Event> events = queue;
+    if (events == null || !events.offer(event)) {
+      dropped.incrementAndGet();
+    }
+  }
+
+  private static Event createEvent(String type, String target, Rectangle rect, double score, long nanos,
+                                   int count, boolean success) {
+    Event event = new Event();
+    event.time = System.currentTimeMillis();
+    event.type = type;
+    event.target = target;
+    if (rect != null) {
+      event.x = rect.x;
+      event.y = rect.y;
+      event.w = rect.width;
+      event.h = rect.height;
+    }
+    event.score = score;
+    event.nanos = nanos;
+    event.count = count;
+    event.success = success;
+    event.thread = Thread.currentThread().getName();
+    return event;
+  }
+
+  private static void write(ArrayBlockingQueue<Event> events, Writer writer) {
+    StringBuilder line = new StringBuilder(256);
+    List<Event> batch = new ArrayList<>();
+    boolean running = true;
+    try {
+      while (running) {
+        Event first = events.poll(1, TimeUnit.SECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        events.drainTo(batch);
+        for (Event event : batch) {
+          if (event == STOP_WRITER) {
+            running = false;
+            break;
+          }
+          line.setLength(0);
+          format(event, line);
+          writer.write(line.toString());
+        }
+        batch.clear();
+        writer.flush();
+      }
+    } catch (InterruptedException e) {
+    } catch (IOException e) {
+      Debug.error("TraceRecorder: writing %s failed: %s", traceFile, e.getMessage());
+      active = false;
+    } finally {
+      try {
+        writer.close();
+      } catch (IOException e) {
+      }
+    }
+  }
+
+  private static void format(Event event, StringBuilder line) {
+    line.append("{\"t\":").append(event.time);
+    line.append(",\"type\":\"").append(event.type).append('"');
+    line.append(",\"target\":");
+    appendString(line, event.target);
+    line.append(",\"x\":").append(event.x);
+    line.append(",\"y\":").append(event.y);
+    line.append(",\"w\":").append(event.w);
+    line.append(",\"h\":").append(event.h);
+    line.append(",\"score\":").append(Math.round(event.score * 10000) / 10000.0);
+    line.append(",\"ms\":").append(Math.round(event.nanos / 1000.0) / 1000.0);
+    line.append(",\"n\":").append(event.count);
+    line.append(",\"ok\":").append(event.success);
+    line.append(",\"thread\":");
+    appendString(line, event.thread);
+    line.append("}\n");
+  }
+
+  private static void appendString(StringBuilder line, String text) {
+    if (text == null) {
+      line.append("null");
+      return;
+    }
+    line.append('"');
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      switch (c) {
+        case '"':
+          line.append("\\\"");
+          break;
+        case '\\':
+          line.append("\\\\");
+          break;
+        case '\n':
+          line.append("\\n");
+          break;
+        case '\r':
+          line.append("\\r");
+          break;
+        case '\t':
+          line.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            line.append(String.format("\\u%04x", (int) c));
+          } else {
+            line.append(c);
+          }
+      }
+    }
+    line.append('"');
+  }
+}
@@ -14,6 +14,14 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import javax.imageio.ImageIO;
@@ -28,8 +36,8 @@ import org.opencv.core.Core;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
 import org.opencv.core.Rect;
-import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
+import org.sikuli.basics.Debug;
 import org.sikuli.basics.FileManager;
 import org.sikuli.script.Finder;
 import org.sikuli.script.Finder.FindInput2;
@@ -72,7 +80,8 @@ public class RecordedEventsFlow {
   private static final int DOUBLE_CLICK_TIME = 300;
 
   private TreeMap<Long, NativeInputEvent> events = new TreeMap<>();
-  private TreeMap<Long, String> screenshots = new TreeMap<>();
+  private TreeMap<Long, Integer> screenshots = new TreeMap<>();
+  private RecordedScreenshots screenshotStore = null;
 
   List<Character> modifiers = new ArrayList<>();
   StringBuilder typedText = new StringBuilder();
@@ -88,14 +97,25 @@ public class RecordedEventsFlow {
     }
   }
 
+  /**
+   * Sets the store, that keeps the screenshots added to the event flow.
+   *
+   * @param store
+   */
+  public void setScreenshots(RecordedScreenshots store) {
+    synchronized (this) {
+      screenshotStore = store;
+    }
+  }
+
   /**
    * Adds a screenshot to the event flow.
    *
-   * @param screenshotFilePath
+   * @param screenshotId id of the screenshot in the store
    */
-  public void addScreenshot(String screenshotFilePath) {
+  public void addScreenshot(int screenshotId) {
     synchronized (this) {
-      screenshots.put(System.currentTimeMillis(), screenshotFilePath);
+      screenshots.put(System.currentTimeMillis(), screenshotId);
     }
   }
 
@@ -123,7 +143,9 @@ public class RecordedEventsFlow {
         progress.setMaximum(events.size());
       }
 
-      List<org.sikuli.script.support.recorder.actions.IRecordedAction> actions = new LinkedList<>();
+      // the actions in time order: key actions are complete, the image work
+      // of mouse actions is done afterwards in parallel (depends only on the event and its screenshot)
+      List<Callable<List<IRecordedAction>>> steps = new ArrayList<>();
       modifiers.clear();
       typedText = new StringBuilder();
 
@@ -138,9 +160,15 @@ public class RecordedEventsFlow {
         NativeInputEvent event = entry.getValue();
 
         if (event instanceof NativeKeyEvent) {
-          actions.addAll(handleKeyEvent(time, (NativeKeyEvent) event));
+          List<IRecordedAction> keyActions = handleKeyEvent(time, (NativeKeyEvent) event);
+          if (!keyActions.isEmpty()) {
+            steps.add(() -> keyActions);
+          }
         } else if (event instanceof NativeMouseEvent) {
-          actions.addAll(handleMouseEvent(time, (NativeMouseEvent) event));
+          Callable<List<IRecordedAction>> mouseStep = handleMouseEvent(time, (NativeMouseEvent) event);
+          if (mouseStep != null) {
+            steps.add(mouseStep);
+          }
         }
 
         if (progress != null) {
@@ -148,6 +176,11 @@ public class RecordedEventsFlow {
         }
       }
 
+      List<IRecordedAction> actions = runSteps(steps, progress, i);
+      if (actions == null) {
+        return new LinkedList<>();
+      }
+
       if (!actions.isEmpty()) {
         actions.remove(actions.size() - 1);
       }
@@ -156,6 +189,53 @@ public class RecordedEventsFlow {
     }
   }
 
+  /*
+   * runs the steps on a bounded pool and puts the results together in the order of the steps
+   * (null if cancelled)
+   */
+  private List<IRecordedAction> runSteps(List<Callable<List<IRecordedAction>>> steps, ProgressMonitor progress, int done) {
+    if (progress != null) {
+      progress.setMaximum(done + steps.size());
+    }
+    int threads = Math.max(1, Math.min(steps.size(), Runtime.getRuntime().availableProcessors() - 1));
+    ExecutorService pool = Executors.newFixedThreadPool(threads, task -> {
+      Thread thread = new Thread(task, "SikuliX-RecorderCompile");
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      CompletionService<List<IRecordedAction>> completion = new ExecutorCompletionService<>(pool);
+      List<Future<List<IRecordedAction>>> results = new ArrayList<>();
+      for (Callable<List<IRecordedAction>> step : steps) {
+        results.add(completion.submit(step));
+      }
+      for (int n = 0; n < steps.size(); n++) {
+        while (completion.poll(200, TimeUnit.MILLISECONDS) == null) {
+          if (progress != null && progress.isCanceled()) {
+            return null;
+          }
+        }
+        if (progress != null) {
+          progress.setProgress(++done);
+        }
+      }
+      List<IRecordedAction> actions = new LinkedList<>();
+      for (Future<List<IRecordedAction>> result : results) {
+        try {
+          actions.addAll(result.get());
+        } catch (ExecutionException e) {
+          Debug.error("RecordedEventsFlow: action not compiled: %s", e.getCause());
+        }
+      }
+      return actions;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
   private List<IRecordedAction> handleKeyEvent(Long time, NativeKeyEvent event) {
     List<IRecordedAction> actions = new ArrayList<>();
 
@@ -285,8 +365,8 @@ public class RecordedEventsFlow {
   private NativeMouseEvent dragStartEvent = null;
   private int clickCount = 0;
 
-  private List<IRecordedAction> handleMouseEvent(Long time, NativeMouseEvent event) {
-    List<IRecordedAction> actions = new ArrayList<>();
+  private Callable<List<IRecordedAction>> handleMouseEvent(Long time, NativeMouseEvent event) {
+    Callable<List<IRecordedAction>> step = null;
 
     Map.Entry<Long, NativeInputEvent> nextEventEntry = getNextEvent(time);
     Long nextTime = nextEventEntry.getKey();
@@ -306,7 +386,7 @@ public class RecordedEventsFlow {
     } else if (NativeMouseEvent.NATIVE_MOUSE_RELEASED == event.getID()) {
       if (dragStartTime != null) {
         try {
-          actions.addAll(handleDragDrop(time, event));
+          step = handleDragDrop(time, event);
         } finally {
           pressedTime = null;
           clickCount = 0;
@@ -319,7 +399,7 @@ public class RecordedEventsFlow {
         if ((nextEvent.getID() != NativeMouseEvent.NATIVE_MOUSE_PRESSED || time - DOUBLE_CLICK_TIME > nextTime
             || clickCount >= 2))
           try {
-            actions.addAll(handleMouseRelease(time, event));
+            step = handleMouseRelease(time, event);
           } finally {
             pressedTime = null;
             clickCount = 0;
@@ -328,90 +408,105 @@ public class RecordedEventsFlow {
           }
       }
     } else if (NativeMouseEvent.NATIVE_MOUSE_WHEEL == event.getID()) {
-      actions.addAll(this.handleMouseWheel(time, (NativeMouseWheelEvent) event));
+      step = handleMouseWheel(time, (NativeMouseWheelEvent) event);
     }
 
-    return actions;
+    return step;
   }
 
-  private List<IRecordedAction> handleDragDrop(Long time, NativeMouseEvent event) {
-    List<IRecordedAction> actions = new ArrayList<>();
+  private Callable<List<IRecordedAction>> handleDragDrop(Long time, NativeMouseEvent event) {
+    Long startTime = dragStartTime;
+    NativeMouseEvent startEvent = dragStartEvent;
 
-    Mat screenshot = readFloorScreenshot(dragStartTime);
+    return () -> {
+      List<IRecordedAction> actions = new ArrayList<>();
 
-    Image dragImage = this.findRelevantImage(screenshot, dragStartEvent);
-    Image dropImage = this.findRelevantImage(screenshot, event);
+      Mat screenshot = readFloorScreenshot(startTime);
 
-    if (dragImage != null && dropImage != null) {
-      File dragFile = new File(ImagePath.getBundlePath(), dragStartTime + ".png");
-      File dropFile = new File(ImagePath.getBundlePath(), time + ".png");
+      Image dragImage = this.findRelevantImage(screenshot, startEvent);
+      Image dropImage = this.findRelevantImage(screenshot, event);
 
-      try {
-        ImageIO.write(dragImage.get(), "PNG", dragFile);
-        ImageIO.write(dropImage.get(), "PNG", dropFile);
-
-        saveScreenshot(screenshot, dragFile);
-        saveScreenshot(screenshot, dropFile);
-
-        Pattern dragPattern = new Pattern(dragFile.getAbsolutePath());
-        dragPattern.targetOffset(dragImage.getOffset());
-        dragPattern.similar(dragImage.getSimilarity());
-        Pattern dropPattern = new Pattern(dropFile.getAbsolutePath());
-        dropPattern.targetOffset(dropImage.getOffset());
-        dropPattern.similar(dropImage.getSimilarity());
-
-        actions.add(new DragDropAction(dragPattern, dropPattern));
-      } catch (IOException e) {
-        e.printStackTrace();
+      if (dragImage != null && dropImage != null) {
+        File dragFile = new File(ImagePath.getBundlePath(), startTime + ".png");
+        File dropFile = new File(ImagePath.getBundlePath(), time + ".png");
+
+        synchronized (bundleLock) {
+          try {
+            ImageIO.write(dragImage.get(), "PNG", dragFile);
+            ImageIO.write(dropImage.get(), "PNG", dropFile);
+
+            saveScreenshot(screenshot, dragFile);
+            saveScreenshot(screenshot, dropFile);
+
+            Pattern dragPattern = new Pattern(dragFile.getAbsolutePath());
+            dragPattern.targetOffset(dragImage.getOffset());
+            dragPattern.similar(dragImage.getSimilarity());
+            Pattern dropPattern = new Pattern(dropFile.getAbsolutePath());
+            dropPattern.targetOffset(dropImage.getOffset());
+            dropPattern.similar(dropImage.getSimilarity());
+
+            actions.add(new DragDropAction(dragPattern, dropPattern));
+          } catch (IOException e) {
+            e.printStackTrace();
+          }
+        }
       }
-    }
 
-    return actions;
+      return actions;
+    };
   }
 
-  private List<IRecordedAction> handleMouseRelease(Long time, NativeMouseEvent event) {
-    List<IRecordedAction> actions = new ArrayList<>();
-
+  private Callable<List<IRecordedAction>> handleMouseRelease(Long time, NativeMouseEvent event) {
     Long firstMouseMoveEventTime = findFirstMouseMoveTime(pressedTime);
-    Mat screenshot = readCeilingScreenshot(firstMouseMoveEventTime);
+    int clicks = clickCount;
+    String[] modifierTexts = getModifierTexts();
 
-    Image image = findRelevantImage(screenshot, event);
+    return () -> {
+      List<IRecordedAction> actions = new ArrayList<>();
 
-    if (image != null) {
-      File file = new File(ImagePath.getBundlePath() + File.separator + time + ".png");
+      Mat screenshot = readCeilingScreenshot(firstMouseMoveEventTime);
 
-      try {
-        ImageIO.write(image.get(), "PNG", file);
-        saveScreenshot(screenshot, file);
-      } catch (IOException e) {
-        e.printStackTrace();
-      }
+      Image image = findRelevantImage(screenshot, event);
 
-      Pattern pattern = new Pattern(file.getAbsolutePath());
-      pattern.targetOffset(image.getOffset());
-      pattern.similar(image.getSimilarity());
+      if (image != null) {
+        File file = new File(ImagePath.getBundlePath() + File.separator + time + ".png");
+        Pattern pattern;
 
-      ClickAction clickAction = null;
+        synchronized (bundleLock) {
+          try {
+            ImageIO.write(image.get(), "PNG", file);
+            saveScreenshot(screenshot, file);
+          } catch (IOException e) {
+            e.printStackTrace();
+          }
 
-      if (event.getButton() == NativeMouseEvent.BUTTON2 || event.getButton() == NativeMouseEvent.BUTTON3) {
-        clickAction = new RightClickAction(pattern, getModifierTexts());
-      } else if (clickCount >= 2) {
-        clickAction = new DoubleClickAction(pattern, getModifierTexts());
-      } else {
-        clickAction = new ClickAction(pattern, getModifierTexts());
-      }
+          pattern = new Pattern(file.getAbsolutePath());
+        }
+        pattern.targetOffset(image.getOffset());
+        pattern.similar(image.getSimilarity());
 
-      actions.add(waitIfNeeded(image, firstMouseMoveEventTime, clickAction));
-    }
+        ClickAction clickAction = null;
 
-    return actions;
+        if (event.getButton() == NativeMouseEvent.BUTTON2 || event.getButton() == NativeMouseEvent.BUTTON3) {
+          clickAction = new RightClickAction(pattern, modifierTexts);
+        } else if (clicks >= 2) {
+          clickAction = new DoubleClickAction(pattern, modifierTexts);
+        } else {
+          clickAction = new ClickAction(pattern, modifierTexts);
+        }
+
+        actions.add(waitIfNeeded(image, firstMouseMoveEventTime, clickAction));
+      }
+
+      return actions;
+    };
   }
 
   private int wheelSteps = 0;
   private Long wheelStartTime = null;
 
-  private List<IRecordedAction> handleMouseWheel(Long time, NativeMouseWheelEvent event) {
-    List<IRecordedAction> actions = new ArrayList<>();
+  private Callable<List<IRecordedAction>> handleMouseWheel(Long time, NativeMouseWheelEvent event) {
+    Callable<List<IRecordedAction>> step = null;
 
     if (wheelStartTime == null) {
       wheelStartTime = time;
@@ -427,39 +522,52 @@ public class RecordedEventsFlow {
 
     if (nextWheelEvent == null) {
       Long firstMouseMoveEventTime = findFirstMouseMoveTime(wheelStartTime);
+      int allSteps = wheelSteps;
+      long stepDelay = (time - wheelStartTime) / wheelSteps;
+      String[] modifierTexts = getModifierTexts();
 
-      Mat screenshot = readCeilingScreenshot(firstMouseMoveEventTime);
+      step = () -> {
+        List<IRecordedAction> actions = new ArrayList<>();
 
-      Image image = findRelevantImage(screenshot, event);
+        Mat screenshot = readCeilingScreenshot(firstMouseMoveEventTime);
 
-      if (image != null) {
-        File file = new File(ImagePath.getBundlePath() + File.separator + time + ".png");
+        Image image = findRelevantImage(screenshot, event);
 
-        try {
-          ImageIO.write(image.get(), "PNG", file);
-          saveScreenshot(screenshot, file);
-        } catch (IOException e) {
-          e.printStackTrace();
-        }
+        if (image != null) {
+          File file = new File(ImagePath.getBundlePath() + File.separator + time + ".png");
+          Pattern pattern;
 
-        Pattern pattern = new Pattern(file.getAbsolutePath());
-        pattern.targetOffset(image.getOffset());
-        pattern.similar(image.getSimilarity());
+          synchronized (bundleLock) {
+            try {
+              ImageIO.write(image.get(), "PNG", file);
+              saveScreenshot(screenshot, file);
+            } catch (IOException e) {
+              e.printStackTrace();
+            }
 
-        long stepDelay = (time - wheelStartTime) / wheelSteps;
+            pattern = new Pattern(file.getAbsolutePath());
+          }
+          pattern.targetOffset(image.getOffset());
+          pattern.similar(image.getSimilarity());
 
-        MouseWheelAction wheelAction = new MouseWheelAction(pattern, direction, wheelSteps, getModifierTexts(), stepDelay);
+          MouseWheelAction wheelAction = new MouseWheelAction(pattern, direction, allSteps, modifierTexts, stepDelay);
 
-        actions.add(waitIfNeeded(image, firstMouseMoveEventTime, wheelAction));
-      }
+          actions.add(waitIfNeeded(image, firstMouseMoveEventTime, wheelAction));
+        }
+
+        return actions;
+      };
 
       wheelSteps = 0;
       wheelStartTime = null;
     }
 
-    return actions;
+    return step;
   }
 
+  // image files and patterns are created one at a time
+  private final Object bundleLock = new Object();
+
   private void saveScreenshot(Mat screenshot, File imageFile) {
     FileManager.saveScreenshotImage(Finder2.getBufferedImage(screenshot), imageFile.getName(), ImagePath.getBundlePath());
   }
@@ -510,12 +618,12 @@ public class RecordedEventsFlow {
 
   private Mat readFloorScreenshot(Long time) {
     time = Math.min(Math.max(time, screenshots.firstKey()), screenshots.lastKey());
-    return Imgcodecs.imread(screenshots.floorEntry(time).getValue());
+    return screenshotStore.getMat(screenshots.floorEntry(time).getValue());
   }
 
   private Mat readCeilingScreenshot(Long time) {
     time = Math.min(Math.max(time, screenshots.firstKey()), screenshots.lastKey());
-    return Imgcodecs.imread(screenshots.ceilingEntry(time).getValue());
+    return screenshotStore.getMat(screenshots.ceilingEntry(time).getValue());
   }
 
   /*
@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2010-2019, sikuli.org, sikulix.com - MIT license
+ */
+
+package org.sikuli.script.support.recorder;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.io.FileUtils;
+import org.opencv.core.Mat;
+import org.sikuli.basics.Debug;
+import org.sikuli.script.Finder.Finder2;
+
+/**
+ * INTERNAL USE: the screenshots taken while recording, kept in memory<br>
+ * a new screenshot, that differs from an already kept one in at most 0.01% of the pixels,
+ * is not kept again (candidates are found with a perceptual hash, then compared pixel by pixel)<br>
+ * if the kept screenshots exceed the memory budget, the oldest ones are written to the spill folder
+ * in a background thread and then dropped from memory (read back from there when needed)
+ */
+public class RecordedScreenshots {
+
+  private static String me = "RecordedScreenshots: ";
+  private static int lvl = 3;
+
+  private static void log(int level, String message, Object... args) {
+    if (Debug.isLogging(level)) {
+      Debug.logx(level, me + message, args);
+    }
+  }
+
+  private static final double DIFF_LIMIT = 0.0001;
+  private static final int HASH_DISTANCE = 4;
+  private static final int GRID = 8;
+  private static final int MATS_CACHED = 4;
+
+  private static class Frame {
+    final int id;
+    final long hash;
+    final long bytes;
+    BufferedImage image;
+    File file = null;
+    boolean spilling = false;
+
+    Frame(int id, BufferedImage image, long hash) {
+      this.id = id;
+      this.image = image;
+      this.hash = hash;
+      this.bytes = (long) image.getWidth() * image.getHeight() * 4;
+    }
+  }
+
+  private final File spillFolder;
+  private final long budget;
+  private final List<Frame> frames = new ArrayList<>();
+  private long inMemory = 0;
+  private int duplicates = 0;
+  private ExecutorService spiller = null;
+
+  private final Map<Integer, Mat> mats = new LinkedHashMap<Integer, Mat>(8, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Integer, Mat> eldest) {
+      return size() > MATS_CACHED;
+    }
+  };
+
+  /**
+   * @param spillFolder where screenshots are written, if the memory budget is exceeded
+   */
+  public RecordedScreenshots(File spillFolder) {
+    this(spillFolder, Runtime.getRuntime().maxMemory() / 4);
+  }
+
+  /**
+   * @param spillFolder where screenshots are written, if the memory budget is exceeded
+   * @param budget      bytes of screenshots kept in memory
+   */
+  public RecordedScreenshots(File spillFolder, long budget) {
+    this.spillFolder = spillFolder;
+    this.budget = budget;
+  }
+
+  /**
+   * keeps the screenshot, if it is not a duplicate of one already kept
+   *
+   * @param image the screenshot
+   * @return the id of the kept screenshot (the given or its duplicate)
+   */
+  public synchronized int add(BufferedImage image) {
+    long hash = hash(image);
+    for (int n = frames.size() - 1; n >= 0; n--) {
+      Frame frame = frames.get(n);
+      if (frame.image != null && Long.bitCount(frame.hash ^ hash) <= HASH_DISTANCE
+          && isSame(frame.image, image)) {
+        duplicates++;
+        return frame.id;
+      }
+    }
+    Frame frame = new Frame(frames.size(), image, hash);
+    frames.add(frame);
+    inMemory += frame.bytes;
+    spillIfNeeded();
+    return frame.id;
+  }
+
+  /**
+   * @param id as returned by add
+   * @return the screenshot (read from the spill folder, if no longer in memory) or null if not possible
+   */
+  public BufferedImage get(int id) {
+    File file;
+    synchronized (this) {
+      Frame frame = frames.get(id);
+      if (frame.image != null) {
+        return frame.image;
+      }
+      file = frame.file;
+    }
+    try {
+      return ImageIO.read(file);
+    } catch (IOException e) {
+      log(-1, "get: not readable: %s (%s)", file, e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * the screenshot as OpenCV Mat (BGR) - the recently used ones are cached
+   *
+   * @param id as returned by add
+   * @return the Mat (must not be changed)
+   */
+  public Mat getMat(int id) {
+    synchronized (mats) {
+      Mat mat = mats.get(id);
+      if (mat != null) {
+        return mat;
+      }
+    }
+    BufferedImage image = get(id);
+    Mat mat = image == null ? new Mat() : Finder2.makeMat(image);
+    synchronized (mats) {
+      mats.put(id, mat);
+    }
+    return mat;
+  }
+
+  public synchronized int size() {
+    return frames.size();
+  }
+
+  /**
+   * drops all screenshots and deletes the spill folder
+   */
+  public void clear() {
+    ExecutorService stopping;
+    synchronized (this) {
+      log(lvl, "%d screenshots (%d duplicates dropped)", frames.size(), duplicates);
+      frames.clear();
+      inMemory = 0;
+      duplicates = 0;
+      stopping = spiller;
+      spiller = null;
+    }
+    synchronized (mats) {
+      mats.clear();
+    }
+    if (stopping != null) {
+      stopping.shutdownNow();
+    }
+    try {
+      FileUtils.deleteDirectory(spillFolder);
+    } catch (IOException e) {
+      log(-1, "clear: %s", e.getMessage());
+    }
+  }
+
+  //<editor-fold defaultstate="collapsed" desc="spilling">
+  private void spillIfNeeded() {
+    long pending = inMemory;
+    for (Frame frame : frames) {
+      if (pending <= budget) {
+        break;
+      }
+      if (frame.image == null || frame.spilling) {
+        continue;
+      }
+      frame.spilling = true;
+      pending -= frame.bytes;
+      if (spiller == null) {
+        spiller = Executors.newSingleThreadExecutor(task -> {
+          Thread thread = new Thread(task, "SikuliX-RecorderSpill");
+          thread.setDaemon(true);
+          return thread;
+        });
+      }
+      spiller.execute(() -> spill(frame));
+    }
+  }
+
+  private void spill(Frame frame) {
+    BufferedImage image;
+    synchronized (this) {
+      if (!isKept(frame)) {
+        return;
+      }
+      image = frame.image;
+    }
+    File file = new File(spillFolder, String.format("screenshot-%05d.png", frame.id));
+    try {
+      spillFolder.mkdirs();
+      ImageIO.write(image, "png", file);
+    } catch (IOException e) {
+      log(-1, "spill: not possible: %s (%s)", file, e.getMessage());
+      synchronized (this) {
+        frame.spilling = false;
+      }
+      return;
+    }
+    synchronized (this) {
+      if (!isKept(frame)) {
+        file.delete();
+        return;
+      }
+      frame.file = file;
+      frame.image = null;
+      frame.spilling = false;
+      inMemory -= frame.bytes;
+    }
+  }
+
+  // false after clear
+  private boolean isKept(Frame frame) {
+    return frame.id < frames.size() && frames.get(frame.id) == frame;
+  }
+  //</editor-fold>
+
+  //<editor-fold defaultstate="collapsed" desc="comparing">
+  /*
+   * one bit per cell of an 8x8 grid: cell brighter than the average of all cells
+   * (cells sampled every 4th pixel in both directions)
+   */
+  static long hash(BufferedImage image) {
+    int w = image.getWidth();
+    int h = image.getHeight();
+    long[] sums = new long[GRID * GRID];
+    int[] counts = new int[GRID * GRID];
+    int[] row = new int[w];
+    for (int y = 0; y < h; y += 4) {
+      image.getRGB(0, y, w, 1, row, 0, w);
+      int cellRow = y * GRID / h * GRID;
+      for (int x = 0; x < w; x += 4) {
+        int rgb = row[x];
+        int cell = cellRow + x * GRID / w;
+        sums[cell] += ((rgb >> 16) & 0xff) + ((rgb >> 8) & 0xff) + (rgb & 0xff);
+        counts[cell]++;
+      }
+    }
+    double total = 0;
+    double[] cells = new double[sums.length];
+    for (int n = 0; n < sums.length; n++) {
+      cells[n] = counts[n] == 0 ? 0 : (double) sums[n] / counts[n];
+      total += cells[n];
+    }
+    double average = total / cells.length;
+    long hash = 0;
+    for (int n = 0; n < cells.length; n++) {
+      if (cells[n] > average) {
+        hash |= 1L << n;
+      }
+    }
+    return hash;
+  }
+
+  /*
+   * same size and at most DIFF_LIMIT of the pixels different
+   */
+  static boolean isSame(BufferedImage first, BufferedImage second) {
+    int w = first.getWidth();
+    int h = first.getHeight();
+    if (w != second.getWidth() || h != second.getHeight()) {
+      return false;
+    }
+    long limit = (long) (DIFF_LIMIT * w * h);
+    long diffs = 0;
+    DataBuffer firstData = first.getRaster().getDataBuffer();
+    DataBuffer secondData = second.getRaster().getDataBuffer();
+    if (first.getType() == second.getType() && firstData instanceof DataBufferInt
+        && firstData.getNumBanks() == 1 && secondData.getNumBanks() == 1) {
+      int[] a = ((DataBufferInt) firstData).getData();
+      int[] b = ((DataBufferInt) secondData).getData();
+      for (int n = 0; n < a.length; n++) {
+        if (a[n] != b[n] && ++diffs > limit) {
+          return false;
+        }
+      }
+      return true;
+    }
+    if (first.getType() == second.getType() && first.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+      byte[] a = ((DataBufferByte) firstData).getData();
+      byte[] b = ((DataBufferByte) secondData).getData();
+      for (int n = 0; n + 2 < a.length; n += 3) {
+        if ((a[n] != b[n] || a[n + 1] != b[n + 1] || a[n + 2] != b[n + 2]) && ++diffs > limit) {
+          return false;
+        }
+      }
+      return true;
+    }
+    int[] a = new int[w];
+    int[] b = new int[w];
+    for (int y = 0; y < h; y++) {
+      first.getRGB(0, y, w, 1, a, 0, w);
+      second.getRGB(0, y, w, 1, b, 0, w);
+      for (int x = 0; x < w; x++) {
+        if (a[x] != b[x] && ++diffs > limit) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+  //</editor-fold>
+}
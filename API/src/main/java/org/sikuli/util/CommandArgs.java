@@ -109,6 +109,13 @@ public class CommandArgs {
             .withDescription(CommandArgsEnum.SERVER.description())
             .create(CommandArgsEnum.SERVER.shortname().charAt(0)));
 
+    cmdArgs.addOption(
+        OptionBuilder.withLongOpt(CommandArgsEnum.DAEMON.longname())
+            .hasOptionalArg()
+            .withArgName(CommandArgsEnum.DAEMON.argname())
+            .withDescription(CommandArgsEnum.DAEMON.description())
+            .create(CommandArgsEnum.DAEMON.shortname().charAt(0)));
+
     cmdArgs.addOption(
             OptionBuilder.withLongOpt(CommandArgsEnum.GROUPS.longname())
                     .hasOptionalArgs(1)
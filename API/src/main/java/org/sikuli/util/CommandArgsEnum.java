@@ -48,6 +48,10 @@ public enum CommandArgsEnum {
 	 * run as server
 	 */
 	SERVER("server", "s", "ip:port | ip port", "run as server, listen on ip, port"),
+	/**
+	 * run as daemon (warm JVM for later -r runs)
+	 */
+	DAEMON("daemon", "w", "stop", "keep a warm JVM, that runs the scripts of later -r starts (stop: stop it)"),
 	/**
 	 * define group shortcuts
 	 */
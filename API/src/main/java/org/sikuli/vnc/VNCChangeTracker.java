@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2010-2019, sikuli.org, sikulix.com - MIT license
+ */
+package org.sikuli.vnc;
+
+import com.sikulix.vnc.VNCClient;
+import com.tigervnc.rfb.CMsgHandler;
+import com.tigervnc.rfb.CMsgReader;
+import com.tigervnc.rfb.PixelFormat;
+import com.tigervnc.rfb.Point;
+import com.tigervnc.rfb.Rect;
+import com.tigervnc.rfb.ScreenSet;
+import org.sikuli.basics.Debug;
+
+import java.awt.Rectangle;
+import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * INTERNAL USE: collects the rectangles of the framebuffer updates sent by the VNC server<br>
+ * it is put between the message reader and the VNCClient (all messages are handed on unchanged)<br>
+ * each framebuffer update, that changed something, increments the frame version<br>
+ * for the recent versions the changed rectangles are kept, so a consumer can ask,
+ * what has changed since the version it has seen last
+ */
+class VNCChangeTracker extends CMsgHandler {
+
+  private static String me = "VNCChangeTracker: ";
+  private static int lvl = 3;
+
+  private static void log(int level, String message, Object... args) {
+    if (Debug.isLogging(level)) {
+      Debug.logx(level, me + message, args);
+    }
+  }
+
+  private static final int HISTORY = 64;
+
+  private static class Update {
+    final long version;
+    final List<Rectangle> rects;
+
+    Update(long version, List<Rectangle> rects) {
+      this.version = version;
+      this.rects = rects;
+    }
+  }
+
+  private final VNCClient client;
+  private List<Rectangle> pending = new ArrayList<>();
+  private final ArrayDeque<Update> history = new ArrayDeque<>();
+  private long version = 0;
+  private long validFrom = 0;
+
+  private VNCChangeTracker(VNCClient client) {
+    this.client = client;
+    cp = client.cp;
+  }
+
+  /**
+   * put a tracker between the message reader of the client and the client
+   *
+   * @param client a connected client
+   * @return the tracker or null, if not possible with this client implementation
+   */
+  static VNCChangeTracker attach(VNCClient client) {
+    try {
+      Field handler = CMsgReader.class.getDeclaredField("handler");
+      handler.setAccessible(true);
+      CMsgReader reader = client.reader();
+      if (reader == null || handler.get(reader) != client) {
+        log(-1, "not possible: client not in expected state");
+        return null;
+      }
+      VNCChangeTracker tracker = new VNCChangeTracker(client);
+      handler.set(reader, tracker);
+      return tracker;
+    } catch (Exception e) {
+      log(-1, "not possible: %s", e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * @return the number of framebuffer updates with changes so far
+   */
+  synchronized long getVersion() {
+    return version;
+  }
+
+  /**
+   * the rectangles changed after the given version
+   *
+   * @param since a version returned by getVersion() before
+   * @return the changed rectangles (empty: nothing changed) or null if not known (version too old, resize)
+   */
+  synchronized List<Rectangle> getChanges(long since) {
+    List<Rectangle> changes = new ArrayList<>();
+    if (since >= version) {
+      return changes;
+    }
+    if (since < validFrom) {
+      return null;
+    }
+    Iterator<Update> updates = history.descendingIterator();
+    while (updates.hasNext()) {
+      Update update = updates.next();
+      if (update.version <= since) {
+        break;
+      }
+      changes.addAll(update.rects);
+    }
+    return changes;
+  }
+
+  /**
+   * waits until the version is greater than the given one
+   *
+   * @param since   a version returned by getVersion() before
+   * @param timeout milliseconds
+   * @return the current version
+   */
+  synchronized long waitForChange(long since, long timeout) {
+    long end = System.currentTimeMillis() + timeout;
+    long wait;
+    while (version <= since && (wait = end - System.currentTimeMillis()) > 0) {
+      try {
+        wait(wait);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    return version;
+  }
+
+  private synchronized void invalidate() {
+    version++;
+    validFrom = version;
+    history.clear();
+    pending = new ArrayList<>();
+    notifyAll();
+  }
+
+  //<editor-fold defaultstate="collapsed" desc="collecting">
+  @Override
+  public void framebufferUpdateStart() {
+    client.framebufferUpdateStart();
+  }
+
+  @Override
+  public void beginRect(Rect r, int encoding) {
+    client.beginRect(r, encoding);
+  }
+
+  @Override
+  public void endRect(Rect r, int encoding) {
+    client.endRect(r, encoding);
+    if (!r.is_empty()) {
+      pending.add(new Rectangle(r.tl.x, r.tl.y, r.width(), r.height()));
+    }
+  }
+
+  @Override
+  public void framebufferUpdateEnd() {
+    client.framebufferUpdateEnd();
+    if (pending.isEmpty()) {
+      return;
+    }
+    synchronized (this) {
+      version++;
+      history.addLast(new Update(version, pending));
+      if (history.size() > HISTORY) {
+        validFrom = history.removeFirst().version;
+      }
+      pending = new ArrayList<>();
+      notifyAll();
+    }
+  }
+
+  @Override
+  public void setDesktopSize(int w, int h) {
+    client.setDesktopSize(w, h);
+    log(lvl, "desktop size changed: %dx%d", w, h);
+    invalidate();
+  }
+
+  @Override
+  public void setExtendedDesktopSize(int reason, int result, int w, int h, ScreenSet layout) {
+    client.setExtendedDesktopSize(reason, result, w, h, layout);
+    invalidate();
+  }
+  //</editor-fold>
+
+  //<editor-fold defaultstate="collapsed" desc="handed on to the client">
+  @Override
+  public void setPixelFormat(PixelFormat pf) {
+    client.setPixelFormat(pf);
+  }
+
+  @Override
+  public void setName(String name) {
+    client.setName(name);
+  }
+
+  @Override
+  public void fence(int flags, int len, byte[] data) {
+    client.fence(flags, len, data);
+  }
+
+  @Override
+  public void endOfContinuousUpdates() {
+    client.endOfContinuousUpdates();
+  }
+
+  @Override
+  public void clientRedirect(int port, String host, String x509subject) {
+    client.clientRedirect(port, host, x509subject);
+  }
+
+  @Override
+  public void setCursor(int width, int height, Point hotspot, int[] data, byte[] mask) {
+    client.setCursor(width, height, hotspot, data, mask);
+  }
+
+  @Override
+  public void serverInit() {
+    client.serverInit();
+  }
+
+  @Override
+  public void setColourMapEntries(int firstColour, int nColours, int[] rgbs) {
+    client.setColourMapEntries(firstColour, nColours, rgbs);
+  }
+
+  @Override
+  public void bell() {
+    client.bell();
+  }
+
+  @Override
+  public void serverCutText(String str, int len) {
+    client.serverCutText(str, len);
+  }
+
+  @Override
+  public void fillRect(Rect r, int pix) {
+    client.fillRect(r, pix);
+  }
+
+  @Override
+  public void imageRect(Rect r, Object pixels) {
+    client.imageRect(r, pixels);
+  }
+
+  @Override
+  public void copyRect(Rect r, int srcX, int srcY) {
+    client.copyRect(r, srcX, srcY);
+  }
+
+  @Override
+  public PixelFormat getPreferredPF() {
+    return client.getPreferredPF();
+  }
+  //</editor-fold>
+}
@@ -120,6 +120,18 @@ class VNCRobot implements IRobot {
     typeKey(key, KeyMode.PRESS_RELEASE);
   }
 
+  @Override
+  public void typeText(String text, int modifiers, int pause) {
+    for (int i = 0; i < text.length(); i++) {
+      pressModifiers(modifiers);
+      typeChar(text.charAt(i), KeyMode.PRESS_RELEASE);
+      releaseModifiers(modifiers);
+      if (pause > 0 && i < text.length() - 1) {
+        delay(pause);
+      }
+    }
+  }
+
   @Override
   public void typeChar(char character, KeyMode mode) {
     if (character >= '\ue000' && character < '\ue050') {
@@ -11,14 +11,29 @@ import org.sikuli.util.OverlayCapturePrompt;
 
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.sikulix.vnc.*;
+import com.tigervnc.rfb.Encodings;
+import com.tigervnc.rfb.PixelBuffer;
+import com.tigervnc.rfb.PixelFormat;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
 
 public class VNCScreen extends Region implements IScreen {
-  private VNCClient client;
+  private volatile VNCClient client;
+  private volatile VNCChangeTracker changeTracker;
   private IRobot robot;
   private ScreenImage lastScreenImage;
 
@@ -29,7 +44,22 @@ public class VNCScreen extends Region implements IScreen {
   private int port = -1;
   private String id = "";
 
-  private static Map<String, VNCScreen> screens = new HashMap<>();
+  private static final Map<String, VNCScreen> screens = new ConcurrentHashMap<>();
+  private static final Map<String, Object> connecting = new ConcurrentHashMap<>();
+
+  /**
+   * the message loops of all sessions (the client reads blocking, so each running session occupies one thread)
+   */
+  private static final ExecutorService messageLoops = Executors.newCachedThreadPool(new ThreadFactory() {
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "SikuliX-VNC-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
 
   private static int startUpWait = 3;
 
@@ -73,18 +103,24 @@ public class VNCScreen extends Region implements IScreen {
     return start(theIP, thePort, null, cTimeout, timeout);
   }
 
+  /**
+   * sessions to different servers are started in parallel, for the same server only one session is created
+   */
   public static VNCScreen start(String theIP, int thePort, String password, int cTimeout, int timeout) {
-    VNCScreen scr = canConnect(theIP, thePort, cTimeout);
-    if (null != scr) {
-      if (scr.id.isEmpty()) {
-        scr.init(theIP, thePort, password);
-        Debug.log(3, "VNCScreen: start: %s", scr);
-      } else
-        Debug.log(3, "VNCScreen: start: using existing: %s", scr);
-    } else {
-      scr = new VNCScreen();
+    Object lock = connecting.computeIfAbsent(theIP + ":" + thePort, address -> new Object());
+    synchronized (lock) {
+      VNCScreen scr = canConnect(theIP, thePort, cTimeout);
+      if (null != scr) {
+        if (scr.id.isEmpty()) {
+          scr.init(theIP, thePort, password);
+          Debug.log(3, "VNCScreen: start: %s", scr);
+        } else
+          Debug.log(3, "VNCScreen: start: using existing: %s", scr);
+      } else {
+        scr = new VNCScreen();
+      }
+      return scr;
     }
-    return scr;
   }
 
   private void init(String theIP, int thePort, String password) {
@@ -92,27 +128,33 @@ public class VNCScreen extends Region implements IScreen {
     port = thePort;
     id = String.format("%s:%d", ip, port);
     client = VNCClient.connect(ip, port, password, true);
+    changeTracker = VNCChangeTracker.attach(client);
     robot = new VNCRobot(this);
     setOtherScreen(this);
     setRect(getBounds());
     initScreen(this);
 
-    new Thread(new Runnable() {
+    final VNCClient sessionClient = client;
+    messageLoops.execute(new Runnable() {
       @Override
       public void run() {
         try {
-          client.processMessages();
+          sessionClient.processMessages();
         } catch (RuntimeException e) {
           if (isRunning()) {
-            throw e;
+            Debug.error("VNCScreen: %s: message loop ended: %s", id, e);
           }
         }
       }
-    }).start();
+    });
     client.refreshFramebuffer();
 
     screens.put(id, this);
-    this.wait((double) startUpWait);
+    if (changeTracker != null) {
+      changeTracker.waitForChange(0, startUpWait * 1000);
+    } else {
+      this.wait((double) startUpWait);
+    }
   }
 
   private static VNCScreen canConnect(String theIP, int thePort, int timeout) {
@@ -137,11 +179,9 @@ public class VNCScreen extends Region implements IScreen {
       validIP = !new InetSocketAddress(theIP, thePort).isUnresolved();
     }
     if (validIP) {
-      if (screens.size() > 0) {
-        vncScreen = screens.get(address);
-        if (null != vncScreen) {
-          return vncScreen;
-        }
+      vncScreen = screens.get(address);
+      if (null != vncScreen) {
+        return vncScreen;
       }
       try (Socket socket = new Socket()) {
         socket.connect(new InetSocketAddress(theIP, thePort), timeout * 1000);
@@ -170,17 +210,19 @@ public class VNCScreen extends Region implements IScreen {
       Debug.log(3, "VNCScreen: stopping all");
       for (VNCScreen scr : screens.values()) {
         scr.close();
+        screens.remove(scr.id);
       }
-      screens.clear();
     }
   }
 
-  private void close() {
-    if (isRunning()) {
+  private synchronized void close() {
+    VNCClient running = client;
+    if (running != null) {
       Debug.log(3, "VNCScreen: stopping: %s", this);
-      client.close();
       client = null;
+      changeTracker = null;
       robot = null;
+      running.close();
     }
   }
 
@@ -195,8 +237,9 @@ public class VNCScreen extends Region implements IScreen {
 
   @Override
   public Rectangle getBounds() {
-    if (isRunning()) {
-      return client.getBounds();
+    VNCClient running = client;
+    if (running != null) {
+      return running.getBounds();
     }
     return new Rectangle();
   }
@@ -216,21 +259,199 @@ public class VNCScreen extends Region implements IScreen {
     return capture(rect.x, rect.y, rect.width, rect.height);
   }
 
+  /**
+   * the captured ScreenImage holds the pixels as OpenCV Mat (BGR), if the framebuffer can be read directly
+   * (see captureMat()), the BufferedImage is only created when needed
+   */
   @Override
   public ScreenImage capture(int x, int y, int w, int h) {
-    if (!isRunning()) {
+    VNCClient running = client;
+    if (running == null) {
       return null;
     }
-    BufferedImage image = client.getFrameBuffer(x, y, w, h);
-    ScreenImage img = new ScreenImage(
-            new Rectangle(x, y, w, h),
-            image
-    );
+    long version = getFrameVersion();
+    ScreenImage img;
+    Mat mat = captureMat(x, y, w, h);
+    if (mat != null) {
+      img = new ScreenImage(new Rectangle(x, y, w, h), mat);
+    } else {
+      BufferedImage image = running.getFrameBuffer(x, y, w, h);
+      img = new ScreenImage(
+              new Rectangle(x, y, w, h),
+              image
+      );
+    }
+    if (version > 0) {
+      img.setFrame(version);
+    }
     lastScreenImage = img;
     Debug.log(3, "VNCScreen: capture: (%d,%d) %dx%d on %s", x, y, w, h, this);
     return img;
   }
 
+  /**
+   * the version of the framebuffer content: incremented with every framebuffer update from the server,
+   * that changed something (a capture is stamped with the version it shows at least - see ScreenImage.getFrame())
+   *
+   * @return the version or -1 if not available
+   */
+  public long getFrameVersion() {
+    VNCChangeTracker tracker = changeTracker;
+    if (tracker == null) {
+      return -1;
+    }
+    return tracker.getVersion();
+  }
+
+  /**
+   * the areas changed by the server after the given framebuffer version
+   *
+   * @param version as returned by getFrameVersion() or ScreenImage.getFrame()
+   * @return the changed rectangles (empty if nothing changed) or null if not known (version too old, not available)
+   */
+  public List<Rectangle> getChanges(long version) {
+    VNCChangeTracker tracker = changeTracker;
+    if (tracker == null || version < 0) {
+      return null;
+    }
+    return tracker.getChanges(version);
+  }
+
+  /**
+   * waits until the server has changed something after the given framebuffer version
+   *
+   * @param version as returned by getFrameVersion() or ScreenImage.getFrame()
+   * @param secs    max seconds to wait
+   * @return the current framebuffer version (-1 if not available)
+   */
+  public long waitForChange(long version, double secs) {
+    VNCChangeTracker tracker = changeTracker;
+    if (tracker == null) {
+      return -1;
+    }
+    return tracker.waitForChange(version, (long) (secs * 1000));
+  }
+
+  //<editor-fold defaultstate="collapsed" desc="direct framebuffer access">
+  private static Field fBuffer = null;
+  private static Field fImageLock = null;
+  private static Method mGetDB = null;
+  private static boolean directAccess = true;
+
+  private static synchronized boolean initDirectAccess() {
+    if (directAccess && fBuffer == null) {
+      try {
+        fBuffer = VNCClient.class.getDeclaredField("buffer");
+        fBuffer.setAccessible(true);
+        Class<?> cFrameBuffer = fBuffer.getType();
+        fImageLock = cFrameBuffer.getDeclaredField("imageLock");
+        fImageLock.setAccessible(true);
+        mGetDB = cFrameBuffer.getMethod("getDB");
+        mGetDB.setAccessible(true);
+      } catch (Exception e) {
+        Debug.log(3, "VNCScreen: no direct framebuffer access (%s) - using BufferedImage", e.getMessage());
+        directAccess = false;
+      }
+    }
+    return directAccess;
+  }
+
+  /**
+   * the given area of the framebuffer directly as OpenCV Mat in the format used for matching (BGR, CV_8UC3)<br>
+   * the pixels are converted in one pass from the framebuffer (no intermediate BufferedImage)
+   *
+   * @return the Mat or null if not possible (not running, area not inside, unexpected framebuffer format)
+   */
+  public Mat captureMat(int x, int y, int w, int h) {
+    VNCClient running = client;
+    if (running == null || !initDirectAccess()) {
+      return null;
+    }
+    try {
+      PixelBuffer buffer = (PixelBuffer) fBuffer.get(running);
+      if (buffer == null) {
+        return null;
+      }
+      PixelFormat pf = buffer.getPF();
+      int bufferW = buffer.width();
+      if (x < 0 || y < 0 || w <= 0 || h <= 0 || x + w > bufferW || y + h > buffer.height()
+          || pf == null || pf.bpp != 32 || pf.redShift != 16 || pf.greenShift != 8 || pf.blueShift != 0) {
+        return null;
+      }
+      byte[] bgr = new byte[w * h * 3];
+      synchronized (fImageLock.get(buffer)) {
+        DataBuffer db = (DataBuffer) mGetDB.invoke(buffer);
+        if (!(db instanceof DataBufferInt)) {
+          return null;
+        }
+        int[] pixels = ((DataBufferInt) db).getData();
+        int n = 0;
+        for (int row = y; row < y + h; row++) {
+          int ix = row * bufferW + x;
+          int end = ix + w;
+          while (ix < end) {
+            int pixel = pixels[ix++];
+            bgr[n++] = (byte) pixel;
+            bgr[n++] = (byte) (pixel >> 8);
+            bgr[n++] = (byte) (pixel >> 16);
+          }
+        }
+      }
+      Mat mat = new Mat(h, w, CvType.CV_8UC3);
+      mat.put(0, 0, bgr);
+      return mat;
+    } catch (Exception e) {
+      Debug.log(3, "VNCScreen: captureMat: not possible (%s) - using BufferedImage", e.getMessage());
+      directAccess = false;
+      return null;
+    }
+  }
+
+  public Mat captureMat(Rectangle rect) {
+    return captureMat(rect.x, rect.y, rect.width, rect.height);
+  }
+  //</editor-fold>
+
+  //<editor-fold defaultstate="collapsed" desc="encoding">
+  public static final String ENCODING_TIGHT = "tight";
+  public static final String ENCODING_ZRLE = "zrle";
+  public static final String ENCODING_HEXTILE = "hextile";
+  public static final String ENCODING_RAW = "raw";
+
+  /**
+   * ask the server to use the given encoding (others are still allowed as fallback)<br>
+   * Tight with JPEG quality reduces the bandwidth most, but is lossy (lower scores) - use quality -1 for lossless
+   *
+   * @param encoding    one of ENCODING_TIGHT, ENCODING_ZRLE, ENCODING_HEXTILE, ENCODING_RAW
+   * @param quality     JPEG quality 0 (low) to 9 (high) for Tight, -1: no JPEG (lossless)
+   * @param compression compression level 0 (fast) to 9 (small), -1: server default
+   * @return this screen
+   */
+  public VNCScreen setEncoding(String encoding, int quality, int compression) {
+    VNCClient running = client;
+    if (running == null) {
+      return this;
+    }
+    int preferred;
+    if (ENCODING_ZRLE.equalsIgnoreCase(encoding)) {
+      preferred = Encodings.encodingZRLE;
+    } else if (ENCODING_HEXTILE.equalsIgnoreCase(encoding)) {
+      preferred = Encodings.encodingHextile;
+    } else if (ENCODING_RAW.equalsIgnoreCase(encoding)) {
+      preferred = Encodings.encodingRaw;
+    } else {
+      preferred = Encodings.encodingTight;
+    }
+    running.cp.noJpeg = quality < 0;
+    running.cp.qualityLevel = Math.max(0, Math.min(9, quality));
+    running.cp.customCompressLevel = compression >= 0;
+    running.cp.compressLevel = Math.max(0, Math.min(9, compression));
+    running.writer().writeSetEncodings(preferred, true);
+    Debug.log(3, "VNCScreen: %s: encoding %s (quality %d, compression %d)", id, encoding, quality, compression);
+    return this;
+  }
+  //</editor-fold>
+
   @Override
   public int getID() {
     return 0;
@@ -4,26 +4,27 @@
 package org.sikuli.ide;
 
 import java.awt.*;
-import java.awt.datatransfer.Clipboard;
-import java.awt.datatransfer.StringSelection;
-import java.awt.datatransfer.Transferable;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
-import java.io.IOException;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.swing.*;
 import javax.swing.text.*;
-import javax.swing.text.html.HTML;
-import javax.swing.text.html.HTMLDocument;
-import javax.swing.text.html.HTMLEditorKit;
+import javax.swing.text.html.CSS;
+import javax.swing.text.html.StyleSheet;
 
 import org.sikuli.basics.Debug;
 //
@@ -36,29 +37,39 @@ import org.sikuli.basics.Debug;
 //
 // RJHM van den Bergh , rvdb@comweb.nl
 import org.sikuli.basics.PreferencesUser;
-import org.sikuli.script.SX;
 import org.sikuli.script.support.IScriptRunner;
 import org.sikuli.script.support.Runner;
 
-public class EditorConsolePane extends JPanel implements Runnable {
+/**
+ * the message area of the IDE: System.out/System.err and the output of the script runners<br>
+ * the streams collect complete lines (partial lines on flush) in a pending buffer,
+ * that is appended to the text on the EDT at most every FLUSH_INTERVAL msec<br>
+ * only the last MAX_LINES lines are kept (-Dsikuli.consoleLines=n), older lines are dropped<br>
+ * the lines are colored according to their category ([error] ...) using the console CSS
+ */
+public class EditorConsolePane extends JPanel {
 
   private static final String me = "EditorConsolePane: ";
   static boolean ENABLE_IO_REDIRECT = true;
+  static int MAX_LINES = 10000;
+  static final int FLUSH_INTERVAL = 100;
 
   static {
     String flag = System.getProperty("sikuli.console");
     if (flag != null && flag.equals("false")) {
       ENABLE_IO_REDIRECT = false;
     }
+    String lines = System.getProperty("sikuli.consoleLines");
+    if (lines != null) {
+      try {
+        MAX_LINES = Math.max(100, Integer.parseInt(lines));
+      } catch (NumberFormatException e) {
+      }
+    }
   }
 
-  private int NUM_PIPES;
   private JTextPane textArea;
-  private Thread[] reader;
-  private boolean quit;
-  private PipedInputStream[] pin;
   private JPopupMenu popup;
-  Thread errorThrower; // just for testing (Throws an Exception at this Console)
 
   class PopupListener extends MouseAdapter {
     JPopupMenu popup;
@@ -85,10 +96,7 @@ public class EditorConsolePane extends JPanel implements Runnable {
   public EditorConsolePane() {
     super();
     textArea = new JTextPane();
-    textArea.setEditorKit(new HTMLEditorKit());
-    textArea.setTransferHandler(new JTextPaneHTMLTransferHandler());
-    String css = PreferencesUser.get().getConsoleCSS();
-    ((HTMLEditorKit) textArea.getEditorKit()).getStyleSheet().addRule(css);
+    initStyles(PreferencesUser.get().getConsoleCSS());
     textArea.setEditable(false);
 
     setLayout(new BorderLayout());
@@ -96,55 +104,12 @@ public class EditorConsolePane extends JPanel implements Runnable {
 
     if (ENABLE_IO_REDIRECT) {
       Debug.log(3, "EditorConsolePane: starting redirection to message area");
-      int npipes = 2;
-      NUM_PIPES = npipes * Runner.getRunners().size() + npipes;
-      pin = new PipedInputStream[NUM_PIPES];
-      reader = new Thread[NUM_PIPES];
-      for (int i = 0; i < NUM_PIPES; i++) {
-        pin[i] = new PipedInputStream();
-      }
-
       // redirect System IO to console
-      try {
-        PipedOutputStream oout = new PipedOutputStream(pin[0]);
-        PrintStream ops = new PrintStream(oout, true);
-        System.setOut(ops);
-        reader[0] = new Thread(EditorConsolePane.this);
-        reader[0].setDaemon(true);
-        reader[0].start();
-
-        PipedOutputStream eout = new PipedOutputStream(pin[1]);
-        PrintStream eps = new PrintStream(eout, true);
-        System.setErr(eps);
-
-        reader[1] = new Thread(EditorConsolePane.this);
-        reader[1].setDaemon(true);
-        reader[1].start();
-
-        int irunner = 1;
-
-        for (IScriptRunner srunner : Runner.getRunners()) {
-          Debug.log(3, "EditorConsolePane: redirection for %s", srunner.getName());
-
-          PipedOutputStream pout = new PipedOutputStream(pin[irunner * npipes]);
-          PrintStream psout = new PrintStream(pout, true);
-
-          PipedOutputStream perr = new PipedOutputStream(pin[irunner * npipes + 1]);
-          PrintStream pserr = new PrintStream(perr, true);
-
-          srunner.redirect(psout, pserr);
-          quit = false; // signals the Threads that they should exit
-          // Starting two seperate threads to read from the PipedInputStreams
-          for (int i = irunner * npipes; i < irunner * npipes + npipes; i++) {
-            reader[i] = new Thread(EditorConsolePane.this);
-            reader[i].setDaemon(true);
-            reader[i].start();
-          }
-          irunner++;
-        }
-
-      } catch (IOException e1) {
-        Debug.log(-1, "Redirecting System IO failes", e1.getMessage());
+      System.setOut(new PrintStream(new ConsoleStream(), true));
+      System.setErr(new PrintStream(new ConsoleStream(), true));
+      for (IScriptRunner srunner : Runner.getRunners()) {
+        Debug.log(3, "EditorConsolePane: redirection for %s", srunner.getName());
+        srunner.redirect(new PrintStream(new ConsoleStream(), true), new PrintStream(new ConsoleStream(), true));
       }
     }
 
@@ -154,7 +119,7 @@ public class EditorConsolePane extends JPanel implements Runnable {
     // Add ActionListener that clears the textArea
     menuItem.addActionListener(new ActionListener() {
       public void actionPerformed(ActionEvent e) {
-        textArea.setText("");
+        clear();
       }
     });
     popup.add(menuItem);
@@ -164,172 +129,212 @@ public class EditorConsolePane extends JPanel implements Runnable {
     textArea.addMouseListener(popupListener);
   }
 
-  private void appendMsg(String msg) {
-    HTMLDocument doc = (HTMLDocument) textArea.getDocument();
-    HTMLEditorKit kit = (HTMLEditorKit) textArea.getEditorKit();
-    try {
-      kit.insertHTML(doc, doc.getLength(), msg, 0, 0, null);
-    } catch (Exception e) {
-      Debug.error(me + "Problem appending text to message area!\n%s", e.getMessage());
+  //<editor-fold defaultstate="collapsed" desc="styles">
+  private final StyleSheet css = new StyleSheet();
+  private final Map<String, AttributeSet> styles = new HashMap<>();
+  private static final String NORMAL = "normal";
+
+  // the message categories (Debug prefixes [error] ...), that might have a color in the console CSS
+  private static final String[] CATEGORIES = {NORMAL, "debug", "info", "log", "action", "error", "user"};
+
+  private void initStyles(String rules) {
+    css.addRule(rules);
+    Style body = css.getRule("body");
+    textArea.setFont(css.getFont(body));
+    textArea.setForeground(css.getForeground(body));
+    for (String category : CATEGORIES) {
+      // the text color of the category as given in the console CSS (.category { color: ... })
+      SimpleAttributeSet attributes = new SimpleAttributeSet();
+      Style rule = css.getRule("." + category);
+      if (rule.isDefined(CSS.Attribute.COLOR)) {
+        StyleConstants.setForeground(attributes, css.getForeground(rule));
+      }
+      styles.put(category, attributes);
     }
   }
 
-  /*
-   public synchronized void windowClosed(WindowEvent evt)
-   {
-   quit=true;
-   this.notifyAll(); // stop all threads
-   try { reader.join(1000);pin.close();   } catch (Exception e){}
-   try { reader2.join(1000);pin2.close(); } catch (Exception e){}
-   System.exit(0);
-   }
-
-   public synchronized void windowClosing(WindowEvent evt)
-   {
-   frame.setVisible(false); // default behaviour of JFrame
-   frame.dispose();
-   }
-   */
-  static final String lineSep = System.getProperty("line.separator");
-
-  private String htmlize(String msg) {
-    StringBuilder sb = new StringBuilder();
-    Pattern patMsgCat = Pattern.compile("\\[(.+?)\\].*");
-    msg = msg.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
-
-    String cls = "normal";
+  private AttributeSet getStyle(String category) {
+    AttributeSet style = styles.get(category);
+    return style == null ? styles.get(NORMAL) : style;
+  }
 
-    for (String line : msg.split(lineSep)) {
-      Matcher m = patMsgCat.matcher(line);
-      if (m.matches()) {
-        cls = m.group(1);
+  // [debug 12:34:56] ... is category debug, anything not known is normal text
+  private static String toCategory(String prefix) {
+    String category = prefix.trim().split(" ")[0].toLowerCase();
+    for (String known : CATEGORIES) {
+      if (known.equals(category)) {
+        return known;
       }
-      line = "<pre class=\"" + cls + "\" style=\"margin: 0;\">" + line + "</pre>";
-      sb.append(line);
     }
-    return sb.toString();
+    return NORMAL;
+  }
+  //</editor-fold>
+
+  //<editor-fold defaultstate="collapsed" desc="pending output">
+  private static class Segment {
+    final String text;
+    final String category;
+    final boolean lineEnd;
+
+    Segment(String text, String category, boolean lineEnd) {
+      this.text = text;
+      this.category = category;
+      this.lineEnd = lineEnd;
+    }
   }
 
-  @Override
-  public synchronized void run() {
-    for (int i = 0; i < NUM_PIPES; i++) {
-      while (Thread.currentThread() == reader[i]) {
-        try {
-          this.wait(100);
-        } catch (InterruptedException ie) {
-        }
+  private final ArrayDeque<Segment> pending = new ArrayDeque<>();
+  private int pendingLines = 0;
+  private boolean flushScheduled = false;
+  private volatile long lastFlush = 0;
+  private static ScheduledExecutorService flusher = null;
+
+  private static synchronized ScheduledExecutorService getFlusher() {
+    if (null == flusher) {
+      flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "SikuliX-Console");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return flusher;
+  }
 
-        int availableToRead = 0;
-        try {
-          availableToRead = pin[i].available();
-        } catch (IOException e) {
-        }
-        if (availableToRead != 0) {
-          String input = null;
-          try {
-            input = this.readLine(pin[i]);
-          } catch (IOException e) {
-          }
-          if (null != input) {
-            String finalInput = input;
-            EventQueue.invokeLater(() -> {
-              synchronized (textArea) {
-                appendMsg(htmlize(finalInput));
-                //appendMsg("</br>"); //trial to avoid problems with Utilities.getRowStart
-                int textLen = textArea.getDocument().getLength();
-                if (textLen > 0) {
-                  int textPosEnd = textLen - 1;
-                  int rowStart = -1;
-                  try {
-                    //TODO horizontal slider should be left adjusted with messages exceeding window width
-                    rowStart = textPosEnd; // currently right adjusted in these cases
-//                    if (false) { // currently noop
-//                      rowStart = Math.max(0, Utilities.getRowStart(textArea, textPosEnd));
-//                    }
-                  } catch (Exception e) {
-                    rowStart = textPosEnd; // fallback when using Utilities.getRowStart
-                  }
-                  textArea.setCaretPosition(rowStart);
-                }
-              }
-            });
+  private void addPending(Segment segment) {
+    synchronized (pending) {
+      pending.add(segment);
+      if (segment.lineEnd) {
+        pendingLines++;
+        // what would be trimmed after the append anyway is not kept
+        while (pendingLines > MAX_LINES) {
+          if (pending.poll().lineEnd) {
+            pendingLines--;
           }
         }
-        if (quit) {
-          return;
-        }
       }
+      if (flushScheduled) {
+        return;
+      }
+      flushScheduled = true;
+    }
+    long delay = lastFlush + FLUSH_INTERVAL - System.currentTimeMillis();
+    if (delay <= 0) {
+      EventQueue.invokeLater(this::flush);
+    } else {
+      getFlusher().schedule(() -> EventQueue.invokeLater(this::flush), delay, TimeUnit.MILLISECONDS);
     }
   }
 
-  public synchronized String readLine(PipedInputStream in) throws IOException {
-    String input = "";
-    do {
-      int available = in.available();
-      if (available == 0) {
-        break;
+  private void flush() {
+    Segment[] segments;
+    synchronized (pending) {
+      segments = pending.toArray(new Segment[0]);
+      pending.clear();
+      pendingLines = 0;
+      flushScheduled = false;
+      lastFlush = System.currentTimeMillis();
+    }
+    if (segments.length == 0) {
+      return;
+    }
+    Document doc = textArea.getDocument();
+    try {
+      StringBuilder run = new StringBuilder();
+      String category = segments[0].category;
+      for (Segment segment : segments) {
+        if (!segment.category.equals(category)) {
+          doc.insertString(doc.getLength(), run.toString(), getStyle(category));
+          run.setLength(0);
+          category = segment.category;
+        }
+        run.append(segment.text);
+        if (segment.lineEnd) {
+          run.append("\n");
+        }
       }
-      byte b[] = new byte[available];
-      in.read(b);
-      input = input + new String(b, 0, b.length);
-    } while (!input.endsWith("\n") && !input.endsWith("\r\n") && !quit);
-    return input;
+      doc.insertString(doc.getLength(), run.toString(), getStyle(category));
+      trim(doc);
+    } catch (BadLocationException e) {
+      Debug.error(me + "Problem appending text to message area!\n%s", e.getMessage());
+    }
+    textArea.setCaretPosition(doc.getLength());
   }
 
-  public void clear() {
-    textArea.setText("");
+  private void trim(Document doc) throws BadLocationException {
+    Element root = doc.getDefaultRootElement();
+    int surplus = root.getElementCount() - 1 - MAX_LINES;
+    if (surplus > 0) {
+      doc.remove(0, root.getElement(surplus).getStartOffset());
+    }
   }
-}
+  //</editor-fold>
 
-class JTextPaneHTMLTransferHandler extends TransferHandler {
-  private static final String me = "EditorConsolePane: ";
+  //<editor-fold defaultstate="collapsed" desc="streams">
+  private static final Pattern patMsgCat = Pattern.compile("\\[(.+?)\\].*");
 
-  public JTextPaneHTMLTransferHandler() {
-  }
+  /**
+   * collects the bytes written up to a line end, a flush hands on a partial line<br>
+   * a line without category ([category] ...) gets the category of the line before,
+   * if written with the same write call
+   */
+  private class ConsoleStream extends OutputStream {
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+    private String lineCategory = null;
+    private String writeCategory = null;
+
+    @Override
+    public synchronized void write(int b) {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
 
-  @Override
-  public void exportToClipboard(JComponent comp, Clipboard clip, int action) {
-    super.exportToClipboard(comp, clip, action);
-  }
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+      writeCategory = null;
+      int start = off;
+      for (int n = off; n < off + len; n++) {
+        if (b[n] == '\n') {
+          line.write(b, start, n - start);
+          handOn(true);
+          start = n + 1;
+        }
+      }
+      line.write(b, start, off + len - start);
+    }
 
-  @Override
-  public int getSourceActions(JComponent c) {
-    return COPY_OR_MOVE;
-  }
+    @Override
+    public synchronized void flush() {
+      if (line.size() > 0) {
+        handOn(false);
+      }
+    }
 
-  @Override
-  protected Transferable createTransferable(JComponent c) {
-    JTextPane aTextPane = (JTextPane) c;
-
-    HTMLEditorKit kit = ((HTMLEditorKit) aTextPane.getEditorKit());
-    StyledDocument sdoc = aTextPane.getStyledDocument();
-    int sel_start = aTextPane.getSelectionStart();
-    int sel_end = aTextPane.getSelectionEnd();
-
-    int i = sel_start;
-    StringBuilder output = new StringBuilder();
-    while (i < sel_end) {
-      Element e = sdoc.getCharacterElement(i);
-      Object nameAttr = e.getAttributes().getAttribute(StyleConstants.NameAttribute);
-      int start = e.getStartOffset(), end = e.getEndOffset();
-      if (nameAttr == HTML.Tag.BR) {
-        output.append("\n");
-      } else if (nameAttr == HTML.Tag.CONTENT) {
-        if (start < sel_start) {
-          start = sel_start;
-        }
-        if (end > sel_end) {
-          end = sel_end;
-        }
-        try {
-          String str = sdoc.getText(start, end - start);
-          output.append(str);
-        } catch (BadLocationException ble) {
-          Debug.error(me + "Copy-paste problem!\n%s", ble.getMessage());
+    private void handOn(boolean lineEnd) {
+      String text = line.toString();
+      line.reset();
+      if (lineEnd && text.endsWith("\r")) {
+        text = text.substring(0, text.length() - 1);
+      }
+      String category = lineCategory;
+      if (category == null) {
+        Matcher m = patMsgCat.matcher(text);
+        if (m.matches()) {
+          category = toCategory(m.group(1));
+        } else {
+          category = writeCategory == null ? NORMAL : writeCategory;
         }
       }
-      i = end;
+      writeCategory = category;
+      lineCategory = lineEnd ? null : category;
+      addPending(new Segment(text, category, lineEnd));
     }
-    return new StringSelection(output.toString());
+  }
+  //</editor-fold>
+
+  public void clear() {
+    synchronized (pending) {
+      pending.clear();
+      pendingLines = 0;
+    }
+    textArea.setText("");
   }
 }
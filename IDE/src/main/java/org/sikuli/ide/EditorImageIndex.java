@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2010-2019, sikuli.org, sikulix.com - MIT license
+ */
+package org.sikuli.ide;
+
+import org.sikuli.basics.Debug;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.*;
+import java.awt.Component;
+import java.io.File;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * INTERNAL USE: which lines of an EditorPane reference which images<br>
+ * the code of a line is its text with the image buttons/labels replaced by their code<br>
+ * an edit only marks the touched lines - they are scanned again with the next query,
+ * so a query (e.g. the usages of an image) costs the number of its occurrences
+ * plus the lines edited since the last query<br>
+ * to be used on the EDT only
+ */
+class EditorImageIndex implements DocumentListener {
+
+  private static String me = "EditorImageIndex: ";
+  private static int lvl = 3;
+
+  private static void log(int level, String message, Object... args) {
+    if (Debug.isLogging(level)) {
+      Debug.logx(level, me + message, args);
+    }
+  }
+
+  static final Pattern patImageName = Pattern.compile("[\"']([^\"']+?\\.(?i)(png|jpg|jpeg))[\"']");
+
+  // a line with image references - start moves with the edits before it
+  private static class Line {
+    final Position start;
+    final Set<String> names;
+
+    Line(Position start, Set<String> names) {
+      this.start = start;
+      this.names = names;
+    }
+  }
+
+  private Document document = null;
+  // sorted by position (the order is kept by the document while editing)
+  private final List<Line> lines = new ArrayList<>();
+  private final Map<String, Set<Line>> byName = new HashMap<>();
+  private final List<Position[]> dirty = new ArrayList<>();
+  private boolean allDirty = true;
+
+  EditorImageIndex(EditorPane pane) {
+    attach(pane.getDocument());
+    pane.addPropertyChangeListener("document", event -> attach((Document) event.getNewValue()));
+  }
+
+  private void attach(Document doc) {
+    if (document != null) {
+      document.removeDocumentListener(this);
+    }
+    document = doc;
+    if (document != null) {
+      document.addDocumentListener(this);
+    }
+    allDirty = true;
+    dirty.clear();
+  }
+
+  //<editor-fold defaultstate="collapsed" desc="queries">
+  /**
+   * @param imageName an image file name (a path is reduced to its name)
+   * @return the lines referencing the image (ascending)
+   */
+  List<Element> getLines(String imageName) {
+    refresh();
+    List<Element> found = new ArrayList<>();
+    Set<Line> referencing = byName.get(new File(imageName).getName());
+    if (referencing == null) {
+      return found;
+    }
+    List<Line> sorted = new ArrayList<>(referencing);
+    sorted.sort(Comparator.comparingInt(line -> line.start.getOffset()));
+    Element root = document.getDefaultRootElement();
+    for (Line line : sorted) {
+      Element element = root.getElement(root.getElementIndex(line.start.getOffset()));
+      if (found.isEmpty() || found.get(found.size() - 1) != element) {
+        found.add(element);
+      }
+    }
+    return found;
+  }
+
+  /**
+   * the code of the line: text with image buttons/labels as code, without line end
+   *
+   * @param line a paragraph element
+   * @return the code
+   */
+  static String getLineCode(Element line) {
+    Document doc = line.getDocument();
+    StringBuilder code = new StringBuilder();
+    int count = line.getElementCount();
+    for (int n = 0; n < count; n++) {
+      Element run = line.getElement(n);
+      Component comp = StyleConstants.getComponent(run.getAttributes());
+      if (comp != null) {
+        code.append(comp.toString());
+        continue;
+      }
+      try {
+        code.append(doc.getText(run.getStartOffset(), run.getEndOffset() - run.getStartOffset()));
+      } catch (BadLocationException e) {
+        log(-1, "getLineCode: %s", e.getMessage());
+      }
+    }
+    int end = code.length();
+    while (end > 0 && (code.charAt(end - 1) == '\n' || code.charAt(end - 1) == '\r')) {
+      end--;
+    }
+    code.setLength(end);
+    return code.toString();
+  }
+  //</editor-fold>
+
+  //<editor-fold defaultstate="collapsed" desc="scanning">
+  private void refresh() {
+    if (document == null) {
+      return;
+    }
+    Element root = document.getDefaultRootElement();
+    if (allDirty) {
+      lines.clear();
+      byName.clear();
+      for (int n = 0; n < root.getElementCount(); n++) {
+        Line line = scan(root.getElement(n));
+        if (line != null) {
+          add(lines.size(), line);
+        }
+      }
+      allDirty = false;
+      dirty.clear();
+      log(lvl + 1, "scanned %d lines: %d with images", root.getElementCount(), lines.size());
+      return;
+    }
+    for (Position[] range : dirty) {
+      int first = root.getElementIndex(range[0].getOffset());
+      int last = root.getElementIndex(range[1].getOffset());
+      for (int n = first; n <= last; n++) {
+        rescan(root.getElement(n));
+      }
+    }
+    dirty.clear();
+  }
+
+  private void rescan(Element element) {
+    int start = element.getStartOffset();
+    int end = element.getEndOffset();
+    int index = lowerBound(start);
+    while (index < lines.size() && lines.get(index).start.getOffset() < end) {
+      remove(index);
+    }
+    Line line = scan(element);
+    if (line != null) {
+      add(index, line);
+    }
+  }
+
+  private Line scan(Element element) {
+    Set<String> names = null;
+    Matcher matcher = patImageName.matcher(getLineCode(element));
+    while (matcher.find()) {
+      if (names == null) {
+        names = new HashSet<>();
+      }
+      names.add(new File(matcher.group(1)).getName());
+    }
+    if (names == null) {
+      return null;
+    }
+    try {
+      return new Line(document.createPosition(element.getStartOffset()), names);
+    } catch (BadLocationException e) {
+      return null;
+    }
+  }
+
+  private int lowerBound(int offset) {
+    int low = 0;
+    int high = lines.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (lines.get(mid).start.getOffset() < offset) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private void add(int index, Line line) {
+    lines.add(index, line);
+    for (String name : line.names) {
+      byName.computeIfAbsent(name, key -> new HashSet<>()).add(line);
+    }
+  }
+
+  private void remove(int index) {
+    Line line = lines.remove(index);
+    for (String name : line.names) {
+      Set<Line> referencing = byName.get(name);
+      referencing.remove(line);
+      if (referencing.isEmpty()) {
+        byName.remove(name);
+      }
+    }
+  }
+  //</editor-fold>
+
+  //<editor-fold defaultstate="collapsed" desc="document events">
+  private void markDirty(int start, int end) {
+    if (allDirty) {
+      return;
+    }
+    try {
+      dirty.add(new Position[]{document.createPosition(start), document.createPosition(end)});
+    } catch (BadLocationException e) {
+      allDirty = true;
+    }
+  }
+
+  @Override
+  public void insertUpdate(DocumentEvent e) {
+    markDirty(e.getOffset(), e.getOffset() + e.getLength());
+  }
+
+  @Override
+  public void removeUpdate(DocumentEvent e) {
+    markDirty(e.getOffset(), e.getOffset());
+  }
+
+  @Override
+  public void changedUpdate(DocumentEvent e) {
+    markDirty(e.getOffset(), e.getOffset() + e.getLength());
+  }
+  //</editor-fold>
+}
@@ -42,7 +42,12 @@ import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
 import java.io.*;
 import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.prefs.PreferenceChangeEvent;
 import java.util.prefs.PreferenceChangeListener;
@@ -913,26 +918,107 @@ public class EditorPane extends JTextPane {
   //</editor-fold>
 
   //<editor-fold defaultstate="collapsed" desc="19 replace text patterns with image buttons">
+  /**
+   * the references of the old image are changed to the new one -
+   * only the lines referencing the old image (found with the image index) are parsed again
+   *
+   * @param oldName         old image file
+   * @param newName         new image file
+   * @param fileOverWritten the new image file existed before
+   */
   public void reparseOnRenameImage(String oldName, String newName, boolean fileOverWritten) {
     if (fileOverWritten) {
       Image.unCache(newName);
     }
+    String oldShort = new File(oldName).getName();
+    String newShort = new File(newName).getName();
+    Pattern oldPattern = Pattern.compile("[\"'](" + Pattern.quote(oldName) + "|" + Pattern.quote(oldShort) + ")[\"']");
+    String replacement = Matcher.quoteReplacement("\"" + newShort + "\"");
+    List<Element> lines = imageIndex.getLines(oldShort);
+    Document doc = getDocument();
+    Element root = doc.getDefaultRootElement();
+    saveCaretPosition();
+    for (int n = lines.size() - 1; n >= 0; n--) {
+      // an edit may replace the elements of the lines before
+      Element line = root.getElement(root.getElementIndex(lines.get(n).getStartOffset()));
+      String code = EditorImageIndex.getLineCode(line);
+      String newCode = oldPattern.matcher(code).replaceAll(replacement);
+      if (newCode.equals(code)) {
+        continue;
+      }
+      int start = line.getStartOffset();
+      int end = line.getEndOffset() - 1;
+      collectPatternButtons(line);
+      try {
+        doc.remove(start, end - start);
+        doc.insertString(start, newCode, null);
+        parseRange(start, start + newCode.length());
+      } catch (BadLocationException e) {
+        log(-1, "reparseOnRenameImage: %s", e.getMessage());
+      } finally {
+        reusableButtons.clear();
+      }
+    }
+    restoreCaretPosition();
+    log(lvl, "reparseOnRenameImage: %s -> %s (%d lines)", oldShort, newShort, lines.size());
+  }
 
-    String text = getText();
-    Pattern oldPattern = Pattern.compile("[\"']" + Pattern.quote(oldName) + "[\"']");
-    text = oldPattern.matcher(text).replaceAll(newName);
-    setText(text);
-    doReparse();
+  /**
+   * @param imageName image file name (a path is reduced to its name)
+   * @return the numbers of the lines referencing the image (ascending, first line is 1)
+   */
+  public List<Integer> getImageUsages(String imageName) {
+    Element root = getDocument().getDefaultRootElement();
+    List<Integer> usages = new ArrayList<>();
+    for (Element line : imageIndex.getLines(imageName)) {
+      usages.add(root.getElementIndex(line.getStartOffset()) + 1);
+    }
+    return usages;
   }
 
+  private final EditorImageIndex imageIndex = new EditorImageIndex(this);
+
   public void doReparse() {
     saveCaretPosition();
-    readContent(getText());
-    updateDocumentListeners("reparse");
-    doParse();
+    collectPatternButtons(getDocument().getDefaultRootElement());
+    try {
+      readContent(getText());
+      updateDocumentListeners("reparse");
+      doParse();
+    } finally {
+      reusableButtons.clear();
+    }
     restoreCaretPosition();
   }
 
+  // pattern buttons of the content before a reparse (key: their code) - reused for the same code
+  private final Map<String, Deque<EditorPatternButton>> reusableButtons = new HashMap<>();
+
+  private void collectPatternButtons(Element node) {
+    for (int i = 0; i < node.getElementCount(); i++) {
+      Element elm = node.getElement(i);
+      if (elm.isLeaf()) {
+        Component comp = StyleConstants.getComponent(elm.getAttributes());
+        if (comp instanceof EditorPatternButton) {
+          reusableButtons.computeIfAbsent(comp.toString(), code -> new ArrayDeque<>())
+              .add((EditorPatternButton) comp);
+        }
+      } else {
+        collectPatternButtons(elm);
+      }
+    }
+  }
+
+  private EditorPatternButton reusePatternButton(String code) {
+    Deque<EditorPatternButton> buttons = reusableButtons.get(code);
+    if (buttons == null || buttons.isEmpty()) {
+      return null;
+    }
+    EditorPatternButton button = buttons.poll();
+    button.checkThumbnail();
+    return button;
+  }
+
   public void doParse() {
     Document doc = getDocument();
     Element root = doc.getDefaultRootElement();
@@ -1039,7 +1125,10 @@ public class EditorPane extends JTextPane {
 
     if (ptn == patPatternStr || ptn == patPngStr) {
       if (PreferencesUser.get().getPrefMoreImageThumbs()) {
-        comp = EditorPatternButton.createFromString(this, imgStr, null);
+        comp = reusePatternButton(imgStr);
+        if (comp == null) {
+          comp = EditorPatternButton.createFromString(this, imgStr, null);
+        }
       } else {
         comp = EditorPatternLabel.labelFromString(this, imgStr);
       }
@@ -1070,8 +1159,11 @@ public class EditorPane extends JTextPane {
       return "\"" + EditorPatternLabel.CAPTURE + "\"";
     }
     org.sikuli.script.Pattern pattern = new org.sikuli.script.Pattern();
-    pattern.setFilename(ifn);
-    pattern.setImage(img);
+    if (img != null) {
+      pattern.setImage(img);
+    } else {
+      pattern.setFilename(ifn);
+    }
     pattern.similar(sim);
     pattern.targetOffset(off);
     pattern.resize(resizeFactor);
@@ -9,12 +9,13 @@ import java.awt.event.*;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.io.*;
-import javax.imageio.*;
+import java.net.URL;
 import javax.swing.*;
 import org.sikuli.script.Location;
 import org.sikuli.basics.Debug;
 import org.sikuli.basics.FileManager;
 import org.sikuli.script.Image;
+import org.sikuli.script.ImagePath;
 
 class EditorPatternButton extends JButton implements ActionListener, Serializable, MouseListener {
 
@@ -22,6 +23,7 @@ class EditorPatternButton extends JButton implements ActionListener, Serializabl
 	static final double DEFAULT_SIMILARITY = 0.7;
 	private String _imgFilename, _thumbFname, _imgFilenameSaved;
   private Image _image;
+  private Image _imageRef = null;
   private JLabel patternImageIcon = null;
 	private EditorPane _pane;
 	private double _similarity, _similaritySaved;
@@ -32,6 +34,7 @@ class EditorPatternButton extends JButton implements ActionListener, Serializabl
 	private Location _offset = new Location(0, 0), _offsetSaved;
 	private int _imgW, _imgH;
 	private float _scale = 1f;
+  private long _thumbModified = 0;
 	private static PatternWindow pwin = null;
 	private static Font textFont = new Font("arial", Font.BOLD, 12);
   private Color oldC;
@@ -83,11 +86,13 @@ class EditorPatternButton extends JButton implements ActionListener, Serializabl
     setBorderPainted(true);
 		setCursor(new Cursor(Cursor.HAND_CURSOR));
 		addActionListener(this);
+    addMouseListener(this);
     setButtonText();
 	}
 
 	public BufferedImage createThumbnailImage(int maxHeight) {
-		return createThumbnailImage(_imgFilename, maxHeight);
+    EditorThumbnails.Thumbnail thumbnail = EditorThumbnails.load(new File(_imgFilename), maxHeight);
+    return thumbnail == null ? null : thumbnail.image;
 	}
 
   public static EditorPatternButton createFromFilename(EditorPane parentPane, String str, EditorPatternLabel lbl) {
@@ -97,9 +102,9 @@ class EditorPatternButton extends JButton implements ActionListener, Serializabl
   public static EditorPatternButton createFromString(EditorPane parentPane, String str, EditorPatternLabel lbl) {
     if (!str.startsWith("Pattern")) {
 			String possibleFileName = str.substring(1, str.length() - 1);
-			Image img = Image.createThumbNail(possibleFileName);
-      if (img.isValid() && img.isBundled()) {
-        return new EditorPatternButton(parentPane, img);
+      File imgFile = findBundledImage(possibleFileName);
+      if (imgFile != null) {
+        return new EditorPatternButton(parentPane, imgFile.getAbsolutePath());
       }
       return null;
     }
@@ -113,9 +118,9 @@ class EditorPatternButton extends JButton implements ActionListener, Serializabl
 			} else if (tok.startsWith("Pattern")) {
 				String filename = FileManager.slashify(tok.substring(
 								tok.indexOf("\"") + 1, tok.lastIndexOf("\"")), false);
-        Image img = Image.createThumbNail(filename);
-        if (img.isValid() && img.isBundled()) {
-					btn.setFilename(img);
+        File imgFile = findBundledImage(filename);
+        if (imgFile != null) {
+					btn.setFilename(imgFile.getAbsolutePath());
         } else {
           return null;
         }
@@ -210,22 +215,76 @@ class EditorPatternButton extends JButton implements ActionListener, Serializabl
 		return _imgFilename;
 	}
 
+  /**
+   * the thumbnail is loaded in the background (see EditorThumbnails) - a placeholder is shown meanwhile
+   *
+   * @param fileName image file (absolute or found on the image path)
+   */
   public void setFilename(String fileName) {
-    _image = Image.createThumbNail(fileName);
-    _imgFilename = _image.getFilename();
-    setIcon(new ImageIcon(createThumbnailImage(_imgFilename, PreferencesUser.get().getDefaultThumbHeight())));
+    URL url = ImagePath.find(Image.getValidImageFilename(fileName));
+    if (url != null && "file".equals(url.getProtocol())) {
+      _imgFilename = new File(url.getPath()).getAbsolutePath();
+    } else {
+      _imgFilename = fileName;
+    }
+    _image = null;
+    loadThumbnail();
     setButtonText();
   }
 
   private void setFilename(Image img) {
     _image = img;
     _imgFilename = _image.getFilename();
-    setIcon(new ImageIcon(createThumbnailImage(_imgFilename, PreferencesUser.get().getDefaultThumbHeight())));
+    loadThumbnail();
     setButtonText();
   }
 
+  /**
+   * reloads the thumbnail, if the image file has changed since it was loaded
+   */
+  void checkThumbnail() {
+    if (new File(_imgFilename).lastModified() != _thumbModified) {
+      loadThumbnail();
+    }
+  }
+
+  private void loadThumbnail() {
+    final String imgFilename = _imgFilename;
+    _thumbModified = new File(imgFilename).lastModified();
+    final int thumbHeight = PreferencesUser.get().getDefaultThumbHeight();
+    setIcon(EditorThumbnails.getPlaceholder(thumbHeight));
+    EditorThumbnails.get(new File(imgFilename), thumbHeight, thumbnail -> {
+      if (thumbnail == null || !imgFilename.equals(_imgFilename)) {
+        return;
+      }
+      _imgW = thumbnail.imageWidth;
+      _imgH = thumbnail.imageHeight;
+      _scale = thumbnail.scale;
+      setIcon(new ImageIcon(thumbnail.image));
+      revalidate();
+      repaint();
+    });
+  }
+
+  /**
+   * a file found on the image path, that is in the bundle of the script
+   * (checked without loading the image)
+   */
+  private static File findBundledImage(String fileName) {
+    URL url = ImagePath.find(Image.getValidImageFilename(fileName));
+    if (url == null || !ImagePath.isImageBundled(url)) {
+      return null;
+    }
+    return new File(url.getPath());
+  }
+
   public void reloadImage() {
-    Image.reinit(_image);
+    EditorThumbnails.forget(new File(_imgFilename));
+    if (_image != null) {
+      Image.reinit(_image);
+    } else {
+      Image.unCache(_imgFilename);
+    }
     setFilename(_imgFilename);
   }
 
@@ -240,36 +299,6 @@ class EditorPatternButton extends JButton implements ActionListener, Serializabl
 	}
 */
 
-	private BufferedImage createThumbnailImage(String imgFname, int maxHeight) {
-		try {
-      BufferedImage img;
-      if (_image != null) {
-        img = _image.get();
-      } else {
-//TODO Debug.error("EditorPatternButton: createThumbnailImage: not using Image for: " + imgFname);
-        img = ImageIO.read(new File(imgFname));
-      }
-			int w = img.getWidth(null), h = img.getHeight(null);
-			_imgW = w;
-			_imgH = h;
-			if (maxHeight == 0 || maxHeight >= h) {
-				return img;
-			}
-			_scale = (float) maxHeight / h;
-			w *= _scale;
-			h *= _scale;
-      h = (int) h ;
-			BufferedImage thumb = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
-			Graphics2D g2d = thumb.createGraphics();
-			g2d.drawImage(img, 0, 0, w, h, null);
-			g2d.dispose();
-			return thumb;
-		} catch (IOException e) {
-			Debug.error("Can't read file: " + e.getMessage());
-			return null;
-		}
-	}
-
 	public boolean setParameters(boolean exact, double similarity, int numMatches) {
 		boolean dirty = false;
 		Debug.log(3, "ThumbButtonLabel: setParameters: " + exact + "," + similarity + "," + numMatches);
@@ -436,9 +465,20 @@ class EditorPatternButton extends JButton implements ActionListener, Serializabl
 
 	@Override
 	public String toString() {
-    return _pane.getPatternString(_imgFilename, _similarity, _offset, _image, _resizeFactor, _mask);
+    return _pane.getPatternString(_imgFilename, _similarity, _offset, getImage(), _resizeFactor, _mask);
 	}
 
+  // without a loaded image: the image file as reference for the code generation (pixels not loaded)
+  private Image getImage() {
+    if (_image != null) {
+      return _image;
+    }
+    if (_imageRef == null || !_imageRef.getFilename().equals(_imgFilename)) {
+      _imageRef = Image.createReference(_imgFilename);
+    }
+    return _imageRef;
+  }
+
   private void setButtonText() {
     if (_lbl == null) {
       setToolTipText(toString());
@@ -447,12 +487,24 @@ class EditorPatternButton extends JButton implements ActionListener, Serializabl
     }
   }
 
-  //<editor-fold defaultstate="collapsed" desc="mouse events not used">
   @Override
-  public void mouseClicked(MouseEvent me) {}
+  public void mousePressed(MouseEvent me) {
+    checkPopup(me);
+  }
+
   @Override
-  public void mousePressed(MouseEvent me) {}
+  public void mouseReleased(MouseEvent me) {
+    checkPopup(me);
+  }
+
+  private void checkPopup(MouseEvent me) {
+    if (me.isPopupTrigger() && _pane != null && _pane.getPopMenuImage() != null) {
+      _pane.getPopMenuImage().show(this, me.getX(), me.getY());
+    }
+  }
+
+  //<editor-fold defaultstate="collapsed" desc="mouse events not used">
   @Override
-  public void mouseReleased(MouseEvent me) {}
+  public void mouseClicked(MouseEvent me) {}
   //</editor-fold>
 }
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2010-2019, sikuli.org, sikulix.com - MIT license
+ */
+package org.sikuli.ide;
+
+import org.sikuli.basics.Debug;
+import org.sikuli.script.support.RunTime;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * INTERNAL USE: the thumbnails of the images shown as pattern buttons in the editor<br>
+ * decoded and scaled in background threads - the requester gets the thumbnail on the EDT<br>
+ * cached in memory (LRU) and on disk in SikulixStore/IDEThumbnails
+ * (key: image file, its modification time and the thumbnail height)
+ */
+class EditorThumbnails {
+
+  private static String me = "EditorThumbnails: ";
+  private static int lvl = 3;
+
+  private static void log(int level, String message, Object... args) {
+    if (Debug.isLogging(level)) {
+      Debug.logx(level, me + message, args);
+    }
+  }
+
+  private static final int MEMORY_ENTRIES = 500;
+  private static final String CACHE_FOLDER = "IDEThumbnails";
+
+  /**
+   * a thumbnail and the size of its image
+   */
+  static class Thumbnail {
+    final BufferedImage image;
+    final int imageWidth;
+    final int imageHeight;
+    final float scale;
+
+    Thumbnail(BufferedImage image, int imageWidth, int imageHeight, float scale) {
+      this.image = image;
+      this.imageWidth = imageWidth;
+      this.imageHeight = imageHeight;
+      this.scale = scale;
+    }
+  }
+
+  private static final Map<String, Thumbnail> memory = new LinkedHashMap<String, Thumbnail>(64, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Thumbnail> eldest) {
+      return size() > MEMORY_ENTRIES;
+    }
+  };
+  private static final Map<String, List<Consumer<Thumbnail>>> pending = new HashMap<>();
+  private static final Map<Integer, Icon> placeholders = new HashMap<>();
+  private static ExecutorService pool = null;
+
+  private static String key(File file, int maxHeight) {
+    return file.getAbsolutePath() + "|" + file.lastModified() + "|" + maxHeight;
+  }
+
+  private static synchronized ExecutorService getPool() {
+    if (null == pool) {
+      int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+      pool = Executors.newFixedThreadPool(threads, task -> {
+        Thread thread = new Thread(task, "SikuliX-IDE-Thumbnails");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+      });
+    }
+    return pool;
+  }
+
+  /**
+   * the thumbnail for the image file: if it is in memory, ready is called at once,
+   * otherwise later on the EDT, when it is loaded (null: image could not be read)
+   *
+   * @param file      image file
+   * @param maxHeight maximum height of the thumbnail (0: image size)
+   * @param ready     gets the thumbnail
+   */
+  static void get(File file, int maxHeight, Consumer<Thumbnail> ready) {
+    String key = key(file, maxHeight);
+    synchronized (memory) {
+      Thumbnail thumbnail = memory.get(key);
+      if (thumbnail != null) {
+        ready.accept(thumbnail);
+        return;
+      }
+      List<Consumer<Thumbnail>> waiting = pending.get(key);
+      if (waiting != null) {
+        waiting.add(ready);
+        return;
+      }
+      waiting = new ArrayList<>();
+      waiting.add(ready);
+      pending.put(key, waiting);
+    }
+    getPool().execute(() -> {
+      Thumbnail thumbnail = load(file, maxHeight);
+      List<Consumer<Thumbnail>> waiting;
+      synchronized (memory) {
+        if (thumbnail != null) {
+          memory.put(key, thumbnail);
+        }
+        waiting = pending.remove(key);
+      }
+      SwingUtilities.invokeLater(() -> {
+        for (Consumer<Thumbnail> consumer : waiting) {
+          consumer.accept(thumbnail);
+        }
+      });
+    });
+  }
+
+  /**
+   * @param maxHeight thumbnail height
+   * @return a neutral square to be shown until the thumbnail is ready
+   */
+  static Icon getPlaceholder(int maxHeight) {
+    int size = maxHeight > 0 ? maxHeight : 20;
+    synchronized (placeholders) {
+      Icon icon = placeholders.get(size);
+      if (icon == null) {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setColor(new Color(235, 235, 235));
+        g2d.fillRect(0, 0, size, size);
+        g2d.dispose();
+        icon = new ImageIcon(image);
+        placeholders.put(size, icon);
+      }
+      return icon;
+    }
+  }
+
+  /**
+   * drops the thumbnails of the image file (memory and disk)
+   *
+   * @param file image file
+   */
+  static void forget(File file) {
+    String prefix = file.getAbsolutePath() + "|";
+    synchronized (memory) {
+      memory.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+    deleteCached(file, null);
+  }
+
+  /**
+   * loads the thumbnail in the current thread (disk cache used)
+   *
+   * @param file      image file
+   * @param maxHeight maximum height of the thumbnail (0: image size)
+   * @return the thumbnail or null if the image could not be read
+   */
+  static Thumbnail load(File file, int maxHeight) {
+    try {
+      Dimension size = readSize(file);
+      if (size == null) {
+        log(-1, "not an image: %s", file);
+        return null;
+      }
+      if (maxHeight == 0 || maxHeight >= size.height) {
+        BufferedImage image = ImageIO.read(file);
+        return image == null ? null : new Thumbnail(image, size.width, size.height, 1f);
+      }
+      float scale = (float) maxHeight / size.height;
+      File cached = getCacheFile(file, maxHeight);
+      if (cached.exists()) {
+        BufferedImage thumb = ImageIO.read(cached);
+        if (thumb != null) {
+          return new Thumbnail(thumb, size.width, size.height, scale);
+        }
+      }
+      BufferedImage image = ImageIO.read(file);
+      if (image == null) {
+        return null;
+      }
+      int w = (int) (size.width * scale);
+      int h = (int) (size.height * scale);
+      BufferedImage thumb = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+      Graphics2D g2d = thumb.createGraphics();
+      g2d.drawImage(image, 0, 0, w, h, null);
+      g2d.dispose();
+      store(file, cached, thumb);
+      return new Thumbnail(thumb, size.width, size.height, scale);
+    } catch (IOException e) {
+      log(-1, "can't read file: %s (%s)", file, e.getMessage());
+      return null;
+    }
+  }
+
+  private static Dimension readSize(File file) throws IOException {
+    try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+      if (input == null) {
+        return null;
+      }
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+      if (!readers.hasNext()) {
+        return null;
+      }
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(input, true, true);
+        return new Dimension(reader.getWidth(0), reader.getHeight(0));
+      } finally {
+        reader.dispose();
+      }
+    }
+  }
+
+  //<editor-fold defaultstate="collapsed" desc="disk cache">
+  private static File getCacheFolder() {
+    return new File(RunTime.get().fSikulixStore, CACHE_FOLDER);
+  }
+
+  private static String getCachePrefix(File file) {
+    return String.format("%s-%08x-", file.getName(), file.getAbsolutePath().hashCode());
+  }
+
+  private static File getCacheFile(File file, int maxHeight) {
+    return new File(getCacheFolder(),
+        getCachePrefix(file) + file.lastModified() + "-" + maxHeight + ".png");
+  }
+
+  private static void store(File file, File cached, BufferedImage thumb) {
+    File folder = cached.getParentFile();
+    folder.mkdirs();
+    deleteCached(file, cached);
+    File temp = new File(folder, cached.getName() + "." + Thread.currentThread().getId() + ".tmp");
+    try {
+      ImageIO.write(thumb, "png", temp);
+      if (!temp.renameTo(cached)) {
+        temp.delete();
+      }
+    } catch (IOException e) {
+      log(-1, "not stored: %s (%s)", cached, e.getMessage());
+      temp.delete();
+    }
+  }
+
+  private static void deleteCached(File file, File keep) {
+    String prefix = getCachePrefix(file);
+    File[] outdated = getCacheFolder().listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(".png"));
+    if (outdated != null) {
+      for (File old : outdated) {
+        if (!old.equals(keep)) {
+          old.delete();
+        }
+      }
+    }
+  }
+  //</editor-fold>
+}
@@ -8,9 +8,8 @@ import java.awt.*;
 import java.util.*;
 import java.util.prefs.PreferenceChangeEvent;
 import java.util.prefs.PreferenceChangeListener;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import javax.swing.JComponent;
+import javax.swing.event.DocumentEvent;
 import javax.swing.text.*;
 import org.sikuli.basics.Settings;
 import org.sikuli.basics.Debug;
@@ -131,13 +130,17 @@ class SyntaxHighlightLabelView extends LabelView {
   static FontMetrics _fMetrics = null;
   static String tabStr = nSpaces(PreferencesUser.get().getTabWidth());
 
-  private Map<Pattern, Color> patternColors;
-  private static Map<Pattern, Color> patternColorsBasic;
-  private static Map<Pattern, Color> patternColorsPython;
-  private static Map<Pattern, Color> patternColorsRuby;
-  private static Map<Pattern, Color> patternColorsSikuli;
+  private SyntaxTokenizer tokenizer;
+  private static SyntaxTokenizer tokenizerBasic;
+  private static SyntaxTokenizer tokenizerPython;
+  private static SyntaxTokenizer tokenizerRuby;
   private static Font fontParenthesis;
 
+  // the text of the element and its colored tokens - computed with the first use after a change
+  private char[] text = null;
+  private int tabs = 0;
+  private SyntaxTokenizer.Spans spans = null;
+
   //<editor-fold defaultstate="collapsed" desc="keyword lists">
   private static String[] keywordsPython = {
     "and", "del", "for", "is", "raise",
@@ -244,50 +247,85 @@ class SyntaxHighlightLabelView extends LabelView {
             });
     fontParenthesis = new Font("Osaka-Mono", Font.PLAIN, 30);
 
-    // NOTE: the order is important!
-		patternColorsBasic = new HashMap<Pattern, Color>();
-    patternColorsPython = new HashMap<Pattern, Color>();
-    patternColorsRuby = new HashMap<Pattern, Color>();
-    patternColorsSikuli = new HashMap<Pattern, Color>();
-    patternColorsBasic.put(Pattern.compile("(#:.*$)"), new Color(220, 220, 220));
-    patternColorsBasic.put(Pattern.compile("(#.*$)"), new Color(138, 140, 193));
-    patternColorsBasic.put(Pattern.compile("(\"[^\"]*\"?)"), new Color(128, 0, 0));
-    patternColorsBasic.put(Pattern.compile("(\'[^\']*\'?)"), new Color(128, 0, 0));
-    patternColorsBasic.put(Pattern.compile("\\b([0-9]+)\\b"), new Color(128, 64, 0));
-		patternColorsPython.putAll(patternColorsBasic);
-		patternColorsRuby.putAll(patternColorsBasic);
-    for (int i = 0; i < keywordsPython.length; i++) { patternColorsPython.put(Pattern.compile(
-              "\\b(" + keywordsPython[i] + ")\\b"), Color.blue);
+    Map<String, Color> wordsSikuli = new HashMap<String, Color>();
+    for (String word : keywordsSikuli) {
+      wordsSikuli.put(word, new Color(63, 127, 127));
     }
-    for (int i = 0; i < keywordsRuby.length; i++) { patternColorsRuby.put(Pattern.compile(
-              "\\b(" + keywordsRuby[i] + ")\\b"), Color.blue);
+    for (String word : keywordsSikuliClass) {
+      wordsSikuli.put(word, new Color(215, 41, 56));
     }
-    for (int i = 0; i < keywordsSikuli.length; i++) { patternColorsSikuli.put(Pattern.compile(
-              "\\b(" + keywordsSikuli[i] + ")\\b"), new Color(63, 127, 127));
+    for (String word : constantsSikuli) {
+      wordsSikuli.put(word, new Color(128, 64, 0));
     }
-    for (int i = 0; i < keywordsSikuliClass.length; i++) { patternColorsSikuli.put(Pattern.compile(
-              "\\b(" + keywordsSikuliClass[i] + ")\\b"), new Color(215, 41, 56));
+    // language keywords win over Sikuli words with the same name
+    Map<String, Color> wordsPython = new HashMap<String, Color>(wordsSikuli);
+    for (String word : keywordsPython) {
+      wordsPython.put(word, Color.blue);
     }
-    for (int i = 0; i < constantsSikuli.length; i++) { patternColorsSikuli.put(Pattern.compile(
-              "\\b(" + constantsSikuli[i] + ")\\b"), new Color(128, 64, 0));
+    Map<String, Color> wordsRuby = new HashMap<String, Color>(wordsSikuli);
+    for (String word : keywordsRuby) {
+      wordsRuby.put(word, Color.blue);
     }
-		patternColorsPython.putAll(patternColorsSikuli);
-		patternColorsRuby.putAll(patternColorsSikuli);
-		patternColorsSikuli = null;
+    tokenizerBasic = new SyntaxTokenizer(new HashMap<String, Color>());
+    tokenizerPython = new SyntaxTokenizer(wordsPython);
+    tokenizerRuby = new SyntaxTokenizer(wordsRuby);
   }
 
 	public SyntaxHighlightLabelView(Element elm, String contentType) {
 		super(elm);
 		sikuliContentType = contentType;
 		if (JythonRunner.TYPE.equals(sikuliContentType)) {
-			patternColors = patternColorsPython;
+			tokenizer = tokenizerPython;
 		} else if (JRubyRunner.TYPE.equals(sikuliContentType)) {
-			patternColors = patternColorsRuby;
+			tokenizer = tokenizerRuby;
 		} else {
-		  patternColors = patternColorsBasic;
+		  tokenizer = tokenizerBasic;
     }
 	}
 
+  //<editor-fold defaultstate="collapsed" desc="cached text and tokens">
+  private void tokenize() {
+    int start = getStartOffset();
+    int length = getEndOffset() - start;
+    if (text != null && text.length == length) {
+      return;
+    }
+    Segment segment = getText(start, start + length);
+    text = new char[segment.count];
+    System.arraycopy(segment.array, segment.offset, text, 0, segment.count);
+    tabs = 0;
+    for (char c : text) {
+      if (c == '\t') {
+        tabs++;
+      }
+    }
+    spans = tokenizer.tokenize(text);
+  }
+
+  private void invalidate() {
+    text = null;
+    spans = null;
+  }
+
+  @Override
+  public void insertUpdate(DocumentEvent e, Shape a, ViewFactory f) {
+    invalidate();
+    super.insertUpdate(e, a, f);
+  }
+
+  @Override
+  public void removeUpdate(DocumentEvent e, Shape a, ViewFactory f) {
+    invalidate();
+    super.removeUpdate(e, a, f);
+  }
+
+  @Override
+  public void changedUpdate(DocumentEvent e, Shape a, ViewFactory f) {
+    invalidate();
+    super.changedUpdate(e, a, f);
+  }
+  //</editor-fold>
+
 	private static String nSpaces(int n) {
     char[] s = new char[n];
     Arrays.fill(s, ' ');
@@ -323,12 +361,12 @@ class SyntaxHighlightLabelView extends LabelView {
   }
 
   private float tabbedWidth() {
-    String str = getText(getStartOffset(), getEndOffset()).toString();
-    int tab = countTab(str);
+    tokenize();
+    int width = charsWidth(text, 0, text.length);
     if (Settings.isMac()) {
-      return stringWidth(str) + getRealTabWidth() * tab;
+      return width + getRealTabWidth() * tabs;
     } else {
-      return stringWidth(str) + getTabWidth() * tab;
+      return width + getTabWidth() * tabs;
     }
   }
 
@@ -348,6 +386,13 @@ class SyntaxHighlightLabelView extends LabelView {
     return _fMetrics.stringWidth(str);
   }
 
+  private int charsWidth(char[] chars, int off, int len) {
+    if (_fMetrics == null) {
+      _fMetrics = getGraphics().getFontMetrics();
+    }
+    return _fMetrics.charsWidth(chars, off, len);
+  }
+
   private float getRealTabWidth() {
     final int tabCharWidth;
     if (Settings.isMac()) {
@@ -436,12 +481,7 @@ class SyntaxHighlightLabelView extends LabelView {
 
     //super.paint(g, shape); // for drawing selection
 
-    String text = getText(getStartOffset(), getEndOffset()).toString();
-    //System.out.println("draw " + text);
-
-    SortedMap<Integer, Integer> posMap = new TreeMap<Integer, Integer>();
-    SortedMap<Integer, Color> colorMap = new TreeMap<Integer, Color>();
-    buildColorMaps(text, posMap, colorMap);
+    tokenize();
 
     if (_fMetrics == null) {
       _fMetrics = g2d.getFontMetrics();
@@ -453,38 +493,45 @@ class SyntaxHighlightLabelView extends LabelView {
     int sy = alloc.y + alloc.height - _fMetrics.getDescent();
     int i = 0;
 
-    for (Map.Entry<Integer, Integer> entry : posMap.entrySet()) {
-      int start = entry.getKey();
-      int end = entry.getValue();
-
-      if (i <= start) {
+    for (int n = 0; n < spans.count; n++) {
+      int start = spans.starts[n];
+      if (i < start) {
         g2d.setColor(Color.black);
-        String str = text.substring(i, start);
-        sx = drawString(g2d, str, sx, sy);
-      } else {
-        break;
+        sx = drawChars(g2d, i, start, sx, sy);
       }
-
-      g2d.setColor(colorMap.get(start));
-      i = end;
-      String str = text.substring(start, i);
-      /*
-       * if( str.equals("(") || str.equals(")") )
-       * sx = drawParenthesis(g2d, str, sx, sy);
-       * else
-       */
-      sx = drawString(g2d, str, sx, sy);
+      g2d.setColor(spans.colors[n]);
+      i = spans.ends[n];
+      sx = drawChars(g2d, start, i, sx, sy);
     }
 
     // Paint possible remaining text black
-    if (i < text.length()) {
+    if (i < text.length) {
       g2d.setColor(Color.black);
-      String str = text.substring(i, text.length());
-      drawString(g2d, str, sx, sy);
+      drawChars(g2d, i, text.length, sx, sy);
     }
 
   }
 
+  private int drawChars(Graphics2D g2d, int start, int end, int x, int y) {
+    int from = start;
+    for (int n = start; n < end; n++) {
+      if (text[n] == '\t') {
+        x = drawChars(g2d, text, from, n, x, y);
+        x = drawTab(g2d, x, y);
+        from = n + 1;
+      }
+    }
+    return drawChars(g2d, text, from, end, x, y);
+  }
+
+  private int drawChars(Graphics2D g2d, char[] chars, int start, int end, int x, int y) {
+    if (start < end) {
+      g2d.drawChars(chars, start, end - start, x, y);
+      x += _fMetrics.charsWidth(chars, start, end - start);
+    }
+    return x;
+  }
+
   int drawString(Graphics2D g2d, String str, int x, int y) {
     if (str.length() == 0) {
       return x;
@@ -514,23 +561,107 @@ class SyntaxHighlightLabelView extends LabelView {
     return x;
   }
 
-  void buildColorMaps(String text, Map<Integer, Integer> posMap,
-          Map<Integer, Color> colorMap) {
+  //</editor-fold>
 
-    // Match all regexes on this snippet, store positions
-    for (Map.Entry<Pattern, Color> entry : patternColors.entrySet()) {
+}
+//</editor-fold>
 
-      Matcher matcher = entry.getKey().matcher(text);
+//<editor-fold defaultstate="collapsed" desc="Tokenizer">
+/**
+ * colors the tokens of a line in one pass: comments (# to the end, #: special), strings, numbers
+ * and the words found in the given word list (keywords, Sikuli functions, classes and constants)
+ */
+class SyntaxTokenizer {
 
-      while (matcher.find()) {
-        posMap.put(matcher.start(1), matcher.end());
-        colorMap.put(matcher.start(1), entry.getValue());
+  static final Color COMMENT = new Color(138, 140, 193);
+  static final Color COMMENT_SPECIAL = new Color(220, 220, 220);
+  static final Color STRING = new Color(128, 0, 0);
+  static final Color NUMBER = new Color(128, 64, 0);
+
+  /**
+   * the colored tokens of a text (in ascending order, not overlapping)
+   */
+  static class Spans {
+    int count = 0;
+    int[] starts = new int[8];
+    int[] ends = new int[8];
+    Color[] colors = new Color[8];
+
+    void add(int start, int end, Color color) {
+      if (count == starts.length) {
+        starts = Arrays.copyOf(starts, count * 2);
+        ends = Arrays.copyOf(ends, count * 2);
+        colors = Arrays.copyOf(colors, count * 2);
       }
+      starts[count] = start;
+      ends[count] = end;
+      colors[count] = color;
+      count++;
     }
   }
 
-  //</editor-fold>
+  private final Map<String, Color> words;
 
+  SyntaxTokenizer(Map<String, Color> words) {
+    this.words = words;
+  }
+
+  Spans tokenize(char[] text) {
+    Spans spans = new Spans();
+    int length = text.length;
+    int i = 0;
+    while (i < length) {
+      char c = text[i];
+      int end = i + 1;
+      if (c == '#') {
+        spans.add(i, length, end < length && text[end] == ':' ? COMMENT_SPECIAL : COMMENT);
+        break;
+      } else if (c == '"' || c == '\'') {
+        while (end < length && text[end] != c) {
+          if (text[end] == '\\') {
+            end++;
+          }
+          end++;
+        }
+        end = Math.min(end + 1, length);
+        spans.add(i, end, STRING);
+      } else if (Character.isDigit(c)) {
+        while (end < length && Character.isDigit(text[end])) {
+          end++;
+        }
+        if (end < length && isWordPart(text[end])) {
+          end = skipWord(text, end);
+        } else {
+          spans.add(i, end, NUMBER);
+        }
+      } else if (isWordPart(c)) {
+        end = skipWord(text, end);
+        Color color = words.get(new String(text, i, end - i));
+        if (color == null && end < length && text[end] == '?') {
+          color = words.get(new String(text, i, end + 1 - i));
+          if (color != null) {
+            end++;
+          }
+        }
+        if (color != null) {
+          spans.add(i, end, color);
+        }
+      }
+      i = end;
+    }
+    return spans;
+  }
+
+  private static boolean isWordPart(char c) {
+    return Character.isLetterOrDigit(c) || c == '_';
+  }
+
+  private static int skipWord(char[] text, int pos) {
+    while (pos < text.length && isWordPart(text[pos])) {
+      pos++;
+    }
+    return pos;
+  }
 }
 //</editor-fold>
 
@@ -21,6 +21,7 @@ import java.awt.event.MouseEvent;
 import java.io.File;
 import java.lang.reflect.Method;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class SikuliIDEPopUpMenu extends JPopupMenu {
@@ -66,9 +67,9 @@ public class SikuliIDEPopUpMenu extends JPopupMenu {
     if (popType.equals(POP_TAB)) {
       refTab = (CloseableTabbedPane) ref;
       popTabMenu();
-//    } else if (popType.equals(POP_IMAGE)) {
-//      refEditorPane = (EditorPane) ref;
-//      popImageMenu();
+    } else if (popType.equals(POP_IMAGE)) {
+      refEditorPane = (EditorPane) ref;
+      popImageMenu();
     } else if (popType.equals(POP_LINE)) {
       refLineNumberView = (EditorLineNumberView) ref;
       refEditorPane = ((EditorLineNumberView) ref).getEditorPane();
@@ -453,7 +454,7 @@ public class SikuliIDEPopUpMenu extends JPopupMenu {
 
   private void popImageMenu() {
     try {
-      add(createMenuItem("copy", new PopImageAction(PopImageAction.COPY)));
+      add(createMenuItem("find usages", new PopImageAction(PopImageAction.USAGES)));
     } catch (NoSuchMethodException ex) {
       validMenu = false;
     }
@@ -462,6 +463,7 @@ public class SikuliIDEPopUpMenu extends JPopupMenu {
   class PopImageAction extends MenuAction {
 
     static final String COPY = "doCopy";
+    static final String USAGES = "doFindUsages";
 
     public PopImageAction() {
       super();
@@ -484,6 +486,38 @@ public class SikuliIDEPopUpMenu extends JPopupMenu {
       }
       log(lvl, "Image: copy from: %s", lineText);
     }
+
+    // the lines referencing the image of the button/label the menu was shown for - the selected one is shown
+    public void doFindUsages(ActionEvent ae) {
+      String imageName = null;
+      if (getInvoker() instanceof EditorPatternButton) {
+        imageName = ((EditorPatternButton) getInvoker()).getFilename();
+      } else if (getInvoker() instanceof EditorPatternLabel) {
+        imageName = ((EditorPatternLabel) getInvoker()).getFile();
+      }
+      if (imageName == null) {
+        return;
+      }
+      imageName = new File(imageName).getName();
+      List<Integer> usages = refEditorPane.getImageUsages(imageName);
+      log(lvl, "Image: usages of %s: %s", imageName, usages);
+      if (usages.isEmpty()) {
+        return;
+      }
+      Element root = refEditorPane.getDocument().getDefaultRootElement();
+      String[] options = new String[usages.size()];
+      for (int n = 0; n < options.length; n++) {
+        int line = usages.get(n);
+        options[n] = String.format("%d: %s", line, EditorImageIndex.getLineCode(root.getElement(line - 1)).trim());
+      }
+      String selected = Sikulix.popSelect(String.format("%s is used in %d line(s)", imageName, options.length),
+          "Image: find usages", options);
+      if (selected == null || selected.isEmpty()) {
+        return;
+      }
+      refEditorPane.jumpTo(Integer.parseInt(selected.substring(0, selected.indexOf(":"))));
+      refEditorPane.requestFocus();
+    }
   }
 
   private void popLineMenu() {